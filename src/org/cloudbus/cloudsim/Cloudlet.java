@@ -8,6 +8,7 @@
 
 package org.cloudbus.cloudsim;
 
+import java.io.Serializable;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.LinkedList;
@@ -23,7 +24,10 @@ import org.cloudbus.cloudsim.core.CloudSim;
  * @author Anton Beloglazov
  * @since CloudSim Toolkit 1.0
  */
-public class Cloudlet {
+public class Cloudlet implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * The User or Broker ID. It is advisable that broker set this ID with its own ID, so that
@@ -80,7 +84,7 @@ public class Cloudlet {
 	private StringBuffer history;
 
 	/** The res list. */
-	private final List<Resource> resList;
+	private List<Resource> resList;
 
 	/** The index. */
 	private int index;
@@ -189,11 +193,6 @@ public class Cloudlet {
 				utilizationModelRam,
 				utilizationModelBw,
 				false);
-		vmId = -1;
-		accumulatedBwCost = 0.0;
-		costPerBw = 0.0;
-
-		requiredFiles = new LinkedList<String>();
 	}
 
 	/**
@@ -342,10 +341,8 @@ public class Cloudlet {
 		this.cloudletFileSize = Math.max(1, cloudletFileSize);
 		this.cloudletOutputSize = Math.max(1, cloudletOutputSize);
 
-		// Normally, a Cloudlet is only executed on a resource without being
-		// migrated to others. Hence, to reduce memory consumption, set the
-		// size of this ArrayList to be less than the default one.
-		resList = new ArrayList<Resource>(2);
+		// the list of resources is only created when the Cloudlet is submitted to one
+		resList = null;
 		index = -1;
 		this.record = record;
 
@@ -353,7 +350,8 @@ public class Cloudlet {
 		accumulatedBwCost = 0.0;
 		costPerBw = 0.0;
 
-		requiredFiles = new LinkedList<String>();
+		// the list of required files is only created when a file is added
+		requiredFiles = null;
 
 		setUtilizationModelCpu(utilizationModelCpu);
 		setUtilizationModelRam(utilizationModelRam);
@@ -365,7 +363,10 @@ public class Cloudlet {
 	/**
 	 * Internal class that keeps track Cloudlet's movement in different CloudResources.
 	 */
-	public static class Resource {
+	public static class Resource implements Serializable {
+
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 1L;
 
 		/** Cloudlet's submission time to a CloudResource. */
 		public double submissionTime = 0.0;
@@ -727,7 +728,12 @@ public class Cloudlet {
 		res.costPerSec = cost;
 		res.resourceName = CloudSim.getEntityName(resourceID);
 
-		// add into a list if moving to a new grid resource
+		// add into a list if moving to a new grid resource. Normally, a Cloudlet is only
+		// executed on a resource without being migrated to others. Hence, to reduce memory
+		// consumption, set the size of this ArrayList to be less than the default one.
+		if (resList == null) {
+			resList = new ArrayList<Resource>(2);
+		}
 		resList.add(res);
 
 		if (index == -1 && record) {
@@ -1002,7 +1008,7 @@ public class Cloudlet {
 	 * @post $none
 	 */
 	public String[] getAllResourceName() {
-		final int size = resList.size();
+		final int size = resList != null ? resList.size() : 0;
 		String[] data = null;
 
 		if (size > 0) {
@@ -1023,7 +1029,7 @@ public class Cloudlet {
 	 * @post $none
 	 */
 	public int[] getAllResourceId() {
-		final int size = resList.size();
+		final int size = resList != null ? resList.size() : 0;
 		int[] data = null;
 
 		if (size > 0) {
@@ -1144,6 +1150,9 @@ public class Cloudlet {
 	 * @return the resource by id
 	 */
 	public Resource getResourceById(final int resourceId) {
+		if (resList == null) {
+			return null;
+		}
 		for (Resource resource : resList) {
 			if (resource.resourceId == resourceId) {
 				return resource;
@@ -1293,11 +1302,15 @@ public class Cloudlet {
 	// Data cloudlet
 
 	/**
-	 * Gets the required files.
+	 * Gets the required files. The list is created when first needed, so {@link #requiresFiles()}
+	 * should be checked first where no file is to be added.
 	 * 
 	 * @return the required files
 	 */
 	public List<String> getRequiredFiles() {
+		if (requiredFiles == null) {
+			setRequiredFiles(new LinkedList<String>());
+		}
 		return requiredFiles;
 	}
 
@@ -1318,7 +1331,7 @@ public class Cloudlet {
 	 */
 	public boolean addRequiredFile(final String fileName) {
 		// if the list is empty
-		if (getRequiredFiles() == null) {
+		if (requiredFiles == null) {
 			setRequiredFiles(new LinkedList<String>());
 		}
 
@@ -1347,7 +1360,7 @@ public class Cloudlet {
 	 */
 	public boolean deleteRequiredFile(final String filename) {
 		boolean result = false;
-		if (getRequiredFiles() == null) {
+		if (requiredFiles == null) {
 			return result;
 		}
 
@@ -1372,7 +1385,7 @@ public class Cloudlet {
 	 */
 	public boolean requiresFiles() {
 		boolean result = false;
-		if (getRequiredFiles() != null && getRequiredFiles().size() > 0) {
+		if (requiredFiles != null && requiredFiles.size() > 0) {
 			result = true;
 		}
 
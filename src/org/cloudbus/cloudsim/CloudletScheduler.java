@@ -8,6 +8,7 @@
 
 package org.cloudbus.cloudsim;
 
+import java.io.Serializable;
 import java.util.List;
 
 /**
@@ -19,7 +20,10 @@ import java.util.List;
  * @author Anton Beloglazov
  * @since CloudSim Toolkit 1.0
  */
-public abstract class CloudletScheduler {
+public abstract class CloudletScheduler implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
 
 	/** The previous time. */
 	private double previousTime;
@@ -25,6 +25,9 @@ import org.cloudbus.cloudsim.provisioners.RamProvisioner;
  */
 public class HostDynamicWorkload extends Host {
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	/** The utilization mips. */
 	private double utilizationMips;
 
@@ -67,13 +70,13 @@ public class HostDynamicWorkload extends Host {
 		setUtilizationMips(0);
 		double hostTotalRequestedMips = 0;
 
-		for (Vm vm : getVmList()) {
-			getVmScheduler().deallocatePesForVm(vm);
-		}
+		getVmScheduler().deallocatePesForVms(getVmList());
 
+		List<List<Double>> mipsShares = new ArrayList<List<Double>>(getVmList().size());
 		for (Vm vm : getVmList()) {
-			getVmScheduler().allocatePesForVm(vm, vm.getCurrentRequestedMips());
+			mipsShares.add(vm.getCurrentRequestedMips());
 		}
+		getVmScheduler().allocatePesForVms(getVmList(), mipsShares);
 
 		for (Vm vm : getVmList()) {
 			double totalRequestedMips = vm.getCurrentRequestedTotalMips();
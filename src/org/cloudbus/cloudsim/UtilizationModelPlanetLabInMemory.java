@@ -8,6 +8,9 @@ import java.io.IOException;
  * The Class UtilizationModelPlanetLab.
  */
 public class UtilizationModelPlanetLabInMemory implements UtilizationModel {
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	
 	/** The scheduling interval. */
 	private double schedulingInterval;
@@ -7,6 +7,7 @@
 
 package org.cloudbus.cloudsim;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -22,7 +23,10 @@ import org.cloudbus.cloudsim.lists.PeList;
  * @author Anton Beloglazov
  * @since CloudSim Toolkit 1.0
  */
-public abstract class VmScheduler {
+public abstract class VmScheduler implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
 
 	/** The peList. */
 	private List<? extends Pe> peList;
@@ -78,6 +82,38 @@ public abstract class VmScheduler {
 	 */
 	public abstract void deallocatePesForVm(Vm vm);
 
+	/**
+	 * Allocates PEs for several VMs, in order. It is the same as allocating PEs for each VM in turn,
+	 * which subclasses may do in a single pass.
+	 * 
+	 * @param vms the vms
+	 * @param mipsShares the mips share of each vm
+	 * @return $true if this policy allows all the VMs in the host, $false otherwise
+	 * @pre vms.size() == mipsShares.size()
+	 * @post $none
+	 */
+	public boolean allocatePesForVms(List<? extends Vm> vms, List<List<Double>> mipsShares) {
+		boolean result = true;
+		for (int i = 0; i < vms.size(); i++) {
+			result &= allocatePesForVm(vms.get(i), mipsShares.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Releases PEs allocated to several VMs. It is the same as releasing the PEs of each VM in turn,
+	 * which subclasses may do in a single pass.
+	 * 
+	 * @param vms the vms
+	 * @pre $none
+	 * @post $none
+	 */
+	public void deallocatePesForVms(List<? extends Vm> vms) {
+		for (Vm vm : vms) {
+			deallocatePesForVm(vm);
+		}
+	}
+
 	/**
 	 * Releases PEs allocated to all the VMs.
 	 * 
@@ -28,6 +28,9 @@ import org.cloudbus.cloudsim.provisioners.PeProvisioner;
  */
 public class VmSchedulerTimeShared extends VmScheduler {
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	/** The mips map requested. */
 	private Map<String, List<Double>> mipsMapRequested;
 
@@ -53,6 +56,37 @@ public class VmSchedulerTimeShared extends VmScheduler {
 		/**
 		 * TODO: add the same to RAM and BW provisioners
 		 */
+		updateVmMigratingOut(vm);
+		boolean result = allocatePesForVm(vm.getUid(), mipsShareRequested);
+		updatePeProvisioning();
+		return result;
+	}
+
+	/**
+	 * Allocates PEs for several VMs, in order, updating the allocation of VMs on PEs only once.
+	 * 
+	 * @param vms the vms
+	 * @param mipsShares the mips share of each vm
+	 * @return true, if successful for all the VMs
+	 */
+	@Override
+	public boolean allocatePesForVms(List<? extends Vm> vms, List<List<Double>> mipsShares) {
+		boolean result = true;
+		for (int i = 0; i < vms.size(); i++) {
+			Vm vm = vms.get(i);
+			updateVmMigratingOut(vm);
+			result &= allocatePesForVm(vm.getUid(), mipsShares.get(i));
+		}
+		updatePeProvisioning();
+		return result;
+	}
+
+	/**
+	 * Adds a VM to the VMs migrating out if it has started migrating, or removes it if it is done.
+	 * 
+	 * @param vm the vm
+	 */
+	private void updateVmMigratingOut(Vm vm) {
 		if (vm.isInMigration()) {
 			if (!getVmsMigratingIn().contains(vm.getUid()) && !getVmsMigratingOut().contains(vm.getUid())) {
 				getVmsMigratingOut().add(vm.getUid());
@@ -62,9 +96,6 @@ public class VmSchedulerTimeShared extends VmScheduler {
 				getVmsMigratingOut().remove(vm.getUid());
 			}
 		}
-		boolean result = allocatePesForVm(vm.getUid(), mipsShareRequested);
-		updatePeProvisioning();
-		return result;
 	}
 
 	/**
@@ -182,6 +213,34 @@ public class VmSchedulerTimeShared extends VmScheduler {
 		updatePeProvisioning();
 	}
 
+	/**
+	 * Releases PEs allocated to several VMs. The remaining VMs are allocated again only once, rather
+	 * than after each VM is released.
+	 * 
+	 * @param vms the vms
+	 */
+	@Override
+	public void deallocatePesForVms(List<? extends Vm> vms) {
+		if (vms.isEmpty()) {
+			return;
+		}
+		for (Vm vm : vms) {
+			getMipsMapRequested().remove(vm.getUid());
+			for (Pe pe : getPeList()) {
+				pe.getPeProvisioner().deallocateMipsForVm(vm);
+			}
+		}
+		setPesInUse(0);
+		getMipsMap().clear();
+		setAvailableMips(PeList.getTotalMips(getPeList()));
+
+		for (Map.Entry<String, List<Double>> entry : getMipsMapRequested().entrySet()) {
+			allocatePesForVm(entry.getKey(), entry.getValue());
+		}
+
+		updatePeProvisioning();
+	}
+
 	/**
 	 * Releases PEs allocated to all the VMs.
 	 * 
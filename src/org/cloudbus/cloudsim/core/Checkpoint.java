@@ -0,0 +1,201 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.math3.util.Pair;
+
+/**
+ * This class writes and reads checkpoints of a simulation, i.e. the whole object graph reachable from
+ * a {@link SimulationContext}: the clock, the event queues, the entities with everything they refer
+ * to, and the components attached to the context. A checkpoint is the Java serialization of the
+ * context, compressed; reading it back builds an independent copy of the simulation, which can be run
+ * on from the point at which the checkpoint was taken.
+ * <p>
+ * Every object of a simulation must therefore be {@link java.io.Serializable}, which is why the
+ * entities, cloudlets, VMs, hosts and the other classes of a simulation are. The commons-math
+ * {@link Pair}, which the fog entities use in their fields and events but is not serializable, is
+ * written as a {@link SerializedPair}. The event queues write
+ * their events in queue order and rebuild their internal links when they are read, so that the depth
+ * of the serialization does not grow with the number of events. Static fields are not part of a
+ * checkpoint, and neither are the finish listeners of the context, the recycled events, lambdas,
+ * threads or open files: a simulation keeping any of the last three in its entities cannot be
+ * checkpointed.
+ *
+ * @see CloudSim#checkpoint(OutputStream)
+ * @see CloudSim#restore(InputStream)
+ */
+public final class Checkpoint {
+
+	/** The first bytes of a checkpoint. */
+	private static final int MAGIC = 0x43534350;
+
+	/** The version of the checkpoint format. */
+	private static final int VERSION = 2;
+
+	private Checkpoint() {
+	}
+
+	/**
+	 * Writes a checkpoint of a simulation. The simulation must not be running a clock tick.
+	 *
+	 * @param context the simulation
+	 * @param out the stream to write to; it is not closed
+	 * @throws IOException if the stream cannot be written or an object cannot be checkpointed
+	 */
+	public static void write(SimulationContext context, OutputStream out) throws IOException {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			DeflaterOutputStream deflated = new DeflaterOutputStream(new NonClosingOutputStream(out), deflater, 1 << 16);
+			ObjectOutputStream objects = new CheckpointOutputStream(deflated);
+			objects.writeInt(MAGIC);
+			objects.writeInt(VERSION);
+			objects.writeObject(context);
+			objects.flush();
+			deflated.finish();
+			deflated.flush();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Reads a checkpoint written by {@link #write(SimulationContext, OutputStream)}.
+	 *
+	 * @param in the stream to read from; it is not closed
+	 * @return the simulation
+	 * @throws IOException if the stream cannot be read or is not a checkpoint
+	 */
+	public static SimulationContext read(InputStream in) throws IOException {
+		ObjectInputStream objects = new CheckpointInputStream(new InflaterInputStream(in));
+		if (objects.readInt() != MAGIC) {
+			throw new StreamCorruptedException("Not a simulation checkpoint");
+		}
+		int version = objects.readInt();
+		if (version != VERSION) {
+			throw new StreamCorruptedException("Unsupported checkpoint version: " + version);
+		}
+		Object context;
+		try {
+			context = objects.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new InvalidClassException(e.getMessage(), "class not found");
+		}
+		if (!(context instanceof SimulationContext)) {
+			throw new StreamCorruptedException("Not a simulation checkpoint");
+		}
+		return (SimulationContext) context;
+	}
+
+	/**
+	 * Writes the objects of a checkpoint, replacing each {@link Pair} by a {@link SerializedPair}.
+	 */
+	private static class CheckpointOutputStream extends ObjectOutputStream {
+
+		/** The replacement of each pair written, so that a pair referred to twice is read once. */
+		private final Map<Object, SerializedPair> pairs = new IdentityHashMap<Object, SerializedPair>();
+
+		CheckpointOutputStream(OutputStream out) throws IOException {
+			super(out);
+			enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) {
+			if (!(obj instanceof Pair)) {
+				return obj;
+			}
+			SerializedPair pair = pairs.get(obj);
+			if (pair == null) {
+				pair = new SerializedPair((Pair<?, ?>) obj);
+				pairs.put(obj, pair);
+			}
+			return pair;
+		}
+	}
+
+	/**
+	 * Reads the objects of a checkpoint, turning each {@link SerializedPair} back into a {@link Pair}.
+	 */
+	private static class CheckpointInputStream extends ObjectInputStream {
+
+		CheckpointInputStream(InputStream in) throws IOException {
+			super(in);
+			enableResolveObject(true);
+		}
+
+		@Override
+		protected Object resolveObject(Object obj) {
+			if (obj instanceof SerializedPair) {
+				SerializedPair pair = (SerializedPair) obj;
+				return new Pair<Object, Object>(pair.first, pair.second);
+			}
+			return obj;
+		}
+	}
+
+	/**
+	 * A {@link Pair} in a checkpoint.
+	 */
+	private static class SerializedPair implements Serializable {
+
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		private final Object first;
+
+		private final Object second;
+
+		SerializedPair(Pair<?, ?> pair) {
+			first = pair.getFirst();
+			second = pair.getSecond();
+		}
+	}
+
+	/**
+	 * Keeps the stream of the caller open when the compressing stream is done with it.
+	 */
+	private static class NonClosingOutputStream extends OutputStream {
+
+		private final OutputStream out;
+
+		NonClosingOutputStream(OutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+	}
+
+}
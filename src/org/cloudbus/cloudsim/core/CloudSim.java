@@ -8,14 +8,23 @@
 
 package org.cloudbus.cloudsim.core;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.core.predicates.Predicate;
@@ -39,32 +48,9 @@ public class CloudSim {
 	/** The Constant CLOUDSIM_VERSION_STRING. */
 	private static final String CLOUDSIM_VERSION_STRING = "3.0";
 
-	/** The id of CIS entity. */
-	private static int cisId = -1;
-
-	/** The id of CloudSimShutdown entity. */
-	@SuppressWarnings("unused")
-	private static int shutdownId = -1;
-
-	/** The CIS object. */
-	private static CloudInformationService cis = null;
-
 	/** The Constant NOT_FOUND. */
 	private static final int NOT_FOUND = -1;
 
-	/** The trace flag. */
-	@SuppressWarnings("unused")
-	private static boolean traceFlag = false;
-
-	/** The calendar. */
-	private static Calendar calendar = null;
-
-	/** The termination time. */
-	private static double terminateAt = -1;
-
-	/** The minimal time between events. Events within shorter periods after the last event are discarded. */
-	private static double minTimeBetweenEvents = 0.1;
-	
 	/**
 	 * Initialises all the common attributes.
 	 * 
@@ -78,21 +64,22 @@ public class CloudSim {
 	 */
 	private static void initCommonVariable(Calendar _calendar, boolean _traceFlag, int numUser)
 			throws Exception {
+		SimulationContext context = SimulationContext.current();
 		initialize();
 		// NOTE: the order for the below 3 lines are important
-		traceFlag = _traceFlag;
+		context.traceFlag = _traceFlag;
 
 		// Set the current Wall clock time as the starting time of
 		// simulation
 		if (_calendar == null) {
-			calendar = Calendar.getInstance();
+			context.calendar = Calendar.getInstance();
 		} else {
-			calendar = _calendar;
+			context.calendar = _calendar;
 		}
 
 		// creates a CloudSimShutdown object
 		CloudSimShutdown shutdown = new CloudSimShutdown("CloudSimShutdown", numUser);
-		shutdownId = shutdown.getId();
+		context.shutdownId = shutdown.getId();
 	}
 
 	/**
@@ -117,14 +104,15 @@ public class CloudSim {
 	 * @post $none
 	 */
 	public static void init(int numUser, Calendar cal, boolean traceFlag) {
+		SimulationContext context = SimulationContext.current();
 		try {
 			initCommonVariable(cal, traceFlag, numUser);
 
 			// create a GIS object
-			cis = new CloudInformationService("CloudInformationService");
+			context.cis = new CloudInformationService("CloudInformationService");
 
 			// set all the above entity IDs
-			cisId = cis.getId();
+			context.cisId = context.cis.getId();
 		} catch (IllegalArgumentException s) {
 			Log.printLine("CloudSim.init(): The simulation has been terminated due to an unexpected error");
 			Log.printLine(s.getMessage());
@@ -163,7 +151,33 @@ public class CloudSim {
 	    }
 	    
 	    init(numUser, cal, traceFlag);
-	    minTimeBetweenEvents = periodBetweenEvents;
+	    SimulationContext.current().minTimeBetweenEvents = periodBetweenEvents;
+	}
+
+	/**
+	 * Initialises CloudSim parameters, using the given future event queue. This method should be
+	 * called before creating any entities.
+	 * 
+	 * @param numUser the number of User Entities created
+	 * @param cal starting time for this simulation. If it is <tt>null</tt>, then the time will be
+	 *            taken from <tt>Calendar.getInstance()</tt>
+	 * @param traceFlag <tt>true</tt> if CloudSim trace need to be written
+	 * @param futureQueue an empty queue that will hold the future events, e.g. a
+	 *            {@link FutureQueueCalendar}. By default a {@link FutureQueueTreeSet} is used, or a
+	 *            {@link FutureQueueCalendar} if the context has been set to use one with
+	 *            {@link SimulationContext#setCalendarQueue(boolean)}.
+	 * @see #init(int, Calendar, boolean)
+	 * @pre numUser >= 0
+	 * @pre futureQueue != null
+	 * @post $none
+	 */
+	public static void init(int numUser, Calendar cal, boolean traceFlag, FutureQueue futureQueue) {
+		if (futureQueue == null || futureQueue.size() > 0) {
+			throw new IllegalArgumentException("The future event queue should be an empty queue.");
+		}
+
+		init(numUser, cal, traceFlag);
+		SimulationContext.current().future = futureQueue;
 	}
 	
 	
@@ -183,16 +197,17 @@ public class CloudSim {
 	 * @post $none
 	 */
 	public static double startSimulation() throws NullPointerException {
+		SimulationContext context = SimulationContext.current();
 		Log.printLine("Starting CloudSim version " + CLOUDSIM_VERSION_STRING);
 		try {
 			double clock = run();
 
 			// reset all static variables
-			cisId = -1;
-			shutdownId = -1;
-			cis = null;
-			calendar = null;
-			traceFlag = false;
+			context.cisId = -1;
+			context.shutdownId = -1;
+			context.cis = null;
+			context.calendar = null;
+			context.traceFlag = false;
 
 			return clock;
 		} catch (IllegalArgumentException e) {
@@ -229,7 +244,8 @@ public class CloudSim {
 	 * @return true, if successful; false otherwise.
 	 */
 	public static boolean terminateSimulation() {
-		running = false;
+		SimulationContext context = SimulationContext.current();
+		context.running = false;
 		printMessage("Simulation: Reached termination time.");
 		return true;
 	}
@@ -241,10 +257,11 @@ public class CloudSim {
 	 * @return true, if successful otherwise.
 	 */
 	public static boolean terminateSimulation(double time) {
-		if (time <= clock) {
+		SimulationContext context = SimulationContext.current();
+		if (time <= context.clock) {
 			return false;
 		} else {
-			terminateAt = time;
+			context.terminateAt = time;
 		}
 		return true;
 	}
@@ -255,7 +272,7 @@ public class CloudSim {
 	 * @return the minimum time between events.
 	 */
 	public static double getMinTimeBetweenEvents() {
-	    return minTimeBetweenEvents;
+	    return SimulationContext.current().minTimeBetweenEvents;
 	}
 
 	/**
@@ -268,10 +285,11 @@ public class CloudSim {
 	 * @post $none
 	 */
 	public static Calendar getSimulationCalendar() {
+		SimulationContext context = SimulationContext.current();
 		// make a new copy
-		Calendar clone = calendar;
-		if (calendar != null) {
-			clone = (Calendar) calendar.clone();
+		Calendar clone = context.calendar;
+		if (context.calendar != null) {
+			clone = (Calendar) context.calendar.clone();
 		}
 
 		return clone;
@@ -285,7 +303,7 @@ public class CloudSim {
 	 * @post $result >= -1
 	 */
 	public static int getCloudInfoServiceEntityId() {
-		return cisId;
+		return SimulationContext.current().cisId;
 	}
 
 	/**
@@ -298,59 +316,31 @@ public class CloudSim {
 	 * @post $none
 	 */
 	public static List<Integer> getCloudResourceList() {
-		if (cis == null) {
+		SimulationContext context = SimulationContext.current();
+		if (context.cis == null) {
 			return null;
 		}
 
-		return cis.getList();
+		return context.cis.getList();
 	}
 
 	// ======== SIMULATION METHODS ===============//
 
-	/** The entities. */
-	private static List<SimEntity> entities;
-
-	/** The future event queue. */
-	protected static FutureQueue future;
-
-	/** The deferred event queue. */
-	protected static DeferredQueue deferred;
-
-	/** The simulation clock. */
-	private static double clock;
-
-	/** Flag for checking if the simulation is running. */
-	private static boolean running;
-
-	/** The entities by name. */
-	private static Map<String, SimEntity> entitiesByName;
-
-	// The predicates used in entity wait methods
-	/** The wait predicates. */
-	private static Map<Integer, Predicate> waitPredicates;
-
-	/** The paused. */
-	private static boolean paused = false;
-
-	/** The pause at. */
-	private static long pauseAt = -1;
-
-	/** The abrupt terminate. */
-	private static boolean abruptTerminate = false;
-
 	/**
 	 * Initialise the simulation for stand alone simulations. This function should be called at the
 	 * start of the simulation.
 	 */
 	protected static void initialize() {
+		SimulationContext context = SimulationContext.current();
 		Log.printLine("Initialising...");
-		entities = new ArrayList<SimEntity>();
-		entitiesByName = new LinkedHashMap<String, SimEntity>();
-		future = new FutureQueue();
-		deferred = new DeferredQueue();
-		waitPredicates = new HashMap<Integer, Predicate>();
-		clock = 0;
-		running = false;
+		context.entities = new ArrayList<SimEntity>();
+		context.entitiesByName = new LinkedHashMap<String, SimEntity>();
+		context.future = context.calendarQueue ? new FutureQueueCalendar() : new FutureQueueTreeSet();
+		context.deferred = new DeferredQueue();
+		context.activeEntities = new BitSet();
+		context.waitPredicates = new HashMap<Integer, Predicate>();
+		context.clock = 0;
+		context.running = false;
 	}
 
 	// The two standard predicates
@@ -369,7 +359,7 @@ public class CloudSim {
 	 * @return the simulation time
 	 */
 	public static double clock() {
-		return clock;
+		return SimulationContext.current().clock;
 	}
 
 	/**
@@ -378,7 +368,7 @@ public class CloudSim {
 	 * @return The number of entities
 	 */
 	public static int getNumEntities() {
-		return entities.size();
+		return SimulationContext.current().entities.size();
 	}
 
 	/**
@@ -388,7 +378,7 @@ public class CloudSim {
 	 * @return The entity, or if it could not be found
 	 */
 	public static SimEntity getEntity(int id) {
-		return entities.get(id);
+		return SimulationContext.current().entities.get(id);
 	}
 
 	/**
@@ -398,7 +388,7 @@ public class CloudSim {
 	 * @return The entity
 	 */
 	public static SimEntity getEntity(String name) {
-		return entitiesByName.get(name);
+		return SimulationContext.current().entitiesByName.get(name);
 	}
 
 	/**
@@ -408,7 +398,8 @@ public class CloudSim {
 	 * @return The entity's unique id number
 	 */
 	public static int getEntityId(String name) {
-		SimEntity obj = entitiesByName.get(name);
+		SimulationContext context = SimulationContext.current();
+		SimEntity obj = context.entitiesByName.get(name);
 		if (obj == null) {
 			return NOT_FOUND;
 		} else {
@@ -455,10 +446,11 @@ public class CloudSim {
 	 * @return the entity iterator
 	 */
 	public static List<SimEntity> getEntityList() {
+		SimulationContext context = SimulationContext.current();
 		// create a new list to prevent the user from changing
 		// the list of entities used by Simulation
 		List<SimEntity> list = new LinkedList<SimEntity>();
-		list.addAll(entities);
+		list.addAll(context.entities);
 		return list;
 	}
 
@@ -471,19 +463,34 @@ public class CloudSim {
 	 * @param e The new entity
 	 */
 	public static void addEntity(SimEntity e) {
+		SimulationContext context = SimulationContext.current();
 		SimEvent evt;
-		if (running) {
+		if (context.running) {
 			// Post an event to make this entity
-			evt = new SimEvent(SimEvent.CREATE, clock, 1, 0, 0, e);
-			future.addEvent(evt);
+			evt = newEvent(context, SimEvent.CREATE, context.clock, 1, 0, 0, e);
+			context.future.addEvent(evt);
 		}
 		if (e.getId() == -1) { // Only add once!
 			
 			//System.out.println("From CloudSim.addEntity(): Adding SimEntity "+e.getName());
-			int id = entities.size();
+			int id = context.entities.size();
 			e.setId(id);
-			entities.add(e);
-			entitiesByName.put(e.getName(), e);
+			context.entities.add(e);
+			context.entitiesByName.put(e.getName(), e);
+			entityStateChanged(e);
+		}
+	}
+
+	/**
+	 * Internal method used to keep track of the entities to be run on each clock tick. It is called
+	 * whenever the state of an entity changes and should <b>not</b> be called from user simulations.
+	 * 
+	 * @param e the entity
+	 */
+	protected static void entityStateChanged(SimEntity e) {
+		SimulationContext context = SimulationContext.current();
+		if (context.activeEntities != null && e.getId() >= 0) {
+			context.activeEntities.set(e.getId(), e.getState() == SimEntity.RUNNABLE);
 		}
 	}
 
@@ -509,47 +516,43 @@ public class CloudSim {
 	 * @return true, if successful otherwise
 	 */
 	public static boolean runClockTick() {
+		SimulationContext context = SimulationContext.current();
 		SimEntity ent;
 		boolean queue_empty;
 		
-		int entities_size = entities.size();
+		int entities_size = context.entities.size();
 
-		for (int i = 0; i < entities_size; i++) {
-			ent = entities.get(i);
+		// Entities added during this tick are only run on the next one
+		for (int i = context.activeEntities.nextSetBit(0); i >= 0 && i < entities_size; i = context.activeEntities
+				.nextSetBit(i + 1)) {
+			ent = context.entities.get(i);
 			if (ent.getState() == SimEntity.RUNNABLE) {
 				ent.run();
+				if (ent.getState() == SimEntity.RUNNABLE && ent.getEventBuffer() == null
+						&& context.deferred.size(i) == 0) {
+					context.activeEntities.clear(i);
+				}
 			}
 		}
 				
 		// If there are more future events then deal with them
-		if (future.size() > 0) {
-			List<SimEvent> toRemove = new ArrayList<SimEvent>();
-			Iterator<SimEvent> fit = future.iterator();
+		if (context.future.size() > 0) {
 			queue_empty = false;
-			SimEvent first = fit.next();
-			processEvent(first);
-			future.remove(first);
-
-			fit = future.iterator();
-
-			// Check if next events are at same time...
-			boolean trymore = fit.hasNext();
-			while (trymore) {
-				SimEvent next = fit.next();
-				if (next.eventTime() == first.eventTime()) {
-					processEvent(next);
-					toRemove.add(next);
-					trymore = fit.hasNext();
-				} else {
-					trymore = false;
-				}
+			double time = context.future.peek().eventTime();
+
+			// Process the whole batch of events at the same time, including
+			// those created while the batch is being processed
+			SimEvent event = context.future.pollAllAt(time);
+			while (event != null) {
+				SimEvent next = event.next;
+				event.next = null;
+				processEvent(event);
+				event = next != null ? next : context.future.pollAllAt(time);
 			}
 
-			future.removeAll(toRemove);
-
 		} else {
 			queue_empty = true;
-			running = false;
+			context.running = false;
 			printMessage("Simulation: No more future events");
 		}
 
@@ -570,9 +573,10 @@ public class CloudSim {
 	 * @param delay the delay
 	 */
 	public static void hold(int src, long delay) {
-		SimEvent e = new SimEvent(SimEvent.HOLD_DONE, clock + delay, src);
-		future.addEvent(e);
-		entities.get(src).setState(SimEntity.HOLDING);
+		SimulationContext context = SimulationContext.current();
+		SimEvent e = newEvent(context, SimEvent.HOLD_DONE, context.clock + delay, src, -1, -1, null);
+		context.future.addEvent(e);
+		context.entities.get(src).setState(SimEntity.HOLDING);
 	}
 
 	/**
@@ -582,9 +586,10 @@ public class CloudSim {
 	 * @param delay the delay
 	 */
 	public static void pause(int src, double delay) {
-		SimEvent e = new SimEvent(SimEvent.HOLD_DONE, clock + delay, src);
-		future.addEvent(e);
-		entities.get(src).setState(SimEntity.HOLDING);
+		SimulationContext context = SimulationContext.current();
+		SimEvent e = newEvent(context, SimEvent.HOLD_DONE, context.clock + delay, src, -1, -1, null);
+		context.future.addEvent(e);
+		context.entities.get(src).setState(SimEntity.HOLDING);
 	}
 
 	/**
@@ -597,12 +602,13 @@ public class CloudSim {
 	 * @param data the data
 	 */
 	public static void send(int src, int dest, double delay, int tag, Object data) {
+		SimulationContext context = SimulationContext.current();
 		if (delay < 0) {
 			throw new IllegalArgumentException("Send delay can't be negative.");
 		}
 
-		SimEvent e = new SimEvent(SimEvent.SEND, clock + delay, src, dest, tag, data);
-		future.addEvent(e);
+		SimEvent e = newEvent(context, SimEvent.SEND, context.clock + delay, src, dest, tag, data);
+		context.future.addEvent(e);
 	}
 
 	/**
@@ -615,12 +621,13 @@ public class CloudSim {
 	 * @param data the data
 	 */
 	public static void sendFirst(int src, int dest, double delay, int tag, Object data) {
+		SimulationContext context = SimulationContext.current();
 		if (delay < 0) {
 			throw new IllegalArgumentException("Send delay can't be negative.");
 		}
 
-		SimEvent e = new SimEvent(SimEvent.SEND, clock + delay, src, dest, tag, data);
-		future.addEventFirst(e);
+		SimEvent e = newEvent(context, SimEvent.SEND, context.clock + delay, src, dest, tag, data);
+		context.future.addEventFirst(e);
 	}
 
 	/**
@@ -632,10 +639,11 @@ public class CloudSim {
 	 * @param p the p
 	 */
 	public static void wait(int src, Predicate p) {
-		entities.get(src).setState(SimEntity.WAITING);
+		SimulationContext context = SimulationContext.current();
+		context.entities.get(src).setState(SimEntity.WAITING);
 		if (p != SIM_ANY) {
 			// If a predicate has been used store it in order to check it
-			waitPredicates.put(src, p);
+			context.waitPredicates.put(src, p);
 		}
 	}
 
@@ -647,12 +655,13 @@ public class CloudSim {
 	 * @return the int
 	 */
 	public static int waiting(int d, Predicate p) {
+		SimulationContext context = SimulationContext.current();
 		int count = 0;
 		SimEvent event;
-		Iterator<SimEvent> iterator = deferred.iterator();
+		Iterator<SimEvent> iterator = context.deferred.iterator(d);
 		while (iterator.hasNext()) {
 			event = iterator.next();
-			if ((event.getDestination() == d) && (p.match(event))) {
+			if (p.match(event)) {
 				count++;
 			}
 		}
@@ -667,16 +676,7 @@ public class CloudSim {
 	 * @return the sim event
 	 */
 	public static SimEvent select(int src, Predicate p) {
-		SimEvent ev = null;
-		Iterator<SimEvent> iterator = deferred.iterator();
-		while (iterator.hasNext()) {
-			ev = iterator.next();
-			if (ev.getDestination() == src && p.match(ev)) {
-				iterator.remove();
-				break;
-			}
-		}
-		return ev;
+		return SimulationContext.current().deferred.select(src, p);
 	}
 
 	/**
@@ -687,15 +687,16 @@ public class CloudSim {
 	 * @return the sim event
 	 */
 	public static SimEvent findFirstDeferred(int src, Predicate p) {
-		SimEvent ev = null;
-		Iterator<SimEvent> iterator = deferred.iterator();
+		SimulationContext context = SimulationContext.current();
+		Iterator<SimEvent> iterator = context.deferred.iterator(src);
 		while (iterator.hasNext()) {
-			ev = iterator.next();
-			if (ev.getDestination() == src && p.match(ev)) {
-				break;
+			SimEvent ev = iterator.next();
+			if (p.match(ev)) {
+				return ev;
 			}
 		}
-		return ev;
+		// as before the queue was indexed, the last event scanned is returned if none matches
+		return context.deferred.last();
 	}
 
 	/**
@@ -706,17 +707,7 @@ public class CloudSim {
 	 * @return the sim event
 	 */
 	public static SimEvent cancel(int src, Predicate p) {
-		SimEvent ev = null;
-		Iterator<SimEvent> iter = future.iterator();
-		while (iter.hasNext()) {
-			ev = iter.next();
-			if (ev.getSource() == src && p.match(ev)) {
-				iter.remove();
-				break;
-			}
-		}
-
-		return ev;
+		return SimulationContext.current().future.cancel(src, p);
 	}
 
 	/**
@@ -728,35 +719,111 @@ public class CloudSim {
 	 * @return true, if successful
 	 */
 	public static boolean cancelAll(int src, Predicate p) {
-		SimEvent ev = null;
-		int previousSize = future.size();
-		Iterator<SimEvent> iter = future.iterator();
-		while (iter.hasNext()) {
-			ev = iter.next();
-			if (ev.getSource() == src && p.match(ev)) {
-				iter.remove();
-			}
+		return SimulationContext.current().future.cancelAll(src, p);
+	}
+
+	/**
+	 * Enables or disables the recycling of events. When enabled, events are returned to a pool once
+	 * they have been processed and are reused for the events sent afterwards, which saves most of the
+	 * event allocations of long simulations. Entities must then not keep a reference to an event
+	 * after their {@link SimEntity#processEvent(SimEvent)} method returns; the data carried by the
+	 * event can be kept.
+	 * 
+	 * @param recycling true to recycle events
+	 */
+	public static void setEventRecycling(boolean recycling) {
+		SimulationContext context = SimulationContext.current();
+		context.eventRecycling = recycling;
+		if (!recycling) {
+			context.recycledEvents = null;
+		}
+	}
+
+	/**
+	 * Enables or disables the ownership check of recycled events. When enabled, recycled events are
+	 * not reused, so any entity reading an event it kept after processing it fails with an
+	 * {@link IllegalStateException}. This is meant to validate entities before turning on event
+	 * recycling and has no effect when recycling is disabled.
+	 * 
+	 * @param check true to check the ownership of events
+	 */
+	public static void setEventOwnershipCheck(boolean check) {
+		SimulationContext context = SimulationContext.current();
+		context.eventOwnershipCheck = check;
+		if (check) {
+			context.recycledEvents = null;
+		}
+	}
+
+	/**
+	 * Checks if events are recycled.
+	 * 
+	 * @return true, if events are recycled
+	 */
+	public static boolean isEventRecycling() {
+		return SimulationContext.current().eventRecycling;
+	}
+
+	/**
+	 * Internal method used to hand a processed event back to the kernel. It does nothing unless event
+	 * recycling is enabled, and should <b>not</b> be called from user simulations.
+	 * 
+	 * @param e the processed event
+	 */
+	protected static void recycle(SimEvent e) {
+		SimulationContext context = SimulationContext.current();
+		if (!context.eventRecycling) {
+			return;
+		}
+		e.recycle();
+		if (!context.eventOwnershipCheck) {
+			e.next = context.recycledEvents;
+			context.recycledEvents = e;
 		}
-		return previousSize < future.size();
 	}
 
 	//
 	// Private internal methods
 	//
 
+	/**
+	 * Creates an event, reusing a recycled one if any is available.
+	 * 
+	 * @param context the context of the simulation
+	 * @param type the internal event type
+	 * @param time the event time
+	 * @param src the src
+	 * @param dest the dest
+	 * @param tag the tag
+	 * @param data the data
+	 * @return the event
+	 */
+	private static SimEvent newEvent(SimulationContext context, int type, double time, int src, int dest, int tag,
+			Object data) {
+		SimEvent e = context.recycledEvents;
+		if (e == null) {
+			return new SimEvent(type, time, src, dest, tag, data);
+		}
+		context.recycledEvents = e.next;
+		e.next = null;
+		e.reuse(type, time, src, dest, tag, data);
+		return e;
+	}
+
 	/**
 	 * Processes an event.
 	 * 
 	 * @param e the e
 	 */
 	private static void processEvent(SimEvent e) {
+		SimulationContext context = SimulationContext.current();
 		int dest, src;
 		SimEntity dest_ent;
 		// Update the system's clock
-		if (e.eventTime() < clock) {
+		if (e.eventTime() < context.clock) {
 			throw new IllegalArgumentException("Past event detected.");
 		}
-		clock = e.eventTime();
+		context.clock = e.eventTime();
 
 		// Ok now process it
 		switch (e.getType()) {
@@ -766,6 +833,7 @@ public class CloudSim {
 			case SimEvent.CREATE:
 				SimEntity newe = (SimEntity) e.getData();
 				addEntityDynamically(newe);
+				recycle(e);
 				break;
 
 			case SimEvent.SEND:
@@ -775,19 +843,22 @@ public class CloudSim {
 					throw new IllegalArgumentException("Attempt to send to a null entity detected.");
 				} else {
 					int tag = e.getTag();
-					dest_ent = entities.get(dest);
+					dest_ent = context.entities.get(dest);
 					if (dest_ent.getState() == SimEntity.WAITING) {
 						Integer destObj = Integer.valueOf(dest);
-						Predicate p = waitPredicates.get(destObj);
+						Predicate p = context.waitPredicates.get(destObj);
 						if ((p == null) || (tag == 9999) || (p.match(e))) {
-							dest_ent.setEventBuffer((SimEvent) e.clone());
+							dest_ent.setEventBuffer(newEvent(context, e.getType(), e.eventTime(), e.getSource(),
+									dest, tag, e.getData()));
 							dest_ent.setState(SimEntity.RUNNABLE);
-							waitPredicates.remove(destObj);
+							context.waitPredicates.remove(destObj);
+							recycle(e);
 						} else {
-							deferred.addEvent(e);
+							context.deferred.addEvent(e);
 						}
 					} else {
-						deferred.addEvent(e);
+						context.deferred.addEvent(e);
+						entityStateChanged(dest_ent);
 					}
 				}
 				break;
@@ -797,8 +868,9 @@ public class CloudSim {
 				if (src < 0) {
 					throw new IllegalArgumentException("Null entity holding.");
 				} else {
-					entities.get(src).setState(SimEntity.RUNNABLE);
+					context.entities.get(src).setState(SimEntity.RUNNABLE);
 				}
+				recycle(e);
 				break;
 
 			default:
@@ -811,9 +883,10 @@ public class CloudSim {
 	 * simulations.
 	 */
 	public static void runStart() {
-		running = true;
+		SimulationContext context = SimulationContext.current();
+		context.running = true;
 		// Start all the entities
-		for (SimEntity ent : entities) {
+		for (SimEntity ent : context.entities) {
 			//System.out.println("From CloudSim.runStart(): Starting SimEntity "+ent.getName());
 			ent.startEntity();
 		}
@@ -828,7 +901,7 @@ public class CloudSim {
 	 * @return if the simulation is still running, otherwise
 	 */
 	public static boolean running() {
-		return running;
+		return SimulationContext.current().running;
 	}
 
 	/**
@@ -837,8 +910,9 @@ public class CloudSim {
 	 * @return true, if successful otherwise.
 	 */
 	public static boolean pauseSimulation() {
-		paused = true;
-		return paused;
+		SimulationContext context = SimulationContext.current();
+		context.paused = true;
+		return context.paused;
 	}
 
 	/**
@@ -848,10 +922,11 @@ public class CloudSim {
 	 * @return true, if successful otherwise.
 	 */
 	public static boolean pauseSimulation(long time) {
-		if (time <= clock) {
+		SimulationContext context = SimulationContext.current();
+		if (time <= context.clock) {
 			return false;
 		} else {
-			pauseAt = time;
+			context.pauseAt = time;
 		}
 		return true;
 	}
@@ -862,13 +937,102 @@ public class CloudSim {
 	 * @return if the simulation has been restarted or or otherwise.
 	 */
 	public static boolean resumeSimulation() {
-		paused = false;
+		SimulationContext context = SimulationContext.current();
+		context.paused = false;
 
-		if (pauseAt <= clock) {
-			pauseAt = -1;
+		if (context.pauseAt <= context.clock) {
+			context.pauseAt = -1;
 		}
 
-		return !paused;
+		return !context.paused;
+	}
+
+	/**
+	 * Writes a checkpoint of the simulation. Restoring it with {@link #restore(InputStream)} gives an
+	 * independent copy of the simulation in its current state, which can be run on from there, so a
+	 * warmed-up simulation can be forked into any number of continuations. This method must not be
+	 * called while an entity processes an event: during the simulation, use
+	 * {@link #checkpointAt(double, File)}.
+	 * 
+	 * @param out the stream to write to; it is not closed
+	 * @throws IOException if the stream cannot be written or an object of the simulation cannot be
+	 *             checkpointed
+	 * @see Checkpoint
+	 */
+	public static void checkpoint(OutputStream out) throws IOException {
+		Checkpoint.write(SimulationContext.current(), out);
+	}
+
+	/**
+	 * Schedules a checkpoint of the simulation. The checkpoint is written to a file between two
+	 * clock ticks, as soon as all the events up to the given time have been processed. If it cannot
+	 * be written, the simulation stops and {@link #run()} throws an {@link UncheckedIOException}.
+	 * 
+	 * @param time the simulation time
+	 * @param file the file to write the checkpoint to
+	 * @return true, if successful otherwise.
+	 * @see #checkpoint(OutputStream)
+	 */
+	public static boolean checkpointAt(double time, File file) {
+		SimulationContext context = SimulationContext.current();
+		if (time < context.clock || file == null) {
+			return false;
+		}
+		context.checkpointAt = time;
+		context.checkpointFile = file;
+		return true;
+	}
+
+	/**
+	 * Writes a checkpoint of the simulation to a file.
+	 * 
+	 * @param file the file
+	 * @throws IOException if the file cannot be written or an object of the simulation cannot be
+	 *             checkpointed
+	 * @see #checkpoint(OutputStream)
+	 */
+	public static void checkpoint(File file) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		try {
+			checkpoint(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Restores a checkpoint written by {@link #checkpoint(OutputStream)} and binds it to the calling
+	 * thread, which can then run the simulation on with {@link #startSimulation()}. Static fields are
+	 * not part of a checkpoint, so references to entities kept in static fields still point to the
+	 * entities of the original simulation; they have to be looked up again, e.g. with
+	 * {@link #getEntity(String)}.
+	 * 
+	 * @param in the stream to read from; it is not closed
+	 * @return the restored simulation
+	 * @throws IOException if the stream cannot be read or is not a checkpoint
+	 * @see SimulationContext#setCurrent(SimulationContext)
+	 */
+	public static SimulationContext restore(InputStream in) throws IOException {
+		SimulationContext context = Checkpoint.read(in);
+		SimulationContext.setCurrent(context);
+		return context;
+	}
+
+	/**
+	 * Restores a checkpoint from a file.
+	 * 
+	 * @param file the file
+	 * @return the restored simulation
+	 * @throws IOException if the file cannot be read or is not a checkpoint
+	 * @see #restore(InputStream)
+	 */
+	public static SimulationContext restore(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+		try {
+			return restore(in);
+		} finally {
+			in.close();
+		}
 	}
 
 	/**
@@ -878,38 +1042,57 @@ public class CloudSim {
 	 * @return the double last clock value
 	 */
 	public static double run() {
-		if (!running) {
+		SimulationContext context = SimulationContext.current();
+		if (!context.running) {
 			runStart();
 		}
 		while (true) {
-			if (runClockTick() || abruptTerminate) {
+			if (runClockTick() || context.abruptTerminate) {
 				break;
 			}
 
+			if (context.checkpointAt >= 0
+					&& (context.future.size() == 0 || context.future.peek().eventTime() > context.checkpointAt)) {
+				File file = context.checkpointFile;
+				context.checkpointAt = -1;
+				context.checkpointFile = null;
+				try {
+					checkpoint(file);
+				} catch (IOException e) {
+					// running on would lose the state the caller asked to keep
+					throw new UncheckedIOException("Cannot write the checkpoint to " + file, e);
+				}
+			}
+
 			// this block allows termination of simulation at a specific time
-			if (terminateAt > 0.0 && clock >= terminateAt) {
+			if (context.terminateAt > 0.0 && context.clock >= context.terminateAt) {
 				terminateSimulation();
-				clock = terminateAt;
+				context.clock = context.terminateAt;
 				break;
 			}
 
-			if (pauseAt != -1
-					&& ((future.size() > 0 && clock <= pauseAt && pauseAt <= future.iterator().next()
-							.eventTime()) || future.size() == 0 && pauseAt <= clock)) {
+			if (context.pauseAt != -1
+					&& ((context.future.size() > 0 && context.clock <= context.pauseAt && context.pauseAt <= context.future.peek().eventTime()) || context.future.size() == 0 && context.pauseAt <= context.clock)) {
 				pauseSimulation();
-				clock = pauseAt;
+				context.clock = context.pauseAt;
 			}
 
-			while (paused) {
+			while (context.paused) {
 				try {
 					Thread.sleep(100);
 				} catch (InterruptedException e) {
-					e.printStackTrace();
+					// ends the run, keeping the interrupt for the caller
+					Thread.currentThread().interrupt();
+					context.paused = false;
+					abruptallyTerminate();
 				}
 			}
+			if (context.abruptTerminate) {
+				break;
+			}
 		}
 
-		double clock = clock();
+		double clock = context.clock;
 
 		finishSimulation();
 		runStop();
@@ -922,39 +1105,46 @@ public class CloudSim {
 	 * in user simulations.
 	 */
 	public static void finishSimulation() {
+		SimulationContext context = SimulationContext.current();
 		// Allow all entities to exit their body method
-		if (!abruptTerminate) {
-			for (SimEntity ent : entities) {
+		if (!context.abruptTerminate) {
+			for (SimEntity ent : context.entities) {
 				if (ent.getState() != SimEntity.FINISHED) {
 					ent.run();
 				}
 			}
 		}
 
-		for (SimEntity ent : entities) {
+		for (SimEntity ent : context.entities) {
 			ent.shutdownEntity();
 		}
 
+		for (Runnable listener : context.finishListeners) {
+			listener.run();
+		}
+
 		// reset all static variables
 		// Private data members
-		entities = null;
-		entitiesByName = null;
-		future = null;
-		deferred = null;
-		clock = 0L;
-		running = false;
-
-		waitPredicates = null;
-		paused = false;
-		pauseAt = -1;
-		abruptTerminate = false;
+		context.entities = null;
+		context.entitiesByName = null;
+		context.future = null;
+		context.deferred = null;
+		context.activeEntities = null;
+		context.clock = 0L;
+		context.running = false;
+
+		context.waitPredicates = null;
+		context.recycledEvents = null;
+		context.paused = false;
+		context.pauseAt = -1;
+		context.abruptTerminate = false;
 	}
 
 	/**
 	 * Abruptally terminate.
 	 */
 	public static void abruptallyTerminate() {
-		abruptTerminate = true;
+		SimulationContext.current().abruptTerminate = true;
 	}
 
 	/**
@@ -972,7 +1162,7 @@ public class CloudSim {
 	 * @return true, if is paused
 	 */
 	public static boolean isPaused() {
-		return paused;
+		return SimulationContext.current().paused;
 	}
 
 }
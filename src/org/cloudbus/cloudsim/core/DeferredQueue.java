@@ -8,41 +8,76 @@
 
 package org.cloudbus.cloudsim.core;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+import org.cloudbus.cloudsim.core.predicates.Predicate;
+import org.cloudbus.cloudsim.core.predicates.PredicateType;
 
 /**
- * This class implements the deferred event queue used by {@link Simulation}. The event queue uses a
- * linked list to store the events.
- * 
+ * This class implements the deferred event queue used by {@link Simulation}. The events are indexed
+ * by destination entity and tag: the events of each destination and tag are kept in their own linked
+ * list, in queue order. Looking up the events of an entity thus does not depend on the events waiting
+ * for other entities, and looking up events by tag only looks at the events with these tags.
+ *
  * @author Marcos Dias de Assuncao
  * @since CloudSim Toolkit 1.0
  * @see Simulation
  * @see SimEvent
  */
-public class DeferredQueue {
+public class DeferredQueue implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
 
-	/** The list. */
-	private final List<SimEvent> list = new LinkedList<SimEvent>();
+	/** The events of each destination entity, indexed by entity id. */
+	private final List<DestinationEvents> destinations = new ArrayList<DestinationEvents>();
 
-	/** The max time. */
-	private double maxTime = -1;
+	/** The number of events in the queue. */
+	private int size = 0;
+
+	/** The serial, used to keep the order of events across destinations and tags. */
+	private long serial = 0;
 
 	/**
 	 * Adds a new event to the queue. Adding a new event to the queue preserves the temporal order
 	 * of the events.
-	 * 
+	 *
 	 * @param newEvent The event to be added to the queue.
 	 */
 	public void addEvent(SimEvent newEvent) {
+		int destination = newEvent.getDestination();
+		while (destination >= destinations.size()) {
+			destinations.add(null);
+		}
+		DestinationEvents events = destinations.get(destination);
+		if (events == null) {
+			events = new DestinationEvents();
+			destinations.set(destination, events);
+		}
+		newEvent.setSerial(serial++);
+		size++;
+		events.size++;
+
+		int i = events.indexOf(newEvent.getTag());
+		if (i < 0) {
+			i = events.addTag(newEvent.getTag());
+		}
+		LinkedList<SimEvent> list = events.lists.get(i);
+
 		// The event has to be inserted as the last of all events
 		// with the same event_time(). Yes, this matters.
 		double eventTime = newEvent.eventTime();
-		if (eventTime >= maxTime) {
+		if (list.isEmpty() || eventTime >= list.getLast().eventTime()) {
 			list.add(newEvent);
-			maxTime = eventTime;
 			return;
 		}
 
@@ -61,28 +96,310 @@ public class DeferredQueue {
 	}
 
 	/**
-	 * Returns an iterator to the events in the queue.
-	 * 
+	 * Returns an iterator to the events in the queue, in queue order. Removing an event through the
+	 * iterator removes it from the queue.
+	 * <p>
+	 * Since the events are kept per destination and tag, the iterator works on a sorted copy of the
+	 * queue: every call copies all the events and sorts them, which takes O(n log n) time and O(n)
+	 * memory. The kernel never calls it; it is meant for occasional inspection, while
+	 * {@link #iterator(int)} and {@link #select(int, Predicate)} only look at the events of one entity.
+	 *
 	 * @return the iterator
 	 */
 	public Iterator<SimEvent> iterator() {
-		return list.iterator();
+		List<SimEvent> events = new ArrayList<SimEvent>(size);
+		for (DestinationEvents destination : destinations) {
+			if (destination != null) {
+				for (LinkedList<SimEvent> list : destination.lists) {
+					events.addAll(list);
+				}
+			}
+		}
+		Collections.sort(events, ORDER);
+		final Iterator<SimEvent> iterator = events.iterator();
+		return new Iterator<SimEvent>() {
+
+			private SimEvent last = null;
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public SimEvent next() {
+				last = iterator.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				DestinationEvents destination = destinations.get(last.getDestination());
+				LinkedList<SimEvent> list = destination.lists.get(destination.indexOf(last.getTag()));
+				Iterator<SimEvent> events = list.iterator();
+				while (events.hasNext()) {
+					if (events.next() == last) {
+						events.remove();
+						destination.size--;
+						size--;
+						break;
+					}
+				}
+				last = null;
+			}
+		};
+	}
+
+	/**
+	 * Returns an iterator to the events in the queue for a given destination entity, in queue
+	 * order. Removing an event through the iterator removes it from the queue.
+	 *
+	 * @param destination the destination entity id
+	 * @return the iterator
+	 */
+	public Iterator<SimEvent> iterator(int destination) {
+		if (size(destination) == 0) {
+			return Collections.<SimEvent> emptyList().iterator();
+		}
+		final DestinationEvents events = destinations.get(destination);
+		final int count = events.lists.size();
+		final List<ListIterator<SimEvent>> iterators = new ArrayList<ListIterator<SimEvent>>(count);
+		for (LinkedList<SimEvent> list : events.lists) {
+			iterators.add(list.listIterator());
+		}
+		return new Iterator<SimEvent>() {
+
+			/** The tag list of the last event returned. */
+			private int last = -1;
+
+			@Override
+			public boolean hasNext() {
+				for (int i = 0; i < count; i++) {
+					if (iterators.get(i).hasNext()) {
+						return true;
+					}
+				}
+				return false;
+			}
+
+			@Override
+			public SimEvent next() {
+				// merges the tag lists, each of them being in queue order
+				int first = -1;
+				SimEvent firstEvent = null;
+				for (int i = 0; i < count; i++) {
+					ListIterator<SimEvent> iterator = iterators.get(i);
+					if (iterator.hasNext()) {
+						SimEvent event = iterator.next();
+						iterator.previous();
+						if (firstEvent == null || ORDER.compare(event, firstEvent) < 0) {
+							first = i;
+							firstEvent = event;
+						}
+					}
+				}
+				if (first < 0) {
+					throw new NoSuchElementException();
+				}
+				last = first;
+				return iterators.get(first).next();
+			}
+
+			@Override
+			public void remove() {
+				if (last < 0) {
+					throw new IllegalStateException();
+				}
+				iterators.get(last).remove();
+				last = -1;
+				events.size--;
+				size--;
+			}
+		};
+	}
+
+	/**
+	 * Removes the first event, in queue order, for a given destination entity that matches a
+	 * predicate. Only the events with the right tags are looked at if the predicate is a
+	 * {@link PredicateType}.
+	 *
+	 * @param destination the destination entity id
+	 * @param p the predicate
+	 * @return the removed event, or <tt>null</tt> if no event matches
+	 */
+	public SimEvent select(int destination, Predicate p) {
+		if (size(destination) == 0) {
+			return null;
+		}
+		DestinationEvents events = destinations.get(destination);
+		int first = -1;
+		SimEvent firstEvent = null;
+		if (p instanceof PredicateType) {
+			PredicateType type = (PredicateType) p;
+			for (int t = 0; t < type.getTagCount(); t++) {
+				int i = events.indexOf(type.getTag(t));
+				if (i >= 0) {
+					SimEvent event = first(events.lists.get(i), p);
+					if (event != null && (firstEvent == null || ORDER.compare(event, firstEvent) < 0)) {
+						first = i;
+						firstEvent = event;
+					}
+				}
+			}
+		} else {
+			for (int i = 0; i < events.lists.size(); i++) {
+				SimEvent event = first(events.lists.get(i), p);
+				if (event != null && (firstEvent == null || ORDER.compare(event, firstEvent) < 0)) {
+					first = i;
+					firstEvent = event;
+				}
+			}
+		}
+		if (firstEvent == null) {
+			return null;
+		}
+
+		Iterator<SimEvent> iterator = events.lists.get(first).iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next() == firstEvent) {
+				iterator.remove();
+				break;
+			}
+		}
+		events.size--;
+		size--;
+		return firstEvent;
+	}
+
+	/**
+	 * Returns the last event of the queue.
+	 *
+	 * @return the last event, or <tt>null</tt> if the queue is empty
+	 */
+	public SimEvent last() {
+		SimEvent last = null;
+		for (DestinationEvents destination : destinations) {
+			if (destination == null) {
+				continue;
+			}
+			for (LinkedList<SimEvent> list : destination.lists) {
+				if (!list.isEmpty() && (last == null || ORDER.compare(list.getLast(), last) > 0)) {
+					last = list.getLast();
+				}
+			}
+		}
+		return last;
 	}
 
 	/**
 	 * Returns the size of this event queue.
-	 * 
+	 *
 	 * @return the number of events in the queue.
 	 */
 	public int size() {
-		return list.size();
+		return size;
+	}
+
+	/**
+	 * Returns the number of events in the queue for a given destination entity.
+	 *
+	 * @param destination the destination entity id
+	 * @return the number of events for the entity
+	 */
+	public int size(int destination) {
+		if (destination < 0 || destination >= destinations.size() || destinations.get(destination) == null) {
+			return 0;
+		}
+		return destinations.get(destination).size;
 	}
 
 	/**
 	 * Clears the queue.
 	 */
 	public void clear() {
-		list.clear();
+		destinations.clear();
+		size = 0;
+	}
+
+	/**
+	 * Finds the first event of a list that matches a predicate.
+	 *
+	 * @param list the list, in queue order
+	 * @param p the predicate
+	 * @return the event, or <tt>null</tt> if no event matches
+	 */
+	private static SimEvent first(LinkedList<SimEvent> list, Predicate p) {
+		for (SimEvent event : list) {
+			if (p.match(event)) {
+				return event;
+			}
+		}
+		return null;
+	}
+
+	/** Orders events by time and then by the order in which they were added. */
+	private static final Comparator<SimEvent> ORDER = new Comparator<SimEvent>() {
+
+		@Override
+		public int compare(SimEvent e1, SimEvent e2) {
+			if (e1.eventTime() != e2.eventTime()) {
+				return e1.eventTime() < e2.eventTime() ? -1 : 1;
+			}
+			return Long.compare(e1.getSerial(), e2.getSerial());
+		}
+	};
+
+	/**
+	 * The events waiting for a destination entity, in one list per tag. Entities only use a few
+	 * tags, so the tags are looked up linearly.
+	 */
+	private static class DestinationEvents implements Serializable {
+
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		/** The tags. */
+		private int[] tags = new int[4];
+
+		/** The events of each tag, in queue order. */
+		private final List<LinkedList<SimEvent>> lists = new ArrayList<LinkedList<SimEvent>>(4);
+
+		/** The number of events. */
+		private int size = 0;
+
+		/**
+		 * Gets the list of a tag.
+		 *
+		 * @param tag the tag
+		 * @return the list index, or -1 if the tag has never been used
+		 */
+		int indexOf(int tag) {
+			for (int i = 0; i < lists.size(); i++) {
+				if (tags[i] == tag) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Adds an empty list for a tag.
+		 *
+		 * @param tag the tag
+		 * @return the list index
+		 */
+		int addTag(int tag) {
+			int i = lists.size();
+			if (i == tags.length) {
+				tags = Arrays.copyOf(tags, 2 * i);
+			}
+			tags[i] = tag;
+			lists.add(new LinkedList<SimEvent>());
+			return i;
+		}
 	}
 
-}
\ No newline at end of file
+}
@@ -8,92 +8,531 @@
 
 package org.cloudbus.cloudsim.core;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.SortedSet;
-import java.util.TreeSet;
+
+import org.cloudbus.cloudsim.core.predicates.Predicate;
+import org.cloudbus.cloudsim.core.predicates.PredicateType;
 
 /**
- * This class implements the future event queue used by {@link Simulation}. The event queue uses a
- * {@link TreeSet} in order to store the events.
- * 
+ * This class represents the future event queue used by {@link Simulation}. Events are kept in
+ * increasing order of their time; events with the same time are kept in increasing order of their
+ * serial number. Serial numbers are unique: the events added to the head of the queue get serials
+ * lower than those of all the other events, increasing in the order in which they were added.
+ * Concrete queues only decide how the events are stored, the serial numbers are assigned here so
+ * that every implementation produces exactly the same event ordering.
+ * <p>
+ * The queue also indexes its events by source entity and tag, so that cancelling the events of an
+ * entity only looks at the events that entity has scheduled. Events must not be modified while they
+ * are in the queue.
+ *
  * @author Marcos Dias de Assuncao
  * @since CloudSim Toolkit 1.0
  * @see Simulation
- * @see java.util.TreeSet
+ * @see FutureQueueTreeSet
+ * @see FutureQueueCalendar
  */
-public class FutureQueue {
+public abstract class FutureQueue implements Serializable {
 
-	/** The sorted set. */
-	private final SortedSet<SimEvent> sortedSet = new TreeSet<SimEvent>();
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
 
 	/** The serial. */
 	private long serial = 0;
 
+	/** The serial of the next event added to the head of the queue. */
+	private long firstSerial = Long.MIN_VALUE;
+
+	/** The events of each source entity, indexed by entity id. */
+	private transient SourceEvents[] sources = new SourceEvents[0];
+
+	/** The events read with the queue, until they are inserted again. */
+	private transient SimEvent[] restored;
+
 	/**
 	 * Add a new event to the queue. Adding a new event to the queue preserves the temporal order of
 	 * the events in the queue.
-	 * 
+	 *
 	 * @param newEvent The event to be put in the queue.
 	 */
 	public void addEvent(SimEvent newEvent) {
 		newEvent.setSerial(serial++);
-		sortedSet.add(newEvent);
+		insert(newEvent);
+		index(newEvent);
 	}
 
 	/**
 	 * Add a new event to the head of the queue.
-	 * 
+	 *
 	 * @param newEvent The event to be put in the queue.
 	 */
 	public void addEventFirst(SimEvent newEvent) {
-		newEvent.setSerial(0);
-		sortedSet.add(newEvent);
+		newEvent.setSerial(firstSerial++);
+		insert(newEvent);
+		index(newEvent);
+	}
+
+	/**
+	 * Returns the first event of the queue without removing it.
+	 *
+	 * @return the first event, or <tt>null</tt> if the queue is empty
+	 */
+	public abstract SimEvent peek();
+
+	/**
+	 * Removes and returns the first event of the queue.
+	 *
+	 * @return the first event, or <tt>null</tt> if the queue is empty
+	 */
+	public SimEvent poll() {
+		SimEvent first = extractFirst();
+		if (first != null) {
+			unindex(first);
+		}
+		return first;
 	}
 
 	/**
-	 * Returns an iterator to the queue.
-	 * 
+	 * Removes all the events scheduled at the given time, provided it is the time of the first event
+	 * of the queue. The removed events are linked in queue order through their {@link SimEvent#next}
+	 * field, so no temporary collection is needed to hold them.
+	 *
+	 * @param time the time of the first event
+	 * @return the first removed event, or <tt>null</tt> if the first event is not at the given time
+	 */
+	public SimEvent pollAllAt(double time) {
+		SimEvent first = extractAllAt(time);
+		for (SimEvent event = first; event != null; event = event.next) {
+			unindex(event);
+		}
+		return first;
+	}
+
+	/**
+	 * Returns an iterator to the queue. The events are returned in queue order.
+	 *
 	 * @return the iterator
 	 */
 	public Iterator<SimEvent> iterator() {
-		return sortedSet.iterator();
+		final Iterator<SimEvent> iterator = events();
+		return new Iterator<SimEvent>() {
+
+			private SimEvent last = null;
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public SimEvent next() {
+				last = iterator.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				iterator.remove();
+				unindex(last);
+			}
+		};
 	}
 
 	/**
 	 * Returns the size of this event queue.
-	 * 
+	 *
 	 * @return the size
 	 */
-	public int size() {
-		return sortedSet.size();
-	}
+	public abstract int size();
 
 	/**
 	 * Removes the event from the queue.
-	 * 
+	 *
 	 * @param event the event
 	 * @return true, if successful
 	 */
 	public boolean remove(SimEvent event) {
-		return sortedSet.remove(event);
+		if (extract(event)) {
+			unindex(event);
+			return true;
+		}
+		return false;
 	}
 
 	/**
 	 * Removes all the events from the queue.
-	 * 
+	 *
 	 * @param events the events
 	 * @return true, if successful
 	 */
 	public boolean removeAll(Collection<SimEvent> events) {
-		return sortedSet.removeAll(events);
+		boolean modified = false;
+		for (SimEvent event : events) {
+			modified |= remove(event);
+		}
+		return modified;
+	}
+
+	/**
+	 * Removes the first event, in queue order, scheduled by an entity and matching a predicate. Only
+	 * the events of the entity are looked at, and only those with the right tags if the predicate is
+	 * a {@link PredicateType}.
+	 *
+	 * @param source the id of the entity that scheduled the event
+	 * @param p the predicate
+	 * @return the removed event, or <tt>null</tt> if no event matches
+	 */
+	public SimEvent cancel(int source, Predicate p) {
+		SimEvent first = null;
+		if (source < 0) {
+			// events without a source are not indexed
+			Iterator<SimEvent> iterator = events();
+			while (first == null && iterator.hasNext()) {
+				SimEvent event = iterator.next();
+				if (event.getSource() == source && p.match(event)) {
+					first = event;
+				}
+			}
+		} else if (source < sources.length && sources[source] != null) {
+			SourceEvents events = sources[source];
+			if (p instanceof PredicateType) {
+				PredicateType type = (PredicateType) p;
+				for (int t = 0; t < type.getTagCount(); t++) {
+					first = first(events, events.indexOf(type.getTag(t)), p, first);
+				}
+			} else {
+				for (int i = 0; i < events.count; i++) {
+					first = first(events, i, p, first);
+				}
+			}
+		}
+		if (first != null) {
+			remove(first);
+		}
+		return first;
+	}
+
+	/**
+	 * Removes all the events scheduled by an entity and matching a predicate. Only the events of the
+	 * entity are looked at, and only those with the right tags if the predicate is a
+	 * {@link PredicateType}.
+	 *
+	 * @param source the id of the entity that scheduled the events
+	 * @param p the predicate
+	 * @return true, if at least one event has been removed
+	 */
+	public boolean cancelAll(int source, Predicate p) {
+		boolean modified = false;
+		if (source < 0) {
+			// events without a source are not indexed
+			Iterator<SimEvent> iterator = events();
+			while (iterator.hasNext()) {
+				SimEvent event = iterator.next();
+				if (event.getSource() == source && p.match(event)) {
+					iterator.remove();
+					modified = true;
+				}
+			}
+		} else if (source < sources.length && sources[source] != null) {
+			SourceEvents events = sources[source];
+			if (p instanceof PredicateType) {
+				PredicateType type = (PredicateType) p;
+				for (int t = 0; t < type.getTagCount(); t++) {
+					modified |= cancelAll(events, events.indexOf(type.getTag(t)), p);
+				}
+			} else {
+				for (int i = 0; i < events.count; i++) {
+					modified |= cancelAll(events, i, p);
+				}
+			}
+		}
+		return modified;
 	}
 
 	/**
 	 * Clears the queue.
 	 */
 	public void clear() {
-		sortedSet.clear();
+		extractAll();
+		for (SourceEvents events : sources) {
+			if (events != null) {
+				events.clear();
+			}
+		}
+	}
+
+	/**
+	 * Writes the events in queue order rather than with their links, which are rebuilt when the
+	 * queue is read.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(size());
+		Iterator<SimEvent> iterator = events();
+		while (iterator.hasNext()) {
+			out.writeObject(iterator.next());
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		restored = new SimEvent[in.readInt()];
+		for (int i = 0; i < restored.length; i++) {
+			restored[i] = (SimEvent) in.readObject();
+		}
+	}
+
+	/**
+	 * Inserts the events read with the queue, once the concrete queue has been read and has set up
+	 * its storage.
+	 *
+	 * @return this queue
+	 */
+	protected Object readResolve() {
+		sources = new SourceEvents[0];
+		for (SimEvent event : restored) {
+			insert(event);
+			index(event);
+		}
+		restored = null;
+		return this;
+	}
+
+	/**
+	 * Inserts an event whose serial has already been set, preserving the order of the queue.
+	 *
+	 * @param newEvent the event
+	 */
+	protected abstract void insert(SimEvent newEvent);
+
+	/**
+	 * Removes the first event of the queue.
+	 *
+	 * @return the first event, or <tt>null</tt> if the queue is empty
+	 */
+	protected abstract SimEvent extractFirst();
+
+	/**
+	 * Removes all the events scheduled at the given time, provided it is the time of the first event
+	 * of the queue, linking them in queue order through their {@link SimEvent#next} field.
+	 *
+	 * @param time the time of the first event
+	 * @return the first removed event, or <tt>null</tt> if the first event is not at the given time
+	 */
+	protected SimEvent extractAllAt(double time) {
+		SimEvent first = null;
+		SimEvent last = null;
+		SimEvent event = peek();
+		while (event != null && event.eventTime() == time) {
+			extractFirst();
+			if (first == null) {
+				first = event;
+			} else {
+				last.next = event;
+			}
+			last = event;
+			event = peek();
+		}
+		return first;
+	}
+
+	/**
+	 * Removes an event from the queue.
+	 *
+	 * @param event the event
+	 * @return true, if the event was in the queue
+	 */
+	protected abstract boolean extract(SimEvent event);
+
+	/**
+	 * Removes all the events from the queue.
+	 */
+	protected abstract void extractAll();
+
+	/**
+	 * Returns an iterator to the events in queue order. Removing an event through the iterator
+	 * removes it from the queue.
+	 *
+	 * @return the iterator
+	 */
+	protected abstract Iterator<SimEvent> events();
+
+	/**
+	 * Checks if an event is before another one in queue order.
+	 *
+	 * @param e1 the first event
+	 * @param e2 the second event
+	 * @return true, if e1 precedes e2
+	 */
+	static boolean precedes(SimEvent e1, SimEvent e2) {
+		return e1.eventTime() < e2.eventTime()
+				|| (e1.eventTime() == e2.eventTime() && e1.getSerial() < e2.getSerial());
+	}
+
+	/**
+	 * Finds the first event, in queue order, of one tag list of an entity that matches a predicate.
+	 *
+	 * @param events the events of the entity
+	 * @param i the index of the tag list, or -1 if the tag has never been used
+	 * @param p the predicate
+	 * @param first the first matching event found so far, or <tt>null</tt>
+	 * @return the first matching event, of the list or found so far
+	 */
+	private static SimEvent first(SourceEvents events, int i, Predicate p, SimEvent first) {
+		if (i < 0) {
+			return first;
+		}
+		for (SimEvent event = events.heads[i]; event != null; event = event.nextFromSource) {
+			if ((first == null || precedes(event, first)) && p.match(event)) {
+				first = event;
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * Removes the events of one tag list of an entity that match a predicate, walking the list in
+	 * place.
+	 *
+	 * @param events the events of the entity
+	 * @param i the index of the tag list, or -1 if the tag has never been used
+	 * @param p the predicate
+	 * @return true, if at least one event has been removed
+	 */
+	private boolean cancelAll(SourceEvents events, int i, Predicate p) {
+		if (i < 0) {
+			return false;
+		}
+		boolean modified = false;
+		SimEvent event = events.heads[i];
+		while (event != null) {
+			// removing the event unlinks it from the list
+			SimEvent next = event.nextFromSource;
+			if (p.match(event)) {
+				modified |= remove(event);
+			}
+			event = next;
+		}
+		return modified;
+	}
+
+	/**
+	 * Adds an event to the index of its source entity.
+	 *
+	 * @param event the event
+	 */
+	private void index(SimEvent event) {
+		int source = event.getSource();
+		if (source < 0) {
+			return;
+		}
+		if (source >= sources.length) {
+			sources = Arrays.copyOf(sources, Math.max(source + 1, 2 * sources.length));
+		}
+		if (sources[source] == null) {
+			sources[source] = new SourceEvents();
+		}
+		sources[source].add(event);
+	}
+
+	/**
+	 * Removes an event from the index of its source entity.
+	 *
+	 * @param event the event
+	 */
+	private void unindex(SimEvent event) {
+		int source = event.getSource();
+		if (source >= 0) {
+			sources[source].remove(event);
+		}
+	}
+
+	/**
+	 * The events scheduled by an entity, in one doubly linked list per tag. Entities only use a few
+	 * tags, so the tags are looked up linearly.
+	 */
+	private static class SourceEvents {
+
+		/** The tags. */
+		private int[] tags = new int[4];
+
+		/** The first event of each tag. */
+		private SimEvent[] heads = new SimEvent[4];
+
+		/** The last event of each tag. */
+		private SimEvent[] tails = new SimEvent[4];
+
+		/** The number of tags. */
+		private int count = 0;
+
+		/**
+		 * Gets the list of a tag.
+		 *
+		 * @param tag the tag
+		 * @return the list index, or -1 if the tag has never been used
+		 */
+		int indexOf(int tag) {
+			for (int i = 0; i < count; i++) {
+				if (tags[i] == tag) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		void add(SimEvent event) {
+			int i = indexOf(event.getTag());
+			if (i < 0) {
+				if (count == tags.length) {
+					tags = Arrays.copyOf(tags, 2 * count);
+					heads = Arrays.copyOf(heads, 2 * count);
+					tails = Arrays.copyOf(tails, 2 * count);
+				}
+				i = count++;
+				tags[i] = event.getTag();
+			}
+			if (tails[i] == null) {
+				heads[i] = event;
+			} else {
+				tails[i].nextFromSource = event;
+				event.previousFromSource = tails[i];
+			}
+			tails[i] = event;
+		}
+
+		void remove(SimEvent event) {
+			int i = indexOf(event.getTag());
+			if (event.previousFromSource == null) {
+				heads[i] = event.nextFromSource;
+			} else {
+				event.previousFromSource.nextFromSource = event.nextFromSource;
+			}
+			if (event.nextFromSource == null) {
+				tails[i] = event.previousFromSource;
+			} else {
+				event.nextFromSource.previousFromSource = event.previousFromSource;
+			}
+			event.previousFromSource = null;
+			event.nextFromSource = null;
+		}
+
+		void clear() {
+			for (int i = 0; i < count; i++) {
+				for (SimEvent event = heads[i]; event != null;) {
+					SimEvent next = event.nextFromSource;
+					event.previousFromSource = null;
+					event.nextFromSource = null;
+					event = next;
+				}
+				heads[i] = null;
+				tails[i] = null;
+			}
+		}
 	}
 
-}
\ No newline at end of file
+}
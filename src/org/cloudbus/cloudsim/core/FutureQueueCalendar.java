@@ -0,0 +1,413 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class implements the future event queue used by {@link Simulation} as a calendar queue (R.
+ * Brown, "Calendar queues: a fast O(1) priority queue implementation for the simulation event set
+ * problem", CACM 31(10), 1988). Events are hashed by time into an array of buckets of fixed width,
+ * each bucket holding a sorted list linked through the events themselves, so enqueue and dequeue
+ * take constant amortized time and do not allocate. The number of buckets and their width are
+ * adapted to the queue size and to the spacing of the events.
+ * <p>
+ * The ordering of events is identical to {@link FutureQueueTreeSet}. The iterator, however, is
+ * built from a sorted snapshot of the queue and is meant for occasional scans only.
+ *
+ * @see FutureQueue
+ */
+public class FutureQueueCalendar extends FutureQueue {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The minimum number of buckets. */
+	private static final int MIN_BUCKETS = 2;
+
+	/** The number of event separations sampled to estimate the bucket width. */
+	private static final int WIDTH_SAMPLE_SIZE = 25;
+
+	/** Orders events by time and then by serial. */
+	private static final Comparator<SimEvent> ORDER = new Comparator<SimEvent>() {
+
+		@Override
+		public int compare(SimEvent e1, SimEvent e2) {
+			if (e1.eventTime() != e2.eventTime()) {
+				return e1.eventTime() < e2.eventTime() ? -1 : 1;
+			}
+			return Long.compare(e1.getSerial(), e2.getSerial());
+		}
+	};
+
+	/** The first event of each bucket; the events are written by {@link FutureQueue}. */
+	private transient SimEvent[] heads;
+
+	/** The last event of each bucket. */
+	private transient SimEvent[] tails;
+
+	/** The bucket index mask; the number of buckets is always a power of two. */
+	private transient int mask;
+
+	/** The width of a bucket in simulation time. */
+	private double width;
+
+	/** The virtual bucket (time divided by width) at which the search for the first event starts. */
+	private transient long current;
+
+	/** The number of events in the queue. */
+	private transient int size;
+
+	/**
+	 * Creates an empty calendar queue.
+	 */
+	public FutureQueueCalendar() {
+		this(1.0);
+	}
+
+	/**
+	 * Creates an empty calendar queue.
+	 *
+	 * @param initialWidth the initial bucket width; it is re-estimated whenever the queue is resized
+	 */
+	public FutureQueueCalendar(double initialWidth) {
+		if (initialWidth <= 0 || Double.isInfinite(initialWidth) || Double.isNaN(initialWidth)) {
+			throw new IllegalArgumentException("The bucket width should be positive, but is:" + initialWidth);
+		}
+		width = initialWidth;
+		allocate(MIN_BUCKETS);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		allocate(MIN_BUCKETS);
+	}
+
+	@Override
+	protected void insert(SimEvent newEvent) {
+		long bucket = virtualBucket(newEvent.eventTime());
+		link(newEvent, (int) (bucket & mask));
+		if (size == 0 || bucket < current) {
+			current = bucket;
+		}
+		size++;
+		if (size > 2 * heads.length) {
+			resize(2 * heads.length);
+		}
+	}
+
+	@Override
+	public SimEvent peek() {
+		if (size == 0) {
+			return null;
+		}
+		return heads[findFirstBucket()];
+	}
+
+	@Override
+	protected SimEvent extractFirst() {
+		if (size == 0) {
+			return null;
+		}
+		SimEvent first = unlinkFirst(findFirstBucket());
+		shrinkIfSparse();
+		return first;
+	}
+
+	/**
+	 * Events with the same time always share a bucket and sit at its head when they are the first
+	 * events of the queue, so the whole batch is detached from the bucket in a single pass.
+	 */
+	@Override
+	protected SimEvent extractAllAt(double time) {
+		if (size == 0) {
+			return null;
+		}
+		int index = findFirstBucket();
+		SimEvent first = heads[index];
+		if (first.eventTime() != time) {
+			return null;
+		}
+
+		SimEvent last = first;
+		int count = 1;
+		while (last.next != null && last.next.eventTime() == time) {
+			last = last.next;
+			count++;
+		}
+		heads[index] = last.next;
+		if (heads[index] == null) {
+			tails[index] = null;
+		}
+		last.next = null;
+		size -= count;
+		shrinkIfSparse();
+		return first;
+	}
+
+	@Override
+	protected Iterator<SimEvent> events() {
+		final SimEvent[] snapshot = new SimEvent[size];
+		int count = 0;
+		for (SimEvent head : heads) {
+			for (SimEvent event = head; event != null; event = event.next) {
+				snapshot[count++] = event;
+			}
+		}
+		// serials are unique, so the sorted snapshot is in queue order
+		Arrays.sort(snapshot, ORDER);
+
+		return new Iterator<SimEvent>() {
+
+			private int cursor = 0;
+
+			private SimEvent last = null;
+
+			@Override
+			public boolean hasNext() {
+				return cursor < snapshot.length;
+			}
+
+			@Override
+			public SimEvent next() {
+				if (cursor >= snapshot.length) {
+					throw new NoSuchElementException();
+				}
+				last = snapshot[cursor++];
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				FutureQueueCalendar.this.extract(last);
+				last = null;
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	protected boolean extract(SimEvent event) {
+		int index = (int) (virtualBucket(event.eventTime()) & mask);
+		SimEvent previous = null;
+		for (SimEvent e = heads[index]; e != null; e = e.next) {
+			if (e == event) {
+				if (previous == null) {
+					heads[index] = e.next;
+				} else {
+					previous.next = e.next;
+				}
+				if (tails[index] == e) {
+					tails[index] = previous;
+				}
+				e.next = null;
+				size--;
+				shrinkIfSparse();
+				return true;
+			}
+			previous = e;
+		}
+		return false;
+	}
+
+	@Override
+	protected void extractAll() {
+		for (SimEvent head : heads) {
+			SimEvent event = head;
+			while (event != null) {
+				SimEvent next = event.next;
+				event.next = null;
+				event = next;
+			}
+		}
+		allocate(MIN_BUCKETS);
+		size = 0;
+		current = 0;
+	}
+
+	/**
+	 * Gets the virtual bucket of a time, i.e. the number of bucket widths elapsed since time zero.
+	 *
+	 * @param time the time
+	 * @return the virtual bucket
+	 */
+	private long virtualBucket(double time) {
+		return (long) Math.floor(time / width);
+	}
+
+	/**
+	 * Links an event into a bucket after every event it does not precede. Events mostly arrive in
+	 * order, so the tail is checked first.
+	 *
+	 * @param event the event
+	 * @param index the bucket index
+	 */
+	private void link(SimEvent event, int index) {
+		SimEvent tail = tails[index];
+		if (tail == null) {
+			heads[index] = event;
+			tails[index] = event;
+		} else if (!precedes(event, tail)) {
+			tail.next = event;
+			tails[index] = event;
+		} else if (precedes(event, heads[index])) {
+			event.next = heads[index];
+			heads[index] = event;
+		} else {
+			SimEvent previous = heads[index];
+			while (!precedes(event, previous.next)) {
+				previous = previous.next;
+			}
+			event.next = previous.next;
+			previous.next = event;
+		}
+	}
+
+	/**
+	 * Removes the head of a bucket.
+	 *
+	 * @param index the bucket index
+	 * @return the removed event
+	 */
+	private SimEvent unlinkFirst(int index) {
+		SimEvent first = heads[index];
+		heads[index] = first.next;
+		if (heads[index] == null) {
+			tails[index] = null;
+		}
+		first.next = null;
+		size--;
+		return first;
+	}
+
+	/**
+	 * Finds the bucket holding the first event and moves the search start to it. The queue must not
+	 * be empty.
+	 *
+	 * @return the bucket index
+	 */
+	private int findFirstBucket() {
+		for (int i = 0; i < heads.length; i++) {
+			int index = (int) (current & mask);
+			SimEvent head = heads[index];
+			if (head != null && virtualBucket(head.eventTime()) == current) {
+				return index;
+			}
+			current++;
+		}
+
+		// no event in a whole year of buckets: search the heads directly
+		int firstIndex = -1;
+		for (int index = 0; index < heads.length; index++) {
+			if (heads[index] != null && (firstIndex < 0 || precedes(heads[index], heads[firstIndex]))) {
+				firstIndex = index;
+			}
+		}
+		current = virtualBucket(heads[firstIndex].eventTime());
+		return firstIndex;
+	}
+
+	/**
+	 * Halves the number of buckets if the queue became sparse.
+	 */
+	private void shrinkIfSparse() {
+		if (heads.length > MIN_BUCKETS && size < heads.length / 2) {
+			resize(heads.length / 2);
+		}
+	}
+
+	/**
+	 * Creates empty buckets.
+	 *
+	 * @param buckets the number of buckets
+	 */
+	private void allocate(int buckets) {
+		heads = new SimEvent[buckets];
+		tails = new SimEvent[buckets];
+		mask = buckets - 1;
+	}
+
+	/**
+	 * Copies the events into a new set of buckets, re-estimating the bucket width.
+	 *
+	 * @param buckets the new number of buckets
+	 */
+	private void resize(int buckets) {
+		int count = size;
+		SimEvent[] ordered = new SimEvent[count];
+		for (int i = 0; i < count; i++) {
+			ordered[i] = unlinkFirst(findFirstBucket());
+		}
+
+		width = estimateWidth(ordered);
+		allocate(buckets);
+		for (SimEvent event : ordered) {
+			int index = (int) (virtualBucket(event.eventTime()) & mask);
+			if (tails[index] == null) {
+				heads[index] = event;
+			} else {
+				tails[index].next = event;
+			}
+			tails[index] = event;
+		}
+		size = count;
+		current = count > 0 ? virtualBucket(ordered[0].eventTime()) : 0;
+	}
+
+	/**
+	 * Estimates the bucket width as three times the average separation between the first distinct
+	 * event times, ignoring separations larger than twice the average.
+	 *
+	 * @param ordered the events in queue order
+	 * @return the new bucket width
+	 */
+	private double estimateWidth(SimEvent[] ordered) {
+		double[] separations = new double[WIDTH_SAMPLE_SIZE];
+		int count = 0;
+		double total = 0;
+		for (int i = 1; i < ordered.length && count < WIDTH_SAMPLE_SIZE; i++) {
+			double separation = ordered[i].eventTime() - ordered[i - 1].eventTime();
+			if (separation > 0) {
+				separations[count++] = separation;
+				total += separation;
+			}
+		}
+		if (count == 0) {
+			return width;
+		}
+
+		double average = total / count;
+		double trimmedTotal = 0;
+		int trimmedCount = 0;
+		for (int i = 0; i < count; i++) {
+			if (separations[i] <= 2 * average) {
+				trimmedTotal += separations[i];
+				trimmedCount++;
+			}
+		}
+		double newWidth = 3 * trimmedTotal / trimmedCount;
+		if (newWidth <= 0 || Double.isInfinite(newWidth) || Double.isNaN(newWidth)) {
+			return width;
+		}
+		return newWidth;
+	}
+
+}
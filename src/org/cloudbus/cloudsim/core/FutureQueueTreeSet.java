@@ -0,0 +1,105 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Iterator;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * This class implements the future event queue used by {@link Simulation}. The event queue uses a
+ * {@link TreeSet} in order to store the events. This is the default queue and the reference
+ * implementation for the ordering of events.
+ *
+ * @author Marcos Dias de Assuncao
+ * @since CloudSim Toolkit 1.0
+ * @see Simulation
+ * @see java.util.TreeSet
+ */
+public class FutureQueueTreeSet extends FutureQueue {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The sorted set; the events are written by {@link FutureQueue}. */
+	private transient SortedSet<SimEvent> sortedSet = new TreeSet<SimEvent>();
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		sortedSet = new TreeSet<SimEvent>();
+	}
+
+	@Override
+	protected void insert(SimEvent newEvent) {
+		sortedSet.add(newEvent);
+	}
+
+	@Override
+	public SimEvent peek() {
+		if (sortedSet.isEmpty()) {
+			return null;
+		}
+		return sortedSet.first();
+	}
+
+	@Override
+	protected SimEvent extractFirst() {
+		if (sortedSet.isEmpty()) {
+			return null;
+		}
+		Iterator<SimEvent> iterator = sortedSet.iterator();
+		SimEvent first = iterator.next();
+		iterator.remove();
+		return first;
+	}
+
+	@Override
+	protected SimEvent extractAllAt(double time) {
+		SimEvent first = null;
+		SimEvent last = null;
+		Iterator<SimEvent> iterator = sortedSet.iterator();
+		while (iterator.hasNext()) {
+			SimEvent event = iterator.next();
+			if (event.eventTime() != time) {
+				break;
+			}
+			iterator.remove();
+			if (first == null) {
+				first = event;
+			} else {
+				last.next = event;
+			}
+			last = event;
+		}
+		return first;
+	}
+
+	@Override
+	protected Iterator<SimEvent> events() {
+		return sortedSet.iterator();
+	}
+
+	@Override
+	public int size() {
+		return sortedSet.size();
+	}
+
+	@Override
+	protected boolean extract(SimEvent event) {
+		return sortedSet.remove(event);
+	}
+
+	@Override
+	protected void extractAll() {
+		sortedSet.clear();
+	}
+
+}
@@ -8,6 +8,8 @@
 
 package org.cloudbus.cloudsim.core;
 
+import java.io.Serializable;
+
 import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.NetworkTopology;
 import org.cloudbus.cloudsim.core.predicates.Predicate;
@@ -28,7 +30,10 @@ import org.cloudbus.cloudsim.core.predicates.Predicate;
  * @author Marcos Dias de Assuncao
  * @since CloudSim Toolkit 1.0
  */
-public abstract class SimEntity implements Cloneable {
+public abstract class SimEntity implements Cloneable, Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
 
 	/** The name. */
 	private String name;
@@ -348,10 +353,8 @@ public abstract class SimEntity implements Cloneable {
 		if (!CloudSim.running()) {
 			return null;
 		}
-		if (numEventsWaiting(p) > 0) {
-			return selectEvent(p);
-		}
-		return null;
+		// selecting directly avoids counting all the matching events first
+		return CloudSim.select(id, p);
 	}
 
 	/**
@@ -404,6 +407,7 @@ public abstract class SimEntity implements Cloneable {
 
 		while (ev != null) {
 			processEvent(ev);
+			CloudSim.recycle(ev);
 			if (state != RUNNABLE) {
 				break;
 			}
@@ -481,6 +485,7 @@ public abstract class SimEntity implements Cloneable {
 	 */
 	protected void setState(int state) {
 		this.state = state;
+		CloudSim.entityStateChanged(this);
 	}
 
 	/**
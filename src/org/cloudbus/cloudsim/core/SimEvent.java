@@ -8,6 +8,8 @@
 
 package org.cloudbus.cloudsim.core;
 
+import java.io.Serializable;
+
 /**
  * This class represents a simulation event which is passed between the entities in the simulation.
  * 
@@ -15,13 +17,16 @@ package org.cloudbus.cloudsim.core;
  * @see Simulation
  * @see SimEntity
  */
-public class SimEvent implements Cloneable, Comparable<SimEvent> {
+public class SimEvent implements Cloneable, Comparable<SimEvent>, Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
 
 	/** internal event type **/
-	private final int etype;
+	private int etype;
 
 	/** time at which event should occur **/
-	private final double time;
+	private double time;
 
 	/** time that the event was removed from the queue for service **/
 	private double endWaitingTime;
@@ -33,13 +38,25 @@ public class SimEvent implements Cloneable, Comparable<SimEvent> {
 	private int entDst;
 
 	/** the user defined type of the event **/
-	private final int tag;
+	private int tag;
 
 	/** any data the event is carrying **/
-	private final Object data;
+	private Object data;
 
 	private long serial = -1;
 
+	/** the next event in the same bucket of a {@link FutureQueueCalendar} **/
+	transient SimEvent next;
+
+	/** the previous event with the same source and tag in a {@link FutureQueue} **/
+	transient SimEvent previousFromSource;
+
+	/** the next event with the same source and tag in a {@link FutureQueue} **/
+	transient SimEvent nextFromSource;
+
+	/** whether the event has been processed and handed back to the kernel for reuse **/
+	private boolean recycled;
+
 	// Internal event types
 
 	public static final int ENULL = 0;
@@ -82,10 +99,49 @@ public class SimEvent implements Cloneable, Comparable<SimEvent> {
 		data = null;
 	}
 
+	/**
+	 * Reinitialises a recycled event so that it can be scheduled again.
+	 */
+	void reuse(int evtype, double time, int src, int dest, int tag, Object edata) {
+		etype = evtype;
+		this.time = time;
+		endWaitingTime = 0;
+		entSrc = src;
+		entDst = dest;
+		this.tag = tag;
+		data = edata;
+		serial = -1;
+		recycled = false;
+	}
+
+	/**
+	 * Marks the event as processed. From then on the event belongs to the kernel, and reading its
+	 * source, destination, tag or data throws an exception until it is reused.
+	 */
+	void recycle() {
+		data = null;
+		recycled = true;
+	}
+
+	/**
+	 * Checks that the event has not been recycled, i.e. that it is not used by an entity after it has
+	 * been processed.
+	 */
+	private void checkNotRecycled() {
+		if (recycled) {
+			throw new IllegalStateException("Event used after it has been processed and recycled. "
+					+ "Entities must copy the fields they need when event recycling is enabled.");
+		}
+	}
+
 	protected void setSerial(long serial) {
 		this.serial = serial;
 	}
 
+	long getSerial() {
+		return serial;
+	}
+
 	/**
 	 * Used to set the time at which this event finished waiting in the event
 	 * 
@@ -138,6 +194,7 @@ public class SimEvent implements Cloneable, Comparable<SimEvent> {
 	 * @return the id number
 	 */
 	public int getDestination() {
+		checkNotRecycled();
 		return entDst;
 	}
 
@@ -147,6 +204,7 @@ public class SimEvent implements Cloneable, Comparable<SimEvent> {
 	 * @return the id number
 	 */
 	public int getSource() {
+		checkNotRecycled();
 		return entSrc;
 	}
 
@@ -174,6 +232,7 @@ public class SimEvent implements Cloneable, Comparable<SimEvent> {
 	 * @return The tag
 	 */
 	public int type() {
+		checkNotRecycled();
 		return tag;
 	}
 
@@ -183,6 +242,7 @@ public class SimEvent implements Cloneable, Comparable<SimEvent> {
 	 * @return the id number
 	 */
 	public int scheduledBy() {
+		checkNotRecycled();
 		return entSrc;
 	}
 
@@ -192,6 +252,7 @@ public class SimEvent implements Cloneable, Comparable<SimEvent> {
 	 * @return The tag
 	 */
 	public int getTag() {
+		checkNotRecycled();
 		return tag;
 	}
 
@@ -201,6 +262,7 @@ public class SimEvent implements Cloneable, Comparable<SimEvent> {
 	 * @return A reference to the data
 	 */
 	public Object getData() {
+		checkNotRecycled();
 		return data;
 	}
 
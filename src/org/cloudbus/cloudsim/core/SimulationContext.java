@@ -0,0 +1,236 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudbus.cloudsim.core.predicates.Predicate;
+
+/**
+ * This class holds the state of one simulation: the clock, the entities, the event queues and any
+ * component attached by the upper layers, such as the metric collectors of the fog layer. The static
+ * methods of {@link CloudSim} work on the context of the calling thread, which is a shared default
+ * context unless the thread has been given its own one through {@link #setCurrent(SimulationContext)}.
+ * <p>
+ * Independent simulations can thus run concurrently in the same JVM, each one in its own thread and
+ * with its own context:
+ *
+ * <pre>
+ * SimulationContext.setCurrent(new SimulationContext());
+ * CloudSim.init(1, Calendar.getInstance(), false);
+ * // create the entities and run the simulation as usual
+ * </pre>
+ *
+ * A context must only be used by one thread at a time, and entities must be created by the thread
+ * that runs their simulation.
+ *
+ * @see CloudSim
+ */
+public class SimulationContext implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The context used by the threads that have not been given their own one. */
+	private static final SimulationContext DEFAULT = new SimulationContext();
+
+	/** The contexts bound to threads. */
+	private static final ThreadLocal<SimulationContext> BOUND = new ThreadLocal<SimulationContext>();
+
+	/** Whether a context has ever been bound to a thread; until then the lookup is skipped. */
+	private static volatile boolean threadBound = false;
+
+	/** The id of CIS entity. */
+	int cisId = -1;
+
+	/** The id of CloudSimShutdown entity. */
+	int shutdownId = -1;
+
+	/** The CIS object. */
+	CloudInformationService cis = null;
+
+	/** The trace flag. */
+	boolean traceFlag = false;
+
+	/** The calendar. */
+	Calendar calendar = null;
+
+	/** The termination time. */
+	double terminateAt = -1;
+
+	/** The minimal time between events. Events within shorter periods after the last event are discarded. */
+	double minTimeBetweenEvents = 0.1;
+
+	/** The entities. */
+	List<SimEntity> entities;
+
+	/** The future event queue. */
+	FutureQueue future;
+
+	/** The deferred event queue. */
+	DeferredQueue deferred;
+
+	/**
+	 * The ids of the entities that have to be run on the next clock tick, i.e. the runnable entities
+	 * that may have events to process. Entities leave the set once they are done with their events
+	 * and enter it again on a state transition or when an event is deferred to them.
+	 */
+	BitSet activeEntities;
+
+	/** The simulation clock. */
+	double clock;
+
+	/** Flag for checking if the simulation is running. */
+	boolean running;
+
+	/** The entities by name. */
+	Map<String, SimEntity> entitiesByName;
+
+	// The predicates used in entity wait methods
+	/** The wait predicates. */
+	Map<Integer, Predicate> waitPredicates;
+
+	/** The paused. */
+	boolean paused = false;
+
+	/** The pause at. */
+	long pauseAt = -1;
+
+	/** The abrupt terminate. */
+	boolean abruptTerminate = false;
+
+	/** The time up to which events are processed before the scheduled checkpoint is written. */
+	double checkpointAt = -1;
+
+	/** The file of the scheduled checkpoint. */
+	File checkpointFile;
+
+	/** Whether processed events are recycled. */
+	boolean eventRecycling = false;
+
+	/** Whether recycled events are kept out of use so that entities retaining them are detected. */
+	boolean eventOwnershipCheck = false;
+
+	/** The recycled events ready to be reused, linked through their {@link SimEvent#next} field. */
+	transient SimEvent recycledEvents;
+
+	/** Whether the future event queue created on initialisation is a {@link FutureQueueCalendar}. */
+	boolean calendarQueue = false;
+
+	/** The listeners called when the simulation finishes, before its state is discarded. */
+	transient List<Runnable> finishListeners = new ArrayList<Runnable>();
+
+	/** The components attached to the context by type. */
+	private final Map<Class<?>, Object> components = new HashMap<Class<?>, Object>();
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		finishListeners = new ArrayList<Runnable>();
+	}
+
+	/**
+	 * Gets the context of the calling thread.
+	 *
+	 * @return the context bound to the thread, or the default context
+	 */
+	public static SimulationContext current() {
+		if (!threadBound) {
+			return DEFAULT;
+		}
+		SimulationContext context = BOUND.get();
+		return context != null ? context : DEFAULT;
+	}
+
+	/**
+	 * Binds a context to the calling thread. All the simulation methods called afterwards by the
+	 * thread work on this context.
+	 *
+	 * @param context the context, or <tt>null</tt> to go back to the default context
+	 */
+	public static void setCurrent(SimulationContext context) {
+		if (context == null) {
+			BOUND.remove();
+		} else {
+			threadBound = true;
+			BOUND.set(context);
+		}
+	}
+
+	/**
+	 * Gets the component of a given type attached to this context.
+	 *
+	 * @param type the type of the component
+	 * @return the component, or <tt>null</tt> if none has been attached
+	 */
+	public <T> T getComponent(Class<T> type) {
+		return type.cast(components.get(type));
+	}
+
+	/**
+	 * Attaches a component to this context, replacing any component of the same type.
+	 *
+	 * @param type the type of the component
+	 * @param component the component
+	 */
+	public <T> void setComponent(Class<T> type, T component) {
+		components.put(type, component);
+	}
+
+	/**
+	 * Sets the future event queue used by the simulations initialised in this context without a
+	 * given queue: a {@link FutureQueueCalendar} rather than a {@link FutureQueueTreeSet}, so that
+	 * existing scenarios can be run with either queue without being modified.
+	 *
+	 * @param calendarQueue true to use a {@link FutureQueueCalendar}
+	 * @see CloudSim#init(int, Calendar, boolean, FutureQueue)
+	 */
+	public void setCalendarQueue(boolean calendarQueue) {
+		this.calendarQueue = calendarQueue;
+	}
+
+	/**
+	 * Adds a listener called when the simulation of this context finishes, once its entities have
+	 * been shut down and before the entities and the event queues are discarded. The listener can
+	 * thus still read the entities and the clock through {@link CloudSim}. Simulations ended by
+	 * {@link System#exit(int)} do not finish, so the listener is not called for them.
+	 *
+	 * @param listener the listener
+	 */
+	public void addFinishListener(Runnable listener) {
+		finishListeners.add(listener);
+	}
+
+	/**
+	 * Gets the simulation clock of this context.
+	 *
+	 * @return the simulation time
+	 */
+	public double clock() {
+		return clock;
+	}
+
+	/**
+	 * Checks if the simulation of this context is running.
+	 *
+	 * @return true, if it is running
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+}
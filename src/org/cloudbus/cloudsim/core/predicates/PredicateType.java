@@ -20,6 +20,9 @@ import org.cloudbus.cloudsim.core.SimEvent;
  */
 public class PredicateType extends Predicate {
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	/** The tags. */
 	private final int[] tags;
 
@@ -41,6 +44,34 @@ public class PredicateType extends Predicate {
 		this.tags = tags.clone();
 	}
 
+	/**
+	 * Gets the tags matched by this predicate.
+	 * 
+	 * @return a copy of the tags
+	 */
+	public int[] getTags() {
+		return tags.clone();
+	}
+
+	/**
+	 * Gets the number of tags matched by this predicate.
+	 * 
+	 * @return the number of tags
+	 */
+	public int getTagCount() {
+		return tags.length;
+	}
+
+	/**
+	 * Gets one of the tags matched by this predicate.
+	 * 
+	 * @param i the index of the tag, from 0 to {@link #getTagCount()} excluded
+	 * @return the tag
+	 */
+	public int getTag(int i) {
+		return tags[i];
+	}
+
 	/**
 	 * The match function called by <code>Sim_system</code>, not used directly by the user.
 	 * 
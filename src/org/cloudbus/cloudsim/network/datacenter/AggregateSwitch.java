@@ -32,6 +32,9 @@ import org.cloudbus.cloudsim.core.predicates.PredicateType;
  */
 public class AggregateSwitch extends Switch {
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * Constructor for Aggregate Switch We have to specify switches that are connected to its
 	 * downlink and uplink ports, and corresponding bandwidths
@@ -27,6 +27,9 @@ import org.cloudbus.cloudsim.lists.VmList;
 
 public class Switch extends SimEntity {
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	// switch level
 	public int id;
 
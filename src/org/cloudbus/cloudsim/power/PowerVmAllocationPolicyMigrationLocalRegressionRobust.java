@@ -30,6 +30,9 @@ import org.cloudbus.cloudsim.util.MathUtil;
 public class PowerVmAllocationPolicyMigrationLocalRegressionRobust extends
 		PowerVmAllocationPolicyMigrationLocalRegression {
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * Instantiates a new power vm allocation policy migration local regression.
 	 * 
@@ -8,6 +8,8 @@
 
 package org.cloudbus.cloudsim.provisioners;
 
+import java.io.Serializable;
+
 import org.cloudbus.cloudsim.Vm;
 
 /**
@@ -20,7 +22,10 @@ import org.cloudbus.cloudsim.Vm;
  * @author Anton Beloglazov
  * @since CloudSim Toolkit 1.0
  */
-public abstract class BwProvisioner {
+public abstract class BwProvisioner implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
 
 	/** The bw. */
 	private long bw;
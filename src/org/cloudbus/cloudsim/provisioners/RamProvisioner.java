@@ -8,6 +8,8 @@
 
 package org.cloudbus.cloudsim.provisioners;
 
+import java.io.Serializable;
+
 import org.cloudbus.cloudsim.Vm;
 
 /**
@@ -19,7 +21,10 @@ import org.cloudbus.cloudsim.Vm;
  * @author Anton Beloglazov
  * @since CloudSim Toolkit 1.0
  */
-public abstract class RamProvisioner {
+public abstract class RamProvisioner implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
 
 	/** The ram. */
 	private int ram;
@@ -17,6 +17,9 @@ package org.cloudbus.cloudsim.sdn;
  */
 public class EdgeSwitch extends Switch {
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	public EdgeSwitch(String name,int bw, long iops, int upports, int downports, NetworkOperatingSystem nos) {
 		super(name, bw, iops, upports, downports, nos);
 	}
@@ -30,6 +30,9 @@ import org.cloudbus.cloudsim.core.SimEvent;
  * @since CloudSimSDN 1.0
  */
 public class SDNHost extends SimEntity implements Node {
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	private static final double PROCESSING_DELAY= 0.1;
 		
 	Host host;
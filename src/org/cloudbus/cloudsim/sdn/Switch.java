@@ -27,6 +27,9 @@ import org.cloudbus.cloudsim.core.SimEvent;
  * @since CloudSimSDN 1.0
  */
 public class Switch extends SimEntity implements Node{
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	
 	//private static long cont=0;
 	//private static long MULTI = 1;
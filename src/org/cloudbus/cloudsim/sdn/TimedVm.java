@@ -21,6 +21,9 @@ import org.cloudbus.cloudsim.Vm;
  */
 public class TimedVm extends Vm {
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	private double startTime;
 	private double finishTime;
 	
@@ -32,6 +32,9 @@ import org.cloudbus.cloudsim.sdn.TimedVm;
  */
 public class SimpleNetworkOperatingSystem extends NetworkOperatingSystem {
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	public SimpleNetworkOperatingSystem(String fileName) {
 		super(fileName);
 	}
@@ -7,6 +7,9 @@ import org.cloudbus.cloudsim.Vm;
 
 public class VmAllocationPolicyMipsLeastFullFirst extends VmAllocationPolicyCombinedMostFullFirst{
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	public VmAllocationPolicyMipsLeastFullFirst(List<? extends Host> list) {
 		super(list);
 	}
@@ -29,6 +29,9 @@ import org.cloudbus.cloudsim.sdn.power.PowerUtilizationInterface;
  */
 public class VmSchedulerTimeSharedEnergy extends VmSchedulerTimeShared implements PowerUtilizationInterface{
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	
 	public VmSchedulerTimeSharedEnergy(List<? extends Pe> pelist) {
 		super(pelist);
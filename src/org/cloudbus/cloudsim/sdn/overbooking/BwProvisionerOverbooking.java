@@ -24,6 +24,9 @@ import org.cloudbus.cloudsim.provisioners.BwProvisioner;
  */
 public class BwProvisionerOverbooking extends BwProvisioner {
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	/** The bw table. */
 	private Map<String, Long> bwTable;
 	public static final double overbookingRatioBw = 1.0;	// 20% overbooking allowed for BW
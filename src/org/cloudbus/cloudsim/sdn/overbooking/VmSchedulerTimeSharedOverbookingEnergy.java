@@ -28,6 +28,9 @@ import org.cloudbus.cloudsim.sdn.power.PowerUtilizationInterface;
  */
 public class VmSchedulerTimeSharedOverbookingEnergy extends VmSchedulerTimeSharedOverSubscription implements PowerUtilizationInterface{
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	
 	public VmSchedulerTimeSharedOverbookingEnergy(List<? extends Pe> pelist) {
 		super(pelist);
@@ -19,6 +19,9 @@ import org.fog.utils.FogUtils;
  */
 public class AppModule extends PowerVm{
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	private String name;
 	private String appId;
 	private Map<Pair<String, String>, SelectivityModel> selectivityMap;
@@ -89,6 +92,13 @@ public class AppModule extends PowerVm{
 		setDownInstanceIdsMaps(new HashMap<String, List<Integer>>());
 	}
 	
+	@Override
+	protected void setCloudletScheduler(CloudletScheduler cloudletScheduler) {
+		super.setCloudletScheduler(cloudletScheduler);
+		if(cloudletScheduler instanceof TupleScheduler)
+			((TupleScheduler) cloudletScheduler).setVm(this);
+	}
+	
 	public void subscribeActuator(int id, String tuplyType){
 		if(!getActuatorSubscriptions().containsKey(tuplyType))
 			getActuatorSubscriptions().put(tuplyType, new ArrayList<Integer>());
@@ -1,6 +1,8 @@
 package org.fog.application;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,7 +20,10 @@ import org.fog.utils.GeoCoverage;
  * @author Harshit Gupta
  *
  */
-public class Application {
+public class Application implements Serializable {
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	
 	private String appId;
 	private int userId;
@@ -41,6 +46,18 @@ public class Application {
 	
 	private Map<String, AppEdge> edgeMap;
 
+	/**
+	 * Index of the loops on each edge, by source and destination module. It is built on first use,
+	 * once the application has been submitted, and dropped when the loops are replaced.
+	 */
+	private Map<String, Map<String, EdgeLoops>> loopIndex;
+
+	/**
+	 * The tuples emitted by each module upon execution of each type of tuple, by module name and input
+	 * tuple type; null until first needed.
+	 */
+	private Map<String, Map<String, List<TupleEmission>>> tupleEmissions;
+
 	protected Map<String, List<String>> specialPlacementInfo = new HashMap<>(); // module name to placement device staring with
 
 	protected DAG dag;
@@ -70,6 +87,7 @@ public class Application {
 				mips, ram, bw, size, vmm, new TupleScheduler(mips, 1), new HashMap<Pair<String, String>, SelectivityModel>());
 		
 		getModules().add(module);
+		tupleEmissions = null;
 		
 	}
 
@@ -87,6 +105,7 @@ public class Application {
 				mips, ram, bw, size, vmm, new TupleScheduler(mips, 1), new HashMap<Pair<String, String>, SelectivityModel>());
 
 		getModules().add(module);
+		tupleEmissions = null;
 	}
 	
 	/**
@@ -104,6 +123,7 @@ public class Application {
 		AppEdge edge = new AppEdge(source, destination, tupleCpuLength, tupleNwLength, tupleType, direction, edgeType);
 		getEdges().add(edge);
 		getEdgeMap().put(edge.getTupleType(), edge);
+		tupleEmissions = null;
 	}
 	
 	/**
@@ -121,6 +141,7 @@ public class Application {
 		AppEdge edge = new AppEdge(source, destination, periodicity, tupleCpuLength, tupleNwLength, tupleType, direction, edgeType);
 		getEdges().add(edge);
 		getEdgeMap().put(edge.getTupleType(), edge);
+		tupleEmissions = null;
 	}
 	
 	/**
@@ -133,6 +154,7 @@ public class Application {
 	public void addTupleMapping(String moduleName, String inputTupleType, String outputTupleType, SelectivityModel selectivityModel){
 		AppModule module = getModuleByName(moduleName);
 		module.getSelectivityMap().put(new Pair<String, String>(inputTupleType, outputTupleType), selectivityModel);
+		tupleEmissions = null;
 	}
 	
 	/**
@@ -194,45 +216,16 @@ public class Application {
 	 */
 	public List<Tuple> getResultantTuples(String moduleName, Tuple inputTuple, int sourceDeviceId, int sourceModuleId){
 		List<Tuple> tuples = new ArrayList<Tuple>();
-		AppModule module = getModuleByName(moduleName);
-		for(AppEdge edge : getEdges()){
-			if(edge.getSource().equals(moduleName)){
-				Pair<String, String> pair = new Pair<String, String>(inputTuple.getTupleType(), edge.getTupleType());
-				
-				if(module.getSelectivityMap().get(pair)==null)
-					continue;
-				SelectivityModel selectivityModel = module.getSelectivityMap().get(pair);
-				if(selectivityModel.canSelect()){
-					//TODO check if the edge is ACTUATOR, then create multiple tuples
-					if(edge.getEdgeType() == AppEdge.ACTUATOR){
-						//for(Integer actuatorId : module.getActuatorSubscriptions().get(edge.getTupleType())){
-							Tuple tuple = new Tuple(appId, FogUtils.generateTupleId(), edge.getDirection(),  
-									(long) (edge.getTupleCpuLength()),
-									inputTuple.getNumberOfPes(),
-									(long) (edge.getTupleNwLength()),
-									inputTuple.getCloudletOutputSize(),
-									inputTuple.getUtilizationModelCpu(),
-									inputTuple.getUtilizationModelRam(),
-									inputTuple.getUtilizationModelBw()
-									);
-							tuple.setActualTupleId(inputTuple.getActualTupleId());
-							tuple.setUserId(inputTuple.getUserId());
-							tuple.setAppId(inputTuple.getAppId());
-							tuple.setDestModuleName(edge.getDestination());
-							tuple.setSrcModuleName(edge.getSource());
-							tuple.setDirection(Tuple.ACTUATOR);
-							tuple.setTupleType(edge.getTupleType());
-							tuple.setSourceDeviceId(sourceDeviceId);
-							tuple.setSourceModuleId(sourceModuleId);
-							//tuple.setActuatorId(actuatorId);
-							
-							tuples.add(tuple);
-						//}
-					}else{
+		for(TupleEmission emission : getTupleEmissions(moduleName, inputTuple.getTupleType())){
+			AppEdge edge = emission.edge;
+			if(emission.selectivityModel.canSelect()){
+				//TODO check if the edge is ACTUATOR, then create multiple tuples
+				if(edge.getEdgeType() == AppEdge.ACTUATOR){
+					//for(Integer actuatorId : module.getActuatorSubscriptions().get(edge.getTupleType())){
 						Tuple tuple = new Tuple(appId, FogUtils.generateTupleId(), edge.getDirection(),  
-								(long) (edge.getTupleCpuLength()),
+								emission.tupleCpuLength,
 								inputTuple.getNumberOfPes(),
-								(long) (edge.getTupleNwLength()),
+								emission.tupleNwLength,
 								inputTuple.getCloudletOutputSize(),
 								inputTuple.getUtilizationModelCpu(),
 								inputTuple.getUtilizationModelRam(),
@@ -243,18 +236,98 @@ public class Application {
 						tuple.setAppId(inputTuple.getAppId());
 						tuple.setDestModuleName(edge.getDestination());
 						tuple.setSrcModuleName(edge.getSource());
-						tuple.setDirection(edge.getDirection());
+						tuple.setDirection(Tuple.ACTUATOR);
 						tuple.setTupleType(edge.getTupleType());
+						tuple.setSourceDeviceId(sourceDeviceId);
 						tuple.setSourceModuleId(sourceModuleId);
-						tuple.setTraversedMicroservices(inputTuple.getTraversed());
-
+						//tuple.setActuatorId(actuatorId);
+						
 						tuples.add(tuple);
-					}
+					//}
+				}else{
+					Tuple tuple = new Tuple(appId, FogUtils.generateTupleId(), edge.getDirection(),  
+							emission.tupleCpuLength,
+							inputTuple.getNumberOfPes(),
+							emission.tupleNwLength,
+							inputTuple.getCloudletOutputSize(),
+							inputTuple.getUtilizationModelCpu(),
+							inputTuple.getUtilizationModelRam(),
+							inputTuple.getUtilizationModelBw()
+							);
+					tuple.setActualTupleId(inputTuple.getActualTupleId());
+					tuple.setUserId(inputTuple.getUserId());
+					tuple.setAppId(inputTuple.getAppId());
+					tuple.setDestModuleName(edge.getDestination());
+					tuple.setSrcModuleName(edge.getSource());
+					tuple.setDirection(edge.getDirection());
+					tuple.setTupleType(edge.getTupleType());
+					tuple.setSourceModuleId(sourceModuleId);
+					tuple.shareTraversedMicroservices(inputTuple);
+
+					tuples.add(tuple);
 				}
 			}
 		}
 		return tuples;
 	}
+
+	/**
+	 * A tuple emitted by a module on an outgoing edge upon execution of a given type of tuple.
+	 */
+	private static class TupleEmission implements Serializable {
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		final AppEdge edge;
+		final SelectivityModel selectivityModel;
+		final long tupleCpuLength;
+		final long tupleNwLength;
+
+		TupleEmission(AppEdge edge, SelectivityModel selectivityModel) {
+			this.edge = edge;
+			this.selectivityModel = selectivityModel;
+			this.tupleCpuLength = (long) edge.getTupleCpuLength();
+			this.tupleNwLength = (long) edge.getTupleNwLength();
+		}
+	}
+
+	private static final List<TupleEmission> NO_EMISSIONS = Collections.emptyList();
+
+	/**
+	 * Gets the tuples a module may emit upon execution of a given type of tuple: one for each
+	 * outgoing edge of the module for which a selectivity model is defined, in the order of the edges.
+	 * The emission table is compiled on first use, once the application has been submitted, and
+	 * dropped when modules, edges or tuple mappings are added.
+	 */
+	private List<TupleEmission> getTupleEmissions(String moduleName, String inputTupleType) {
+		if(tupleEmissions == null){
+			Map<String, Map<String, List<TupleEmission>>> table = new HashMap<String, Map<String, List<TupleEmission>>>();
+			for(AppEdge edge : getEdges()){
+				AppModule module = getModuleByName(edge.getSource());
+				if(module == null)
+					continue;
+				Map<String, List<TupleEmission>> moduleEmissions = table.get(module.getName());
+				if(moduleEmissions == null){
+					moduleEmissions = new HashMap<String, List<TupleEmission>>();
+					table.put(module.getName(), moduleEmissions);
+				}
+				for(Map.Entry<Pair<String, String>, SelectivityModel> mapping : module.getSelectivityMap().entrySet()){
+					if(mapping.getValue() == null || !edge.getTupleType().equals(mapping.getKey().getSecond()))
+						continue;
+					List<TupleEmission> emissions = moduleEmissions.get(mapping.getKey().getFirst());
+					if(emissions == null){
+						emissions = new ArrayList<TupleEmission>();
+						moduleEmissions.put(mapping.getKey().getFirst(), emissions);
+					}
+					emissions.add(new TupleEmission(edge, mapping.getValue()));
+				}
+			}
+			tupleEmissions = table;
+		}
+		Map<String, List<TupleEmission>> moduleEmissions = tupleEmissions.get(moduleName);
+		List<TupleEmission> emissions = moduleEmissions != null ? moduleEmissions.get(inputTupleType) : null;
+		return emissions != null ? emissions : NO_EMISSIONS;
+	}
 	
 	/**
 	 * Create a tuple for a given application edge
@@ -322,12 +395,14 @@ public class Application {
 	}
 	public void setModules(List<AppModule> modules) {
 		this.modules = modules;
+		this.tupleEmissions = null;
 	}
 	public List<AppEdge> getEdges() {
 		return edges;
 	}
 	public void setEdges(List<AppEdge> edges) {
 		this.edges = edges;
+		this.tupleEmissions = null;
 	}
 	public GeoCoverage getGeoCoverage() {
 		return geoCoverage;
@@ -342,6 +417,89 @@ public class Application {
 
 	public void setLoops(List<AppLoop> loops) {
 		this.loops = loops;
+		this.loopIndex = null;
+	}
+
+	/**
+	 * The loops on an edge of the application.
+	 */
+	private static class EdgeLoops implements Serializable {
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		/** The loops having the edge, in the order of the loops of the application. */
+		final List<AppLoop> loops = new ArrayList<AppLoop>();
+		/** The loops having the edge and starting with its source module. */
+		final List<AppLoop> startingLoops = new ArrayList<AppLoop>();
+		/** The first loop having the edge and ending with its destination module. */
+		AppLoop endingLoop;
+	}
+
+	private static final EdgeLoops NO_LOOPS = new EdgeLoops();
+
+	private EdgeLoops getEdgeLoops(String srcModule, String destModule) {
+		if (loopIndex == null) {
+			Map<String, Map<String, EdgeLoops>> index = new HashMap<String, Map<String, EdgeLoops>>();
+			for (AppLoop loop : getLoops()) {
+				List<String> loopModules = loop.getModules();
+				for (int i = 0; i < loopModules.size() - 1; i++) {
+					String src = loopModules.get(i);
+					String dest = loopModules.get(i + 1);
+					Map<String, EdgeLoops> fromSrc = index.get(src);
+					if (fromSrc == null) {
+						fromSrc = new HashMap<String, EdgeLoops>();
+						index.put(src, fromSrc);
+					}
+					EdgeLoops edgeLoops = fromSrc.get(dest);
+					if (edgeLoops == null) {
+						edgeLoops = new EdgeLoops();
+						fromSrc.put(dest, edgeLoops);
+					}
+					// a loop going over the same edge twice is listed once
+					if (!edgeLoops.loops.isEmpty() && edgeLoops.loops.get(edgeLoops.loops.size() - 1) == loop)
+						continue;
+					edgeLoops.loops.add(loop);
+					if (loop.isStartModule(src))
+						edgeLoops.startingLoops.add(loop);
+					if (edgeLoops.endingLoop == null && loop.isEndModule(dest))
+						edgeLoops.endingLoop = loop;
+				}
+			}
+			loopIndex = index;
+		}
+		Map<String, EdgeLoops> fromSrc = loopIndex.get(srcModule);
+		EdgeLoops edgeLoops = fromSrc != null ? fromSrc.get(destModule) : null;
+		return edgeLoops != null ? edgeLoops : NO_LOOPS;
+	}
+
+	/**
+	 * Gets the loops going over an edge.
+	 * @param srcModule the source module of the edge
+	 * @param destModule the destination module of the edge
+	 * @return the loops, in the order of the loops of the application
+	 */
+	public List<AppLoop> getLoopsWithEdge(String srcModule, String destModule) {
+		return Collections.unmodifiableList(getEdgeLoops(srcModule, destModule).loops);
+	}
+
+	/**
+	 * Gets the loops going over an edge and starting with its source module.
+	 * @param srcModule the source module of the edge
+	 * @param destModule the destination module of the edge
+	 * @return the loops, in the order of the loops of the application
+	 */
+	public List<AppLoop> getLoopsStartingWithEdge(String srcModule, String destModule) {
+		return Collections.unmodifiableList(getEdgeLoops(srcModule, destModule).startingLoops);
+	}
+
+	/**
+	 * Gets the first loop going over an edge and ending with its destination module.
+	 * @param srcModule the source module of the edge
+	 * @param destModule the destination module of the edge
+	 * @return the loop, or null if there is none
+	 */
+	public AppLoop getLoopEndingWithEdge(String srcModule, String destModule) {
+		return getEdgeLoops(srcModule, destModule).endingLoop;
 	}
 
 	public int getUserId() {
@@ -11,6 +11,9 @@ import org.cloudbus.cloudsim.core.CloudSim;
  */
 public class BurstySelectivity implements SelectivityModel{
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * Duration of the low burst period
 	 */
@@ -7,6 +7,9 @@ package org.fog.application.selectivity;
  */
 public class FractionalSelectivity implements SelectivityModel{
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * The fixed probability of output tuple creation per incoming input tuple
 	 */
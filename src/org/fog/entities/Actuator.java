@@ -9,9 +9,13 @@ import org.fog.utils.FogEvents;
 import org.fog.utils.GeoLocation;
 import org.fog.utils.Logger;
 import org.fog.utils.TimeKeeper;
+import org.fog.utils.trace.TraceRecorder;
 
 public class Actuator extends SimEntity{
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	private int gatewayDeviceId;
 	private double latency;
 	private GeoLocation geoLocation;
@@ -53,29 +57,19 @@ public class Actuator extends SimEntity{
 
 	private void processTupleArrival(SimEvent ev) {
 		Tuple tuple = (Tuple)ev.getData();
-		Logger.debug(getName(), "Received tuple "+tuple.getCloudletId()+"on "+tuple.getDestModuleName());
+		TraceRecorder.getInstance().tupleArrived(getId(), tuple, ev.getSource());
+		if (Logger.isDebugEnabled())
+			Logger.debug(getName(), "Received tuple "+tuple.getCloudletId()+"on "+tuple.getDestModuleName());
 		String srcModule = tuple.getSrcModuleName();
 		String destModule = tuple.getDestModuleName();
 		Application app = getApp();
 		
-		for(AppLoop loop : app.getLoops()){
-			if(loop.hasEdge(srcModule, destModule) && loop.isEndModule(destModule)){
-				
-				Double startTime = TimeKeeper.getInstance().getEmitTimes().get(tuple.getActualTupleId());
-				if(startTime==null)
-					break;
-				if(!TimeKeeper.getInstance().getLoopIdToCurrentAverage().containsKey(loop.getLoopId())){
-					TimeKeeper.getInstance().getLoopIdToCurrentAverage().put(loop.getLoopId(), 0.0);
-					TimeKeeper.getInstance().getLoopIdToCurrentNum().put(loop.getLoopId(), 0);
-				}
-				double currentAverage = TimeKeeper.getInstance().getLoopIdToCurrentAverage().get(loop.getLoopId());
-				int currentCount = TimeKeeper.getInstance().getLoopIdToCurrentNum().get(loop.getLoopId());
-				double delay = CloudSim.clock()- TimeKeeper.getInstance().getEmitTimes().get(tuple.getActualTupleId());
-				TimeKeeper.getInstance().getEmitTimes().remove(tuple.getActualTupleId());
-				double newAverage = (currentAverage*currentCount + delay)/(currentCount+1);
-				TimeKeeper.getInstance().getLoopIdToCurrentAverage().put(loop.getLoopId(), newAverage);
-				TimeKeeper.getInstance().getLoopIdToCurrentNum().put(loop.getLoopId(), currentCount+1);
-				break;
+		AppLoop loop = app.getLoopEndingWithEdge(srcModule, destModule);
+		if(loop != null){
+			double startTime = TimeKeeper.getInstance().getEmitTimeMap().remove(tuple.getActualTupleId());
+			if(!Double.isNaN(startTime)){
+				double delay = CloudSim.clock()- startTime;
+				TimeKeeper.getInstance().loopDelayMeasured(loop.getLoopId(), delay);
 			}
 		}
 	}
@@ -5,6 +5,9 @@ import org.cloudbus.cloudsim.power.PowerDatacenterBroker;
 
 public class FogBroker extends PowerDatacenterBroker{
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	public FogBroker(String name) throws Exception {
 		super(name);
 		// TODO Auto-generated constructor stub
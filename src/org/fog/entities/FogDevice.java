@@ -1,5 +1,6 @@
 package org.fog.entities;
 
+import java.io.Serializable;
 import org.apache.commons.math3.util.Pair;
 import org.cloudbus.cloudsim.*;
 import org.cloudbus.cloudsim.core.CloudSim;
@@ -18,12 +19,17 @@ import org.fog.application.Application;
 import org.fog.mobilitydata.Clustering;
 import org.fog.policy.AppModuleAllocationPolicy;
 import org.fog.scheduler.StreamOperatorScheduler;
+import org.fog.scheduler.TupleCompletions;
+import org.fog.scheduler.TupleScheduler;
 import org.fog.utils.*;
+import org.fog.utils.trace.TraceRecorder;
 import org.json.simple.JSONObject;
 
 import java.util.*;
 
 public class FogDevice extends PowerDatacenter {
+    private static final long serialVersionUID = 1L;
+
     protected Queue<Tuple> northTupleQueue;
     protected Queue<Pair<Tuple, Integer>> southTupleQueue;
 
@@ -48,9 +54,12 @@ public class FogDevice extends PowerDatacenter {
      */
     protected int controllerId;
     /**
-     * IDs of the children Fog devices
+     * IDs of the children Fog devices, changed through addChild and removeChild so that the
+     * FogHierarchyIndex is kept up to date
      */
     protected List<Integer> childrenIds;
+    /** The view of childrenIds returned by getChildrenIds, which discards the FogHierarchyIndex when changed */
+    private List<Integer> childrenIdsView;
 
     protected Map<Integer, List<String>> childToOperatorsMap;
 
@@ -89,6 +98,25 @@ public class FogDevice extends PowerDatacenter {
     protected boolean isClusterLinkBusy; //Flag denoting whether the link connecting to cluster from this FogDevice is busy
     protected double clusterLinkBandwidth;
 
+    /**
+     * Links used instead of the tuple queues when Config.LINK_MODEL is SharedLink.SHARED, created on first use
+     */
+    protected SharedLink uplink;
+    protected Map<Integer, SharedLink> downlinks = new HashMap<Integer, SharedLink>(); // by child ID
+    protected Map<Integer, SharedLink> clusterLinks = new HashMap<Integer, SharedLink>(); // by cluster member ID
+
+    /**
+     * The bytes sent on the links of the device and the number of tuples it received, sampled by MetricsSampler
+     */
+    protected double uplinkSentBytes, downlinkSentBytes, clusterLinkSentBytes;
+    protected long tupleArrivalCount;
+
+    /**
+     * The sampler of the simulation, looked up at the first event of the device; null while
+     * sampling is off, so that the events of the device do not reach the sampler.
+     */
+    private MetricsSampler sampler;
+    private boolean samplerLookedUp;
 
     public FogDevice(
             String name,
@@ -245,6 +273,19 @@ public class FogDevice extends PowerDatacenter {
 
     }
 
+    @Override
+    public void processEvent(SimEvent ev) {
+        if (!samplerLookedUp) {
+            MetricsSampler instance = MetricsSampler.getInstance();
+            sampler = instance.isEnabled() ? instance : null;
+            samplerLookedUp = true;
+        }
+        // the state of the device is sampled before the event changes it
+        if (sampler != null)
+            sampler.sample(this);
+        super.processEvent(ev);
+    }
+
     @Override
     protected void processOtherEvent(SimEvent ev) {
         switch (ev.getTag()) {
@@ -296,6 +337,9 @@ public class FogDevice extends PowerDatacenter {
             case FogEvents.UPDATE_CLUSTER_TUPLE_QUEUE:
                 updateClusterTupleQueue();
                 break;
+            case FogEvents.UPDATE_LINK:
+                updateLink((SharedLink) ev.getData());
+                break;
             case FogEvents.START_DYNAMIC_CLUSTERING:
                 //This message is received by the devices to start their clustering
                 processClustering(this.getParentId(), this.getId(), ev);
@@ -310,6 +354,7 @@ public class FogDevice extends PowerDatacenter {
         JSONObject object = (JSONObject) ev.getData();
         AppModule appModule = (AppModule) object.get("module");
         System.out.println(getName() + " is sending " + appModule.getName());
+        TraceRecorder.getInstance().moduleSent(getId(), appModule, (double) object.get("delay"));
         NetworkUsageMonitor.sendingModule((double) object.get("delay"), appModule.getSize());
         MigrationDelayMonitor.setMigrationDelay((double) object.get("delay"));
 
@@ -325,6 +370,7 @@ public class FogDevice extends PowerDatacenter {
         AppModule appModule = (AppModule) object.get("module");
         Application app = (Application) object.get("application");
         System.out.println(getName() + " is receiving " + appModule.getName());
+        TraceRecorder.getInstance().moduleReceived(getId(), appModule, (double) object.get("delay"));
         NetworkUsageMonitor.sendingModule((double) object.get("delay"), appModule.getSize());
         MigrationDelayMonitor.setMigrationDelay((double) object.get("delay"));
 
@@ -357,14 +403,109 @@ public class FogDevice extends PowerDatacenter {
     }
 
     private AppModule getModuleByName(String moduleName) {
-        AppModule module = null;
-        for (Vm vm : getHost().getVmList()) {
-            if (((AppModule) vm).getName().equals(moduleName)) {
-                module = (AppModule) vm;
-                break;
+        return getModuleIndex().firstModuleByName.get(moduleName);
+    }
+
+    /**
+     * Index of the modules placed on the device, so that tuples are dispatched to their module
+     * without scanning the VMs of the host.
+     */
+    private static class ModuleIndex implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The names of the modules placed on the device, by application id. */
+        final Map<String, Set<String>> placedModules = new HashMap<String, Set<String>>();
+
+        /** The VM executing the tuples of each module, by application id and module name. */
+        final Map<String, Map<String, AppModule>> dispatchModules = new HashMap<String, Map<String, AppModule>>();
+
+        /** The first VM of the host running each module, by module name. */
+        final Map<String, AppModule> firstModuleByName = new HashMap<String, AppModule>();
+
+        /** Whether all the VMs of the host tell when their tuples finish, having a TupleScheduler. */
+        boolean completionsNotified = true;
+    }
+
+    /**
+     * The module index, or null when the placed modules or the VMs of the host have changed since
+     * it was built.
+     */
+    private ModuleIndex moduleIndex;
+
+    private ModuleIndex getModuleIndex() {
+        if (moduleIndex == null) {
+            ModuleIndex index = new ModuleIndex();
+            for (Map.Entry<String, List<String>> placed : appToModulesMap.entrySet())
+                index.placedModules.put(placed.getKey(), new HashSet<String>(placed.getValue()));
+            for (Vm vm : getHost().getVmList()) {
+                AppModule module = (AppModule) vm;
+                Map<String, AppModule> modules = index.dispatchModules.get(module.getAppId());
+                if (modules == null) {
+                    modules = new HashMap<String, AppModule>();
+                    index.dispatchModules.put(module.getAppId(), modules);
+                }
+                // the last VM of a module gets its tuples, as when the VMs were scanned
+                modules.put(module.getName(), module);
+                if (!index.firstModuleByName.containsKey(module.getName()))
+                    index.firstModuleByName.put(module.getName(), module);
+                if (!(vm.getCloudletScheduler() instanceof TupleScheduler))
+                    index.completionsNotified = false;
             }
+            moduleIndex = index;
         }
-        return module;
+        return moduleIndex;
+    }
+
+    /**
+     * Marks the module index as stale. It must be called whenever the placed modules of
+     * appToModulesMap or the VMs of the host change.
+     */
+    protected void invalidateModuleIndex() {
+        moduleIndex = null;
+    }
+
+    /**
+     * Checks whether a module of an application is placed on the device.
+     *
+     * @param appId      the application id
+     * @param moduleName the module name
+     * @return true if the module is in appToModulesMap
+     */
+    protected boolean isModulePlaced(String appId, String moduleName) {
+        Set<String> modules = getModuleIndex().placedModules.get(appId);
+        return modules != null && modules.contains(moduleName);
+    }
+
+    /**
+     * Gets the id of the VM executing the tuples of a module on the device.
+     *
+     * @param appId      the application id
+     * @param moduleName the module name
+     * @return the VM id, or -1 if no VM of the host runs the module
+     */
+    protected int getVmIdForModule(String appId, String moduleName) {
+        Map<String, AppModule> modules = getModuleIndex().dispatchModules.get(appId);
+        AppModule module = modules != null ? modules.get(moduleName) : null;
+        return module != null ? module.getId() : -1;
+    }
+
+    @Override
+    protected void processVmCreate(SimEvent ev, boolean ack) {
+        super.processVmCreate(ev, ack);
+        invalidateModuleIndex();
+    }
+
+    @Override
+    protected void processVmDestroy(SimEvent ev, boolean ack) {
+        super.processVmDestroy(ev, ack);
+        invalidateModuleIndex();
+    }
+
+    @Override
+    protected void processVmMigrate(SimEvent ev, boolean ack) {
+        super.processVmMigrate(ev, ack);
+        invalidateModuleIndex();
     }
 
     /**
@@ -397,6 +538,7 @@ public class FogDevice extends PowerDatacenter {
         int actuatorId = ev.getSource();
         double delay = (double) ev.getData();
         getAssociatedActuatorIds().add(new Pair<Integer, Double>(actuatorId, delay));
+        FogHierarchyIndex.getInstance().actuatorJoined(getId(), ((Actuator) CloudSim.getEntity(actuatorId)).getActuatorType());
     }
 
 
@@ -425,26 +567,33 @@ public class FogDevice extends PowerDatacenter {
         double timeDiff = currentTime - getLastProcessTime();
         double timeFrameDatacenterEnergy = 0.0;
 
+        // the arguments of the log lines are only computed when logging is enabled
+        boolean logging = !Log.isDisabled();
+
         for (PowerHost host : this.<PowerHost>getHostList()) {
             Log.printLine();
 
+            TupleCompletions.getInstance().startCollecting(vmsWithFinishedTuples);
             double time = host.updateVmsProcessing(currentTime); // inform VMs to update processing
+            TupleCompletions.getInstance().stopCollecting();
             if (time < minTime) {
                 minTime = time;
             }
 
-            Log.formatLine(
-                    "%.2f: [Host #%d] utilization is %.2f%%",
-                    currentTime,
-                    host.getId(),
-                    host.getUtilizationOfCpu() * 100);
+            if (logging)
+                Log.formatLine(
+                        "%.2f: [Host #%d] utilization is %.2f%%",
+                        currentTime,
+                        host.getId(),
+                        host.getUtilizationOfCpu() * 100);
         }
 
         if (timeDiff > 0) {
-            Log.formatLine(
-                    "\nEnergy consumption for the last time frame from %.2f to %.2f:",
-                    getLastProcessTime(),
-                    currentTime);
+            if (logging)
+                Log.formatLine(
+                        "\nEnergy consumption for the last time frame from %.2f to %.2f:",
+                        getLastProcessTime(),
+                        currentTime);
 
             for (PowerHost host : this.<PowerHost>getHostList()) {
                 double previousUtilizationOfCpu = host.getPreviousUtilizationOfCpu();
@@ -455,25 +604,28 @@ public class FogDevice extends PowerDatacenter {
                         timeDiff);
                 timeFrameDatacenterEnergy += timeFrameHostEnergy;
 
-                Log.printLine();
-                Log.formatLine(
-                        "%.2f: [Host #%d] utilization at %.2f was %.2f%%, now is %.2f%%",
-                        currentTime,
-                        host.getId(),
-                        getLastProcessTime(),
-                        previousUtilizationOfCpu * 100,
-                        utilizationOfCpu * 100);
-                Log.formatLine(
-                        "%.2f: [Host #%d] energy is %.2f W*sec",
-                        currentTime,
-                        host.getId(),
-                        timeFrameHostEnergy);
+                if (logging) {
+                    Log.printLine();
+                    Log.formatLine(
+                            "%.2f: [Host #%d] utilization at %.2f was %.2f%%, now is %.2f%%",
+                            currentTime,
+                            host.getId(),
+                            getLastProcessTime(),
+                            previousUtilizationOfCpu * 100,
+                            utilizationOfCpu * 100);
+                    Log.formatLine(
+                            "%.2f: [Host #%d] energy is %.2f W*sec",
+                            currentTime,
+                            host.getId(),
+                            timeFrameHostEnergy);
+                }
             }
 
-            Log.formatLine(
-                    "\n%.2f: Data center's energy is %.2f W*sec\n",
-                    currentTime,
-                    timeFrameDatacenterEnergy);
+            if (logging)
+                Log.formatLine(
+                        "\n%.2f: Data center's energy is %.2f W*sec\n",
+                        currentTime,
+                        timeFrameDatacenterEnergy);
         }
 
         setPower(getPower() + timeFrameDatacenterEnergy);
@@ -499,30 +651,37 @@ public class FogDevice extends PowerDatacenter {
     }
 
 
+    /**
+     * The VMs whose TupleScheduler finished tuples during the updates of this device, since the last completion check
+     */
+    protected Set<Vm> vmsWithFinishedTuples = new LinkedHashSet<Vm>();
+
+    /**
+     * The count of tuples finished outside of device updates, when all the VMs were last checked
+     */
+    protected int checkedUnattributedCount = 0;
+
     protected void checkCloudletCompletion() {
         boolean cloudletCompleted = false;
-        List<? extends Host> list = getVmAllocationPolicy().getHostList();
-        for (int i = 0; i < list.size(); i++) {
-            Host host = list.get(i);
-            for (Vm vm : host.getVmList()) {
-                while (vm.getCloudletScheduler().isFinishedCloudlets()) {
-                    Cloudlet cl = vm.getCloudletScheduler().getNextFinishedCloudlet();
-                    if (cl != null) {
-
-                        cloudletCompleted = true;
-                        Tuple tuple = (Tuple) cl;
-                        TimeKeeper.getInstance().tupleEndedExecution(tuple);
-                        Application application = getApplicationMap().get(tuple.getAppId());
+        for (Vm vm : pollVmsWithFinishedTuples()) {
+            while (vm.getCloudletScheduler().isFinishedCloudlets()) {
+                Cloudlet cl = vm.getCloudletScheduler().getNextFinishedCloudlet();
+                if (cl != null) {
+
+                    cloudletCompleted = true;
+                    Tuple tuple = (Tuple) cl;
+                    TimeKeeper.getInstance().tupleEndedExecution(tuple);
+                    TraceRecorder.getInstance().executionEnded(getId(), tuple, ((AppModule) vm).getName(), vm.getId());
+                    Application application = getApplicationMap().get(tuple.getAppId());
+                    if (Logger.isDebugEnabled())
                         Logger.debug(getName(), "Completed execution of tuple " + tuple.getCloudletId() + "on " + tuple.getDestModuleName());
-                        List<Tuple> resultantTuples = application.getResultantTuples(tuple.getDestModuleName(), tuple, getId(), vm.getId());
-                        for (Tuple resTuple : resultantTuples) {
-                            resTuple.setModuleCopyMap(new HashMap<String, Integer>(tuple.getModuleCopyMap()));
-                            resTuple.getModuleCopyMap().put(((AppModule) vm).getName(), vm.getId());
-                            updateTimingsOnSending(resTuple);
-                            sendToSelf(resTuple);
-                        }
-                        sendNow(cl.getUserId(), CloudSimTags.CLOUDLET_RETURN, cl);
+                    List<Tuple> resultantTuples = application.getResultantTuples(tuple.getDestModuleName(), tuple, getId(), vm.getId());
+                    for (Tuple resTuple : resultantTuples) {
+                        resTuple.setModuleCopies(tuple, ((AppModule) vm).getName(), vm.getId());
+                        updateTimingsOnSending(resTuple);
+                        sendToSelf(resTuple);
                     }
+                    sendNow(cl.getUserId(), CloudSimTags.CLOUDLET_RETURN, cl);
                 }
             }
         }
@@ -530,34 +689,51 @@ public class FogDevice extends PowerDatacenter {
             updateAllocatedMips(null);
     }
 
+    /**
+     * Gets the VMs of the host that may have finished tuples, in the order of the VM list of the
+     * host, and forgets them. These are the VMs collected during the updates of the device, unless
+     * some VM of the host has a scheduler that does not tell, or tuples finished outside of an
+     * update, in which case all the VMs are checked.
+     */
+    private List<Vm> pollVmsWithFinishedTuples() {
+        List<Vm> vms = getHost().getVmList();
+        int unattributedCount = TupleCompletions.getInstance().getUnattributedCount();
+        if (!getModuleIndex().completionsNotified || unattributedCount != checkedUnattributedCount) {
+            checkedUnattributedCount = unattributedCount;
+            vmsWithFinishedTuples.clear();
+            return vms;
+        }
+        if (vmsWithFinishedTuples.isEmpty())
+            return Collections.emptyList();
+
+        List<Vm> finished;
+        if (vmsWithFinishedTuples.size() == 1) {
+            finished = new ArrayList<Vm>(vmsWithFinishedTuples);
+        } else {
+            finished = new ArrayList<Vm>(vmsWithFinishedTuples.size());
+            for (Vm vm : vms) {
+                if (vmsWithFinishedTuples.contains(vm))
+                    finished.add(vm);
+            }
+        }
+        vmsWithFinishedTuples.clear();
+        return finished;
+    }
+
     protected void updateTimingsOnSending(Tuple resTuple) {
         // TODO ADD CODE FOR UPDATING TIMINGS WHEN A TUPLE IS GENERATED FROM A PREVIOUSLY RECIEVED TUPLE.
         // WILL NEED TO CHECK IF A NEW LOOP STARTS AND INSERT A UNIQUE TUPLE ID TO IT.
         String srcModule = resTuple.getSrcModuleName();
         String destModule = resTuple.getDestModuleName();
-        for (AppLoop loop : getApplicationMap().get(resTuple.getAppId()).getLoops()) {
-            if (loop.hasEdge(srcModule, destModule) && loop.isStartModule(srcModule)) {
-                int tupleId = TimeKeeper.getInstance().getUniqueId();
-                resTuple.setActualTupleId(tupleId);
-                if (!TimeKeeper.getInstance().getLoopIdToTupleIds().containsKey(loop.getLoopId()))
-                    TimeKeeper.getInstance().getLoopIdToTupleIds().put(loop.getLoopId(), new ArrayList<Integer>());
-                TimeKeeper.getInstance().getLoopIdToTupleIds().get(loop.getLoopId()).add(tupleId);
-                TimeKeeper.getInstance().getEmitTimes().put(tupleId, CloudSim.clock());
-
-                //Logger.debug(getName(), "\tSENDING\t"+tuple.getActualTupleId()+"\tSrc:"+srcModule+"\tDest:"+destModule);
+        for (AppLoop loop : getApplicationMap().get(resTuple.getAppId()).getLoopsStartingWithEdge(srcModule, destModule)) {
+            resTuple.setActualTupleId(TimeKeeper.getInstance().tupleEmitted(loop.getLoopId()));
 
-            }
+            //Logger.debug(getName(), "\tSENDING\t"+tuple.getActualTupleId()+"\tSrc:"+srcModule+"\tDest:"+destModule);
         }
     }
 
     protected int getChildIdWithRouteTo(int targetDeviceId) {
-        for (Integer childId : getChildrenIds()) {
-            if (targetDeviceId == childId)
-                return childId;
-            if (((FogDevice) CloudSim.getEntity(childId)).getChildIdWithRouteTo(targetDeviceId) != -1)
-                return childId;
-        }
-        return -1;
+        return FogHierarchyIndex.getInstance().getChildIdWithRouteTo(getId(), targetDeviceId);
     }
 
     protected int getChildIdForTuple(Tuple tuple) {
@@ -568,30 +744,66 @@ public class FogDevice extends PowerDatacenter {
         return -1;
     }
 
+    /**
+     * The MIPS shares requested for the VMs executing tuples, i.e. all the MIPS of the host, and for
+     * the idle VMs. They are shared by all the VMs of the host.
+     */
+    private List<Double> busyMipsShare, idleMipsShare;
+
+    /**
+     * The MIPS shares of the VMs of the host, passed to the VM scheduler by updateAllocatedMips
+     */
+    private transient MipsShares mipsShares;
+
     protected void updateAllocatedMips(String incomingOperator) {
+        if (mipsShares == null)
+            mipsShares = new MipsShares();
+        mipsShares.vms = getHost().getVmList();
+        mipsShares.incomingOperator = incomingOperator;
         getHost().getVmScheduler().deallocatePesForAllVms();
-        for (final Vm vm : getHost().getVmList()) {
-            if (vm.getCloudletScheduler().runningCloudlets() > 0 || ((AppModule) vm).getName().equals(incomingOperator)) {
-                getHost().getVmScheduler().allocatePesForVm(vm, new ArrayList<Double>() {
-                    protected static final long serialVersionUID = 1L;
+        getHost().getVmScheduler().allocatePesForVms(mipsShares.vms, mipsShares);
+        mipsShares.vms = null;
+        mipsShares.incomingOperator = null;
 
-                    {
-                        add((double) getHost().getTotalMips());
-                    }
-                });
-            } else {
-                getHost().getVmScheduler().allocatePesForVm(vm, new ArrayList<Double>() {
-                    protected static final long serialVersionUID = 1L;
+        updateEnergyConsumption();
 
-                    {
-                        add(0.0);
-                    }
-                });
-            }
+    }
+
+    /**
+     * The MIPS share of each VM of the host, given when the VM scheduler asks for it, so that no list
+     * of shares is built: the busy share for the VMs executing tuples and for the incoming operator,
+     * the idle share for the others.
+     */
+    private class MipsShares extends AbstractList<List<Double>> {
+        List<Vm> vms;
+        String incomingOperator;
+
+        @Override
+        public List<Double> get(int index) {
+            Vm vm = vms.get(index);
+            if (vm.getCloudletScheduler().runningCloudlets() > 0 || ((AppModule) vm).getName().equals(incomingOperator))
+                return getBusyMipsShare();
+            return getIdleMipsShare();
         }
 
-        updateEnergyConsumption();
+        @Override
+        public int size() {
+            return vms.size();
+        }
+    }
 
+    protected List<Double> getBusyMipsShare() {
+        if (busyMipsShare == null) {
+            busyMipsShare = Collections.singletonList((double) getHost().getTotalMips());
+        }
+        return busyMipsShare;
+    }
+
+    protected List<Double> getIdleMipsShare() {
+        if (idleMipsShare == null) {
+            idleMipsShare = Collections.singletonList(0.0);
+        }
+        return idleMipsShare;
     }
 
     private void updateEnergyConsumption() {
@@ -604,8 +816,9 @@ public class FogDevice extends PowerDatacenter {
         }
 
         double timeNow = CloudSim.clock();
+        double measuredTime = TimeKeeper.getInstance().getMeasuredTime(lastUtilizationUpdateTime, timeNow);
         double currentEnergyConsumption = getEnergyConsumption();
-        double newEnergyConsumption = currentEnergyConsumption + (timeNow - lastUtilizationUpdateTime) * getHost().getPowerModel().getPower(lastUtilization);
+        double newEnergyConsumption = currentEnergyConsumption + measuredTime * getHost().getPowerModel().getPower(lastUtilization);
         setEnergyConsumption(newEnergyConsumption);
 	
 		/*if(getName().equals("d-0")){
@@ -616,7 +829,7 @@ public class FogDevice extends PowerDatacenter {
 		}*/
 
         double currentCost = getTotalCost();
-        double newcost = currentCost + (timeNow - lastUtilizationUpdateTime) * getRatePerMips() * lastUtilization * getHost().getTotalMips();
+        double newcost = currentCost + measuredTime * getRatePerMips() * lastUtilization * getHost().getTotalMips();
         setTotalCost(newcost);
 
         lastUtilization = Math.min(1, totalMipsAllocated / getHost().getTotalMips());
@@ -631,8 +844,10 @@ public class FogDevice extends PowerDatacenter {
     public void addChild(int childId) {
         if (CloudSim.getEntityName(childId).toLowerCase().contains("sensor"))
             return;
-        if (!getChildrenIds().contains(childId) && childId != getId())
-            getChildrenIds().add(childId);
+        if (!childrenIds.contains(childId) && childId != getId()) {
+            childrenIds.add(childId);
+            FogHierarchyIndex.getInstance().childAdded(getId(), childId);
+        }
         if (!getChildToOperatorsMap().containsKey(childId))
             getChildToOperatorsMap().put(childId, new ArrayList<String>());
     }
@@ -666,8 +881,11 @@ public class FogDevice extends PowerDatacenter {
                 return;
             }
         }
+        // only down to the children with an actuator of that type below them
+        Set<Integer> routeChildIds = FogHierarchyIndex.getInstance().getChildIdsWithActuator(getId(), tuple.getDestModuleName());
         for (int childId : getChildrenIds()) {
-            sendDown(tuple, childId);
+            if (routeChildIds.contains(childId))
+                sendDown(tuple, childId);
         }
     }
 
@@ -675,6 +893,8 @@ public class FogDevice extends PowerDatacenter {
 
     protected void processTupleArrival(SimEvent ev) {
         Tuple tuple = (Tuple) ev.getData();
+        TraceRecorder.getInstance().tupleArrived(getId(), tuple, ev.getSource());
+        tupleArrivalCount++;
 
         if (getName().equals("cloud")) {
             updateCloudTraffic();
@@ -683,14 +903,15 @@ public class FogDevice extends PowerDatacenter {
 		/*if(getName().equals("d-0") && tuple.getTupleType().equals("_SENSOR")){
 			System.out.println(++numClients);
 		}*/
-        Logger.debug(getName(), "Received tuple [" + tuple.getCloudletId() + "] with tupleType = " + tuple.getTupleType() + "\t| Source : " +
-                CloudSim.getEntityName(ev.getSource()) + " | Dest : " + CloudSim.getEntityName(ev.getDestination()));
+        if (Logger.isDebugEnabled())
+            Logger.debug(getName(), "Received tuple [" + tuple.getCloudletId() + "] with tupleType = " + tuple.getTupleType() + "\t| Source : " +
+                    CloudSim.getEntityName(ev.getSource()) + " | Dest : " + CloudSim.getEntityName(ev.getDestination()));
 		
 		/*if(CloudSim.getEntityName(ev.getSource()).equals("drone_0")||CloudSim.getEntityName(ev.getDestination()).equals("drone_0"))
 			System.out.println(CloudSim.clock()+" "+getName()+" Received tuple "+tuple.getCloudletId()+" with tupleType = "+tuple.getTupleType()+"\t| Source : "+
 		CloudSim.getEntityName(ev.getSource())+"|Dest : "+CloudSim.getEntityName(ev.getDestination()));*/
 
-        send(ev.getSource(), CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ACK);
+        sendTupleAck(ev.getSource());
 
         if (FogUtils.appIdToGeoCoverageMap.containsKey(tuple.getAppId())) {
         }
@@ -704,13 +925,7 @@ public class FogDevice extends PowerDatacenter {
             final AppModule operator = (AppModule) getHost().getVmList().get(0);
             if (CloudSim.clock() > 0) {
                 getHost().getVmScheduler().deallocatePesForVm(operator);
-                getHost().getVmScheduler().allocatePesForVm(operator, new ArrayList<Double>() {
-                    protected static final long serialVersionUID = 1L;
-
-                    {
-                        add((double) getHost().getTotalMips());
-                    }
-                });
+                getHost().getVmScheduler().allocatePesForVm(operator, getBusyMipsShare());
             }
         }
 
@@ -720,15 +935,11 @@ public class FogDevice extends PowerDatacenter {
         }
 
         if (appToModulesMap.containsKey(tuple.getAppId())) {
-            if (appToModulesMap.get(tuple.getAppId()).contains(tuple.getDestModuleName())) {
-                int vmId = -1;
-                for (Vm vm : getHost().getVmList()) {
-                    if (((AppModule) vm).getName().equals(tuple.getDestModuleName()))
-                        vmId = vm.getId();
-                }
+            if (isModulePlaced(tuple.getAppId(), tuple.getDestModuleName())) {
+                int vmId = getVmIdForModule(tuple.getAppId(), tuple.getDestModuleName());
                 if (vmId < 0
-                        || (tuple.getModuleCopyMap().containsKey(tuple.getDestModuleName()) &&
-                        tuple.getModuleCopyMap().get(tuple.getDestModuleName()) != vmId)) {
+                        || (tuple.getModuleCopy(tuple.getDestModuleName()) != null &&
+                        tuple.getModuleCopy(tuple.getDestModuleName()) != vmId)) {
                     return;
                 }
                 tuple.setVmId(vmId);
@@ -761,34 +972,33 @@ public class FogDevice extends PowerDatacenter {
         Application app = getApplicationMap().get(tuple.getAppId());
         String srcModule = tuple.getSrcModuleName();
         String destModule = tuple.getDestModuleName();
-        List<AppLoop> loops = app.getLoops();
-        for (AppLoop loop : loops) {
-            if (loop.hasEdge(srcModule, destModule) && loop.isEndModule(destModule)) {
-                Double startTime = TimeKeeper.getInstance().getEmitTimes().get(tuple.getActualTupleId());
-                if (startTime == null)
-                    break;
-                if (!TimeKeeper.getInstance().getLoopIdToCurrentAverage().containsKey(loop.getLoopId())) {
-                    TimeKeeper.getInstance().getLoopIdToCurrentAverage().put(loop.getLoopId(), 0.0);
-                    TimeKeeper.getInstance().getLoopIdToCurrentNum().put(loop.getLoopId(), 0);
-                }
-                double currentAverage = TimeKeeper.getInstance().getLoopIdToCurrentAverage().get(loop.getLoopId());
-                int currentCount = TimeKeeper.getInstance().getLoopIdToCurrentNum().get(loop.getLoopId());
-                double delay = CloudSim.clock() - TimeKeeper.getInstance().getEmitTimes().get(tuple.getActualTupleId());
-                TimeKeeper.getInstance().getEmitTimes().remove(tuple.getActualTupleId());
-                double newAverage = (currentAverage * currentCount + delay) / (currentCount + 1);
-                TimeKeeper.getInstance().getLoopIdToCurrentAverage().put(loop.getLoopId(), newAverage);
-                TimeKeeper.getInstance().getLoopIdToCurrentNum().put(loop.getLoopId(), currentCount + 1);
-                break;
+        AppLoop loop = app.getLoopEndingWithEdge(srcModule, destModule);
+        if (loop != null) {
+            double startTime = TimeKeeper.getInstance().getEmitTimeMap().remove(tuple.getActualTupleId());
+            if (!Double.isNaN(startTime)) {
+                double delay = CloudSim.clock() - startTime;
+                TimeKeeper.getInstance().loopDelayMeasured(loop.getLoopId(), delay);
             }
         }
     }
 
     protected void processSensorJoining(SimEvent ev) {
-        send(ev.getSource(), CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ACK);
+        sendTupleAck(ev.getSource());
+    }
+
+    /**
+     * Acknowledges a tuple or a joining to its sender, as configured by {@link Config#TUPLE_ACK_MODE}.
+     *
+     * @param senderId the id of the sender
+     */
+    protected void sendTupleAck(int senderId) {
+        if (TupleAcks.getInstance().shouldAck(getId(), senderId))
+            send(senderId, CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ACK);
     }
 
     protected void executeTuple(SimEvent ev, String moduleName) {
-        Logger.debug(getName(), "Executing tuple on module " + moduleName);
+        if (Logger.isDebugEnabled())
+            Logger.debug(getName(), "Executing tuple on module " + moduleName);
         Tuple tuple = (Tuple) ev.getData();
 
         AppModule module = getModuleByName(moduleName);
@@ -808,6 +1018,7 @@ public class FogDevice extends PowerDatacenter {
         }
 
         TimeKeeper.getInstance().tupleStartedExecution(tuple);
+        TraceRecorder.getInstance().executionStarted(getId(), tuple, moduleName, module.getId());
         updateAllocatedMips(moduleName);
         processCloudletSubmit(ev, false);
         updateAllocatedMips(moduleName);
@@ -824,6 +1035,7 @@ public class FogDevice extends PowerDatacenter {
         }
         appToModulesMap.get(appId).add(module.getName());
         processVmCreate(ev, false);
+        TraceRecorder.getInstance().modulePlaced(getId(), module);
         if (module.isBeingInstantiated()) {
             module.setBeingInstantiated(false);
         }
@@ -868,11 +1080,16 @@ public class FogDevice extends PowerDatacenter {
         send(getId(), networkDelay, FogEvents.UPDATE_NORTH_TUPLE_QUEUE);
         send(parentId, networkDelay + getUplinkLatency(), FogEvents.TUPLE_ARRIVAL, tuple);
         NetworkUsageMonitor.sendingTuple(getUplinkLatency(), tuple.getCloudletFileSize());
+        uplinkSentBytes += tuple.getCloudletFileSize();
     }
 
     protected void sendUp(Tuple tuple) {
         if (parentId > 0) {
-            if (!isNorthLinkBusy()) {
+            TraceRecorder.getInstance().tupleSent(getId(), tuple, parentId);
+            if (Config.LINK_MODEL == SharedLink.SHARED) {
+                transmit(getUplink(), tuple, parentId, getUplinkLatency());
+                uplinkSentBytes += tuple.getCloudletFileSize();
+            } else if (!isNorthLinkBusy()) {
                 sendUpFreeLink(tuple);
             } else {
                 northTupleQueue.add(tuple);
@@ -899,11 +1116,16 @@ public class FogDevice extends PowerDatacenter {
         send(getId(), networkDelay, FogEvents.UPDATE_SOUTH_TUPLE_QUEUE);
         send(childId, networkDelay + latency, FogEvents.TUPLE_ARRIVAL, tuple);
         NetworkUsageMonitor.sendingTuple(latency, tuple.getCloudletFileSize());
+        downlinkSentBytes += tuple.getCloudletFileSize();
     }
 
     protected void sendDown(Tuple tuple, int childId) {
         if (getChildrenIds().contains(childId)) {
-            if (!isSouthLinkBusy()) {
+            TraceRecorder.getInstance().tupleSent(getId(), tuple, childId);
+            if (Config.LINK_MODEL == SharedLink.SHARED) {
+                transmit(getDownlink(childId), tuple, childId, getChildToLatencyMap().get(childId));
+                downlinkSentBytes += tuple.getCloudletFileSize();
+            } else if (!isSouthLinkBusy()) {
                 sendDownFreeLink(tuple, childId);
             } else {
                 southTupleQueue.add(new Pair<Tuple, Integer>(tuple, childId));
@@ -912,6 +1134,76 @@ public class FogDevice extends PowerDatacenter {
     }
 
 
+    /**
+     * Starts sending a tuple on a shared link, and schedules the update of the link if the tuple
+     * changes its next completion.
+     */
+    protected void transmit(SharedLink link, Tuple tuple, int destinationId, double latency) {
+        link.startTransfer(tuple, destinationId, latency, CloudSim.clock());
+        scheduleLinkUpdate(link);
+    }
+
+    /**
+     * Delivers the tuples a shared link has finished sending.
+     */
+    protected void updateLink(SharedLink link) {
+        for (SharedLink.Transfer transfer : link.finishTransfers(CloudSim.clock()))
+            deliverTuple(transfer.getTuple(), transfer.getDestinationId(), transfer.getLatency());
+        scheduleLinkUpdate(link);
+    }
+
+    private void scheduleLinkUpdate(SharedLink link) {
+        double time = link.getNextCompletionTime(CloudSim.clock());
+        if (time >= 0 && link.scheduleUpdate(time))
+            send(getId(), time - CloudSim.clock(), FogEvents.UPDATE_LINK, link);
+    }
+
+    /**
+     * Sends a tuple that has gone through a shared link to the device at the other end.
+     *
+     * @param latency the latency of the link
+     */
+    protected void deliverTuple(Tuple tuple, int destinationId, double latency) {
+        send(destinationId, latency, FogEvents.TUPLE_ARRIVAL, tuple);
+        NetworkUsageMonitor.sendingTuple(latency, tuple.getCloudletFileSize());
+    }
+
+    public SharedLink getUplink() {
+        if (uplink == null)
+            uplink = new SharedLink(getName() + "/up", getUplinkBandwidth());
+        return uplink;
+    }
+
+    public SharedLink getDownlink(int childId) {
+        SharedLink link = downlinks.get(childId);
+        if (link == null) {
+            link = new SharedLink(getName() + "/down/" + CloudSim.getEntityName(childId), getDownlinkBandwidth());
+            downlinks.put(childId, link);
+        }
+        return link;
+    }
+
+    public SharedLink getClusterLink(int clusterNodeID) {
+        SharedLink link = clusterLinks.get(clusterNodeID);
+        if (link == null) {
+            link = new SharedLink(getName() + "/cluster/" + CloudSim.getEntityName(clusterNodeID), getClusterLinkBandwidth());
+            clusterLinks.put(clusterNodeID, link);
+        }
+        return link;
+    }
+
+    /**
+     * Gets the shared links this device has used so far, uplink first.
+     */
+    public List<SharedLink> getSharedLinks() {
+        List<SharedLink> links = new ArrayList<SharedLink>();
+        if (uplink != null)
+            links.add(uplink);
+        links.addAll(downlinks.values());
+        links.addAll(clusterLinks.values());
+        return links;
+    }
+
     protected void sendToSelf(Tuple tuple) {
         send(getId(), CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ARRIVAL, tuple);
     }
@@ -928,12 +1220,60 @@ public class FogDevice extends PowerDatacenter {
         this.parentId = parentId;
     }
 
+    /**
+     * Gets the IDs of the children Fog devices. The list can still be changed, but each change
+     * discards the {@link FogHierarchyIndex}, which is then built again on the next query: children
+     * should rather be added and removed with {@link #addChild(int)} and {@link #removeChild(int)},
+     * which only update the part of the index that changed.
+     */
     public List<Integer> getChildrenIds() {
-        return childrenIds;
+        return childrenIdsView;
     }
 
     public void setChildrenIds(List<Integer> childrenIds) {
         this.childrenIds = childrenIds;
+        childrenIdsView = new ChildrenIdsView();
+        FogHierarchyIndex.getInstance().invalidate();
+    }
+
+    /**
+     * The children IDs as returned by getChildrenIds: changes are made to childrenIds, and discard
+     * the FogHierarchyIndex.
+     */
+    private class ChildrenIdsView extends AbstractList<Integer> implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Integer get(int index) {
+            return childrenIds.get(index);
+        }
+
+        @Override
+        public int size() {
+            return childrenIds.size();
+        }
+
+        @Override
+        public Integer set(int index, Integer childId) {
+            Integer previous = childrenIds.set(index, childId);
+            FogHierarchyIndex.getInstance().invalidate();
+            return previous;
+        }
+
+        @Override
+        public void add(int index, Integer childId) {
+            childrenIds.add(index, childId);
+            modCount++;
+            FogHierarchyIndex.getInstance().invalidate();
+        }
+
+        @Override
+        public Integer remove(int index) {
+            Integer removed = childrenIds.remove(index);
+            modCount++;
+            FogHierarchyIndex.getInstance().invalidate();
+            return removed;
+        }
     }
 
     public double getUplinkBandwidth() {
@@ -1081,16 +1421,26 @@ public class FogDevice extends PowerDatacenter {
         this.moduleInstanceCount = moduleInstanceCount;
     }
 
+    /**
+     * Gets the names of the modules of an application placed on the device, as an unmodifiable list,
+     * since the module index is built from these lists: modules are placed with
+     * {@link #processModuleArrival(SimEvent)}.
+     *
+     * @return the module names, or null if no module of the application has been placed
+     */
     public List<String> getPlacedAppModulesPerApplication(String appId) {
-        return appToModulesMap.get(appId);
+        List<String> modules = appToModulesMap.get(appId);
+        return modules != null ? Collections.unmodifiableList(modules) : null;
     }
 
     public void removeChild(int childId) {
         // TODO Auto-generated method stub
         @SuppressWarnings("deprecation")
         Integer childIDobject = new Integer(childId);
-        if (getChildrenIds().contains(childId) && childId != getId())
-            getChildrenIds().remove(childIDobject);
+        if (childrenIds.contains(childId) && childId != getId()) {
+            childrenIds.remove(childIDobject);
+            FogHierarchyIndex.getInstance().childRemoved(getId(), childId);
+        }
         if (getChildToOperatorsMap().containsKey(childId)) {
             List<String> operatorName = getChildToOperatorsMap().get(childId);
             getChildToOperatorsMap().remove(childId, operatorName);
@@ -1149,7 +1499,11 @@ public class FogDevice extends PowerDatacenter {
 
     protected void sendToCluster(Tuple tuple, int clusterNodeID) {
         if (getClusterMembers().contains(clusterNodeID)) {
-            if (!isClusterLinkBusy) {
+            TraceRecorder.getInstance().tupleSent(getId(), tuple, clusterNodeID);
+            if (Config.LINK_MODEL == SharedLink.SHARED) {
+                transmit(getClusterLink(clusterNodeID), tuple, clusterNodeID, getClusterMembersToLatencyMap().get(clusterNodeID));
+                clusterLinkSentBytes += tuple.getCloudletFileSize();
+            } else if (!isClusterLinkBusy) {
                 sendThroughFreeClusterLink(tuple, clusterNodeID);
             } else {
                 clusterTupleQueue.add(new Pair<Tuple, Integer>(tuple, clusterNodeID));
@@ -1173,12 +1527,33 @@ public class FogDevice extends PowerDatacenter {
         send(getId(), networkDelay, FogEvents.UPDATE_CLUSTER_TUPLE_QUEUE);
         send(clusterNodeID, networkDelay + latency, FogEvents.TUPLE_ARRIVAL, tuple);
         NetworkUsageMonitor.sendingTuple(latency, tuple.getCloudletFileSize());
+        clusterLinkSentBytes += tuple.getCloudletFileSize();
     }
 
     protected void setClusterLinkBusy(boolean busy) {
         this.isClusterLinkBusy = busy;
     }
 
+    public double getUplinkSentBytes() {
+        return uplinkSentBytes;
+    }
+
+    public double getDownlinkSentBytes() {
+        return downlinkSentBytes;
+    }
+
+    public double getClusterLinkSentBytes() {
+        return clusterLinkSentBytes;
+    }
+
+    public long getTupleArrivalCount() {
+        return tupleArrivalCount;
+    }
+
+    public double getLastUtilization() {
+        return lastUtilization;
+    }
+
     public Queue<Pair<Tuple, Integer>> getClusterTupleQueue() {
         return clusterTupleQueue;
     }
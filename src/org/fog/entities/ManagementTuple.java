@@ -13,6 +13,8 @@ import java.util.Map;
  */
 public class ManagementTuple extends Tuple {
 
+    private static final long serialVersionUID = 1L;
+
     // management tuples are routed by device id, so direction doesn't matter/
     public static final int NONE = -1;
 
@@ -2,7 +2,6 @@ package org.fog.entities;
 
 import org.apache.commons.math3.util.Pair;
 import org.cloudbus.cloudsim.Storage;
-import org.cloudbus.cloudsim.Vm;
 import org.cloudbus.cloudsim.VmAllocationPolicy;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.SimEvent;
@@ -12,6 +11,7 @@ import org.fog.application.Application;
 import org.fog.placement.MicroservicePlacementLogic;
 import org.fog.placement.PlacementLogicOutput;
 import org.fog.utils.*;
+import org.fog.utils.trace.TraceRecorder;
 import org.json.simple.JSONObject;
 
 import java.util.*;
@@ -21,6 +21,8 @@ import java.util.*;
  */
 public class MicroserviceFogDevice extends FogDevice {
 
+    private static final long serialVersionUID = 1L;
+
     /**
      * Device type (1.client device 2.FCN 3.FON 4.Cloud)
      * in this work client device only holds the clientModule of the app and does not participate in processing and placement of microservices ( microservices can be shared among users,
@@ -155,15 +157,18 @@ public class MicroserviceFogDevice extends FogDevice {
     protected void processTupleArrival(SimEvent ev) {
 
         Tuple tuple = (Tuple) ev.getData();
+        TraceRecorder.getInstance().tupleArrived(getId(), tuple, ev.getSource());
+        tupleArrivalCount++;
 
-        Logger.debug(getName(), "Received tuple " + tuple.getCloudletId() + "with tupleType = " + tuple.getTupleType() + "\t| Source : " +
-                CloudSim.getEntityName(ev.getSource()) + "|Dest : " + CloudSim.getEntityName(ev.getDestination()));
+        if (Logger.isDebugEnabled())
+            Logger.debug(getName(), "Received tuple " + tuple.getCloudletId() + "with tupleType = " + tuple.getTupleType() + "\t| Source : " +
+                    CloudSim.getEntityName(ev.getSource()) + "|Dest : " + CloudSim.getEntityName(ev.getDestination()));
 
         if (deviceType.equals(MicroserviceFogDevice.CLOUD)) {
             updateCloudTraffic();
         }
 
-        send(ev.getSource(), CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ACK);
+        sendTupleAck(ev.getSource());
 
         if (FogUtils.appIdToGeoCoverageMap.containsKey(tuple.getAppId())) {
         }
@@ -177,13 +182,7 @@ public class MicroserviceFogDevice extends FogDevice {
             final AppModule operator = (AppModule) getHost().getVmList().get(0);
             if (CloudSim.clock() > 0) {
                 getHost().getVmScheduler().deallocatePesForVm(operator);
-                getHost().getVmScheduler().allocatePesForVm(operator, new ArrayList<Double>() {
-                    protected static final long serialVersionUID = 1L;
-
-                    {
-                        add((double) getHost().getTotalMips());
-                    }
-                });
+                getHost().getVmScheduler().allocatePesForVm(operator, getBusyMipsShare());
             }
         }
 
@@ -210,14 +209,10 @@ public class MicroserviceFogDevice extends FogDevice {
         }
 
         if (tuple.getDestinationDeviceId() == getId()) {
-            int vmId = -1;
-            for (Vm vm : getHost().getVmList()) {
-                if (((AppModule) vm).getName().equals(tuple.getDestModuleName()))
-                    vmId = vm.getId();
-            }
+            int vmId = getVmIdForModule(tuple.getAppId(), tuple.getDestModuleName());
             if (vmId < 0
-                    || (tuple.getModuleCopyMap().containsKey(tuple.getDestModuleName()) &&
-                    tuple.getModuleCopyMap().get(tuple.getDestModuleName()) != vmId)) {
+                    || (tuple.getModuleCopy(tuple.getDestModuleName()) != null &&
+                    tuple.getModuleCopy(tuple.getDestModuleName()) != vmId)) {
                 return;
             }
             tuple.setVmId(vmId);
@@ -242,15 +237,11 @@ public class MicroserviceFogDevice extends FogDevice {
             } else {
                 if (tuple.getDirection() == Tuple.DOWN) {
                     if (appToModulesMap.containsKey(tuple.getAppId())) {
-                        if (appToModulesMap.get(tuple.getAppId()).contains(tuple.getDestModuleName())) {
-                            int vmId = -1;
-                            for (Vm vm : getHost().getVmList()) {
-                                if (((AppModule) vm).getName().equals(tuple.getDestModuleName()))
-                                    vmId = vm.getId();
-                            }
+                        if (isModulePlaced(tuple.getAppId(), tuple.getDestModuleName())) {
+                            int vmId = getVmIdForModule(tuple.getAppId(), tuple.getDestModuleName());
                             if (vmId < 0
-                                    || (tuple.getModuleCopyMap().containsKey(tuple.getDestModuleName()) &&
-                                    tuple.getModuleCopyMap().get(tuple.getDestModuleName()) != vmId)) {
+                                    || (tuple.getModuleCopy(tuple.getDestModuleName()) != null &&
+                                    tuple.getModuleCopy(tuple.getDestModuleName()) != vmId)) {
                                 return;
                             }
                             tuple.setVmId(vmId);
@@ -443,8 +434,10 @@ public class MicroserviceFogDevice extends FogDevice {
             appToModulesMap.get(appId).add(module.getName());
             processVmCreate(ev, false);
             boolean result = getVmAllocationPolicy().allocateHostForVm(module);
+            invalidateModuleIndex();
             if (result) {
                 getVmList().add(module);
+                TraceRecorder.getInstance().modulePlaced(getId(), module);
                 if (module.isBeingInstantiated()) {
                     module.setBeingInstantiated(false);
                 }
@@ -469,6 +462,7 @@ public class MicroserviceFogDevice extends FogDevice {
         AppModule appModule = (AppModule) object.get("module");
         Application app = (Application) object.get("application");
         System.out.println(CloudSim.clock() + getName() + " is receiving " + appModule.getName());
+        TraceRecorder.getInstance().moduleReceived(getId(), appModule, (double) object.get("delay"));
 
         sendNow(getId(), FogEvents.APP_SUBMIT, app);
         sendNow(getId(), FogEvents.LAUNCH_MODULE, appModule);
@@ -485,6 +479,7 @@ public class MicroserviceFogDevice extends FogDevice {
         JSONObject object = (JSONObject) ev.getData();
         AppModule appModule = (AppModule) object.get("module");
         System.out.println(getName() + " is sending " + appModule.getName());
+        TraceRecorder.getInstance().moduleSent(getId(), appModule, (double) object.get("delay"));
         NetworkUsageMonitor.sendingModule((double) object.get("delay"), appModule.getSize());
         MigrationDelayMonitor.setMigrationDelay((double) object.get("delay"));
 
@@ -495,6 +490,7 @@ public class MicroserviceFogDevice extends FogDevice {
             else {
                 moduleInstanceCount.get(appModule.getAppId()).remove(appModule.getName());
                 appToModulesMap.get(appModule.getAppId()).remove(appModule.getName());
+                invalidateModuleIndex();
                 sendNow(getId(), FogEvents.RELEASE_MODULE, appModule);
             }
         }
@@ -656,6 +652,14 @@ public class MicroserviceFogDevice extends FogDevice {
 
     }
 
+    @Override
+    protected void deliverTuple(Tuple tuple, int destinationId, double latency) {
+        if (tuple instanceof ManagementTuple)
+            send(destinationId, latency + ((ManagementTuple) tuple).processingDelay, FogEvents.MANAGEMENT_TUPLE_ARRIVAL, tuple);
+        else
+            super.deliverTuple(tuple, destinationId, latency);
+    }
+
     public void updateRoutingTable(int destId, int nextId) {
         routingTable.put(destId, nextId);
     }
@@ -1,6 +1,6 @@
 package org.fog.entities;
 
-import java.util.ArrayList;
+import java.util.List;
 
 import org.cloudbus.cloudsim.UtilizationModelFull;
 import org.cloudbus.cloudsim.core.CloudSim;
@@ -11,8 +11,12 @@ import org.fog.application.AppLoop;
 import org.fog.application.Application;
 import org.fog.utils.*;
 import org.fog.utils.distribution.Distribution;
+import org.fog.utils.trace.TraceRecorder;
 
 public class Sensor extends SimEntity{
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	
 	private int gatewayDeviceId;
 	private GeoLocation geoLocation;
@@ -92,28 +96,24 @@ public class Sensor extends SimEntity{
 		
 		tuple.setDestModuleName(_edge.getDestination());
 		tuple.setSrcModuleName(getSensorName());
-		Logger.debug(getName(), "Sending tuple with tupleId = "+tuple.getCloudletId());
+		if (Logger.isDebugEnabled())
+			Logger.debug(getName(), "Sending tuple with tupleId = "+tuple.getCloudletId());
 
 		tuple.setDestinationDeviceId(getGatewayDeviceId());
 
 		int actualTupleId = updateTimings(getSensorName(), tuple.getDestModuleName());
 		tuple.setActualTupleId(actualTupleId);
 		
+		TraceRecorder.getInstance().tupleSent(getId(), tuple, gatewayDeviceId);
 		send(gatewayDeviceId, getLatency(), FogEvents.TUPLE_ARRIVAL,tuple);
 	}
 	
 	protected int updateTimings(String src, String dest){
 		Application application = getApp();
-		for(AppLoop loop : application.getLoops()){
-			if(loop.hasEdge(src, dest)){
-				
-				int tupleId = TimeKeeper.getInstance().getUniqueId();
-				if(!TimeKeeper.getInstance().getLoopIdToTupleIds().containsKey(loop.getLoopId()))
-					TimeKeeper.getInstance().getLoopIdToTupleIds().put(loop.getLoopId(), new ArrayList<Integer>());
-				TimeKeeper.getInstance().getLoopIdToTupleIds().get(loop.getLoopId()).add(tupleId);
-				TimeKeeper.getInstance().getEmitTimes().put(tupleId, CloudSim.clock());
-				return tupleId;
-			}
+		List<AppLoop> loops = application.getLoopsWithEdge(src, dest);
+		if(!loops.isEmpty()){
+			AppLoop loop = loops.get(0);
+			return TimeKeeper.getInstance().tupleEmitted(loop.getLoopId());
 		}
 		return -1;
 	}
@@ -0,0 +1,226 @@
+package org.fog.entities;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A link of a fog device modelled at the flow level: the tuples in transit share the bandwidth of the
+ * link equally (processor sharing), instead of being sent one after the other as with the tuple
+ * queues of {@link FogDevice}. Used when {@link org.fog.utils.Config#LINK_MODEL} is {@link #SHARED}.
+ * <p>
+ * The link keeps a virtual clock giving the amount of data every transfer in progress has been sent
+ * so far. A transfer of size <tt>s</tt> starting at virtual time <tt>v</tt> completes at virtual time
+ * <tt>v + s</tt> whatever the other transfers do, so the transfers are ordered once by their virtual
+ * completion time and only the next completion has to be scheduled. Transfers completing at the same
+ * time, such as those of a burst of equal tuples, are completed by a single update.
+ */
+public class SharedLink implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/** Tuples are sent one at a time through the tuple queues of the devices. */
+	public static final int FIFO = 0;
+
+	/** Tuples share the bandwidth of per-destination links. */
+	public static final int SHARED = 1;
+
+	/** The relative tolerance on virtual times, for rounding errors. */
+	private static final double EPSILON = 1e-9;
+
+	private final String name;
+
+	private final double bandwidth;
+
+	/** Orders transfers by virtual completion time and then by start order. */
+	private static final Comparator<Transfer> COMPLETION_ORDER = new Comparator<Transfer>() {
+		@Override
+		public int compare(Transfer t1, Transfer t2) {
+			int result = Double.compare(t1.finishVirtualTime, t2.finishVirtualTime);
+			return result != 0 ? result : Long.compare(t1.sequence, t2.sequence);
+		}
+	};
+
+	/** The transfers in progress, by virtual completion time and then by start order. */
+	private final PriorityQueue<Transfer> transfers = new PriorityQueue<Transfer>(11, COMPLETION_ORDER);
+
+	/** The amount of data sent so far to each transfer in progress since the link was created. */
+	private double virtualTime = 0;
+
+	/** The time the virtual clock was last advanced. */
+	private double lastUpdateTime = 0;
+
+	private long startedTransfers = 0;
+
+	/**
+	 * The time of the earliest update event scheduled for this link and not processed yet, or
+	 * infinity if there is none. Later updates that were scheduled before it are still processed, but
+	 * are not tracked.
+	 */
+	private double nextScheduledUpdate = Double.POSITIVE_INFINITY;
+
+	/** The time during which the link was transmitting. */
+	private double busyTime = 0;
+
+	/** The amount of data of the completed transfers. */
+	private double transmittedData = 0;
+
+	/**
+	 * A tuple in transit on the link.
+	 */
+	public static class Transfer implements Serializable {
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		private final Tuple tuple;
+		private final int destinationId;
+		private final double latency;
+		private final double finishVirtualTime;
+		private final long sequence;
+
+		private Transfer(Tuple tuple, int destinationId, double latency, double finishVirtualTime, long sequence) {
+			this.tuple = tuple;
+			this.destinationId = destinationId;
+			this.latency = latency;
+			this.finishVirtualTime = finishVirtualTime;
+			this.sequence = sequence;
+		}
+
+		public Tuple getTuple() {
+			return tuple;
+		}
+
+		public int getDestinationId() {
+			return destinationId;
+		}
+
+		/**
+		 * Gets the latency of the link, added to the transmission time of the tuple.
+		 */
+		public double getLatency() {
+			return latency;
+		}
+	}
+
+	public SharedLink(String name, double bandwidth) {
+		if (bandwidth <= 0)
+			throw new IllegalArgumentException("The bandwidth of a link should be positive, but is:" + bandwidth);
+		this.name = name;
+		this.bandwidth = bandwidth;
+	}
+
+	/**
+	 * Starts sending a tuple on the link.
+	 *
+	 * @param tuple the tuple
+	 * @param destinationId the id of the entity receiving the tuple
+	 * @param latency the latency of the link
+	 * @param now the current simulation time
+	 */
+	public void startTransfer(Tuple tuple, int destinationId, double latency, double now) {
+		advance(now);
+		double finishVirtualTime = virtualTime + tuple.getCloudletFileSize();
+		transfers.add(new Transfer(tuple, destinationId, latency, finishVirtualTime, startedTransfers++));
+	}
+
+	/**
+	 * Removes the transfers that are complete.
+	 *
+	 * @param now the current simulation time
+	 * @return the completed transfers, in completion order
+	 */
+	public List<Transfer> finishTransfers(double now) {
+		advance(now);
+		if (nextScheduledUpdate <= now + EPSILON * Math.max(1, now))
+			nextScheduledUpdate = Double.POSITIVE_INFINITY;
+		List<Transfer> completed = new ArrayList<Transfer>();
+		while (!transfers.isEmpty()
+				&& transfers.peek().finishVirtualTime <= virtualTime + EPSILON * Math.max(1, virtualTime)) {
+			Transfer transfer = transfers.poll();
+			transmittedData += transfer.tuple.getCloudletFileSize();
+			completed.add(transfer);
+		}
+		return completed;
+	}
+
+	/**
+	 * Gets the time the next transfer completes if no other transfer starts meanwhile.
+	 *
+	 * @param now the current simulation time
+	 * @return the completion time, or -1 if the link is idle
+	 */
+	public double getNextCompletionTime(double now) {
+		if (transfers.isEmpty())
+			return -1;
+		advance(now);
+		double remaining = Math.max(0, transfers.peek().finishVirtualTime - virtualTime);
+		return now + remaining * transfers.size() / bandwidth;
+	}
+
+	/**
+	 * Records that an update of the link is needed at a given time, unless an update is already
+	 * scheduled at or before that time; that update will find out the next completion by itself.
+	 *
+	 * @param time the time of the update
+	 * @return true if an update event has to be scheduled at that time
+	 */
+	public boolean scheduleUpdate(double time) {
+		if (nextScheduledUpdate <= time)
+			return false;
+		nextScheduledUpdate = time;
+		return true;
+	}
+
+	private void advance(double now) {
+		if (now > lastUpdateTime) {
+			if (!transfers.isEmpty()) {
+				virtualTime += (now - lastUpdateTime) * bandwidth / transfers.size();
+				busyTime += now - lastUpdateTime;
+			}
+			lastUpdateTime = now;
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public double getBandwidth() {
+		return bandwidth;
+	}
+
+	/**
+	 * Gets the number of tuples in transit on the link.
+	 */
+	public int getTransferCount() {
+		return transfers.size();
+	}
+
+	/**
+	 * Gets the time during which the link was transmitting, up to its last update.
+	 */
+	public double getBusyTime() {
+		return busyTime;
+	}
+
+	/**
+	 * Gets the amount of data of the tuples the link has sent.
+	 */
+	public double getTransmittedData() {
+		return transmittedData;
+	}
+
+	/**
+	 * Gets the fraction of time the link was transmitting.
+	 *
+	 * @param now the current simulation time
+	 * @return the utilization of the link since the start of the simulation
+	 */
+	public double getUtilization(double now) {
+		advance(now);
+		return now > 0 ? busyTime / now : 0;
+	}
+}
@@ -1,5 +1,7 @@
 package org.fog.entities;
 
+import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -8,6 +10,9 @@ import org.cloudbus.cloudsim.UtilizationModel;
 
 public class Tuple extends Cloudlet{
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	public static final int UP = 1;
 	public static final int DOWN = 2;
 	public static final int ACTUATOR = 3;
@@ -25,17 +30,24 @@ public class Tuple extends Cloudlet{
 	/**
 	 * Map to keep track of which module instances has a tuple traversed.
 	 * 
-	 * Map from moduleName to vmId of a module instance
+	 * Map from moduleName to vmId of a module instance. It is only created when asked for; until
+	 * then the module instances are kept in moduleCopies.
 	 */
 	private Map<String, Integer> moduleCopyMap;
 
+	/**
+	 * The module instances the tuple has traversed, newest first, as a list shared with the tuples
+	 * it was created from, or null if there are none.
+	 */
+	private ModuleCopy moduleCopies;
+
 	/**
 	 * For device id based routing used
 	 */
 	protected int destinationDeviceId;
 	/* keep track of traversed microservices by tuples of type UP in microservices architecture UP -> tuple travelling towards service
 	 DOWN -> tuple travelling from service to client microservice.*/
-	protected Map<String, Integer> traversedMicroservices = new HashMap<>();
+	protected Map<String, Integer> traversedMicroservices;
 	
 	public Tuple(String appId, int cloudletId, int direction, long cloudletLength, int pesNumber,
 			long cloudletFileSize, long cloudletOutputSize,
@@ -48,10 +60,27 @@ public class Tuple extends Cloudlet{
 		setAppId(appId);
 		setDirection(direction);
 		setSourceDeviceId(-1);
-		setModuleCopyMap(new HashMap<String, Integer>());
 		setDestinationDeviceId(-1);
 	}
 
+	/**
+	 * A module instance traversed by a tuple, in an immutable list of them.
+	 */
+	private static final class ModuleCopy implements Serializable {
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		final String moduleName;
+		final int vmId;
+		final ModuleCopy next;
+
+		ModuleCopy(String moduleName, int vmId, ModuleCopy next) {
+			this.moduleName = moduleName;
+			this.vmId = vmId;
+			this.next = next;
+		}
+	}
+
 	public int getActualTupleId() {
 		return actualTupleId;
 	}
@@ -117,11 +146,56 @@ public class Tuple extends Cloudlet{
 	}
 
 	public Map<String, Integer> getModuleCopyMap() {
+		if (moduleCopyMap == null) {
+			moduleCopyMap = new HashMap<String, Integer>();
+			for (ModuleCopy copy = moduleCopies; copy != null; copy = copy.next) {
+				if (!moduleCopyMap.containsKey(copy.moduleName))
+					moduleCopyMap.put(copy.moduleName, copy.vmId);
+			}
+			moduleCopies = null;
+		}
 		return moduleCopyMap;
 	}
 
 	public void setModuleCopyMap(Map<String, Integer> moduleCopyMap) {
 		this.moduleCopyMap = moduleCopyMap;
+		this.moduleCopies = null;
+	}
+
+	/**
+	 * Gets the instance of a module the tuple has traversed.
+	 * 
+	 * @param moduleName the module name
+	 * @return the VM id of the module instance, or null if the tuple has not traversed the module
+	 */
+	public Integer getModuleCopy(String moduleName) {
+		if (moduleCopyMap != null)
+			return moduleCopyMap.get(moduleName);
+		for (ModuleCopy copy = moduleCopies; copy != null; copy = copy.next) {
+			if (copy.moduleName.equals(moduleName))
+				return copy.vmId;
+		}
+		return null;
+	}
+
+	/**
+	 * Sets the module instances traversed by the tuple to those traversed by the tuple it was
+	 * created from, followed by the instance that created it. The instances are shared with the
+	 * other tuple rather than copied, as long as neither asks for its module copy map.
+	 * 
+	 * @param inputTuple the tuple this tuple was created from
+	 * @param moduleName the name of the module that created this tuple
+	 * @param vmId the VM id of the module instance
+	 */
+	public void setModuleCopies(Tuple inputTuple, String moduleName, int vmId) {
+		if (inputTuple.moduleCopyMap != null) {
+			moduleCopyMap = new HashMap<String, Integer>(inputTuple.moduleCopyMap);
+			moduleCopyMap.put(moduleName, vmId);
+			moduleCopies = null;
+		} else {
+			moduleCopyMap = null;
+			moduleCopies = new ModuleCopy(moduleName, vmId, inputTuple.moduleCopies);
+		}
 	}
 
 	public int getSourceModuleId() {
@@ -141,18 +215,28 @@ public class Tuple extends Cloudlet{
 	}
 
 	public void addToTraversedMicroservices(Integer deviceID, String microserviceName) {
+		if (traversedMicroservices == null)
+			traversedMicroservices = new HashMap<>();
 		traversedMicroservices.put(microserviceName, deviceID);
 	}
 
 	public int getDeviceForMicroservice(String microserviceName) {
-		if (!traversedMicroservices.containsKey(microserviceName))
+		if (traversedMicroservices == null || !traversedMicroservices.containsKey(microserviceName))
 			return -1;
 		else {
 			return traversedMicroservices.get(microserviceName);
 		}
 	}
 
+	/**
+	 * Gets the traversed microservices.
+	 *
+	 * @return the map of the tuple, or an immutable empty map if the tuple has not traversed any
+	 * microservice yet, in which case microservices are added with {@link #addToTraversedMicroservices}
+	 */
 	public Map<String, Integer> getTraversed() {
+		if (traversedMicroservices == null)
+			return Collections.emptyMap();
 		return traversedMicroservices;
 	}
 
@@ -160,4 +244,15 @@ public class Tuple extends Cloudlet{
 		traversedMicroservices = traversed;
 	}
 
+	/**
+	 * Makes the tuple share the traversed microservices of the tuple it was created from, so that the
+	 * microservices either of them traverses afterwards are seen by both. The map is created on the
+	 * other tuple if it has none yet.
+	 */
+	public void shareTraversedMicroservices(Tuple from) {
+		if (from.traversedMicroservices == null)
+			from.traversedMicroservices = new HashMap<>();
+		traversedMicroservices = from.traversedMicroservices;
+	}
+
 }
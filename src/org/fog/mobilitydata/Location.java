@@ -1,7 +1,11 @@
 package org.fog.mobilitydata;
 
+import java.io.Serializable;
 
-public class Location {
+public class Location implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
 
 	public double latitude;
 	public double longitude;
@@ -18,6 +18,8 @@ import java.util.*;
  * Created by Samodha Pallewatta on 5/27/2021.
  */
 public class ClusteredMicroservicePlacementLogic implements MicroservicePlacementLogic {
+    private static final long serialVersionUID = 1L;
+
     /**
      * Fog network related details
      */
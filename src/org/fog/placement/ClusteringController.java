@@ -19,6 +19,8 @@ import java.util.stream.Collectors;
 
 public class ClusteringController extends SimEntity {
 
+    private static final long serialVersionUID = 1L;
+
     public static boolean ONLY_CLOUD = false;
 
     private List<FogDevice> fogDevices;
@@ -110,7 +112,7 @@ public class ClusteringController extends SimEntity {
                 continue;
             double latency = fogDevice.getUplinkLatency();
             parent.getChildToLatencyMap().put(fogDevice.getId(), latency);
-            parent.getChildrenIds().add(fogDevice.getId());
+            parent.addChild(fogDevice.getId());
             System.out.println("Child " + fogDevice.getName() + "\t----->\tParent " + parent.getName());
         }
     }
@@ -318,6 +320,8 @@ public class ClusteringController extends SimEntity {
 
     private void printNetworkUsageDetails() {
         System.out.println("Total network usage = " + NetworkUsageMonitor.getNetworkUsage() / Config.MAX_SIMULATION_TIME);
+        NetworkUsageMonitor.printLinkUtilizations(getFogDevices());
+        MetricsSampler.getInstance().writeSamples(getFogDevices());
     }
 
     private FogDevice getCloud() {
@@ -379,6 +383,8 @@ public class ClusteringController extends SimEntity {
         }
 
         System.out.println("=========================================");
+        if (TimeKeeper.getInstance().getEvictedTupleTimeCount() > 0)
+            System.out.println("Tuple times evicted after Config.TUPLE_TIME_TO_LIVE : " + TimeKeeper.getInstance().getEvictedTupleTimeCount());
     }
 
     protected void manageResources() {
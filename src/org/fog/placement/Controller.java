@@ -18,10 +18,15 @@ import org.fog.entities.Sensor;
 import org.fog.utils.Config;
 import org.fog.utils.FogEvents;
 import org.fog.utils.FogUtils;
+import org.fog.utils.LatencyHistogram;
+import org.fog.utils.MetricsSampler;
 import org.fog.utils.NetworkUsageMonitor;
 import org.fog.utils.TimeKeeper;
 
 public class Controller extends SimEntity{
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	
 	public static boolean ONLY_CLOUD = false;
 		
@@ -63,7 +68,7 @@ public class Controller extends SimEntity{
 				continue;
 			double latency = fogDevice.getUplinkLatency();
 			parent.getChildToLatencyMap().put(fogDevice.getId(), latency);
-			parent.getChildrenIds().add(fogDevice.getId());
+			parent.addChild(fogDevice.getId());
 		}
 	}
 	
@@ -111,6 +116,8 @@ public class Controller extends SimEntity{
 	
 	private void printNetworkUsageDetails() {
 		System.out.println("Total network usage = "+NetworkUsageMonitor.getNetworkUsage()/Config.MAX_SIMULATION_TIME);		
+		NetworkUsageMonitor.printLinkUtilizations(getFogDevices());
+		MetricsSampler.getInstance().writeSamples(getFogDevices());
 	}
 
 	private FogDevice getCloud(){
@@ -148,7 +155,7 @@ public class Controller extends SimEntity{
 		System.out.println("=========================================");
 		System.out.println("APPLICATION LOOP DELAYS");
 		System.out.println("=========================================");
-		for(Integer loopId : TimeKeeper.getInstance().getLoopIdToTupleIds().keySet()){
+		for(Integer loopId : TimeKeeper.getInstance().getLoopIdToEmittedTupleCount().keySet()){
 			/*double average = 0, count = 0;
 			for(int tupleId : TimeKeeper.getInstance().getLoopIdToTupleIds().get(loopId)){
 				Double startTime = 	TimeKeeper.getInstance().getEmitTimes().get(tupleId);
@@ -170,6 +177,20 @@ public class Controller extends SimEntity{
 		}
 		
 		System.out.println("=========================================");
+		System.out.println("APPLICATION LOOP DELAY PERCENTILES");
+		System.out.println("=========================================");
+		for(Map.Entry<Integer, LatencyHistogram> loop : TimeKeeper.getInstance().getLoopIdToDelayHistogram().entrySet()){
+			System.out.println(getStringForLoopId(loop.getKey()) + " ---> "+loop.getValue().getSummary());
+		}
+		System.out.println("=========================================");
+		System.out.println("TUPLE CPU EXECUTION DELAY PERCENTILES");
+		System.out.println("=========================================");
+		for(Map.Entry<String, LatencyHistogram> tupleType : TimeKeeper.getInstance().getTupleTypeToCpuTimeHistogram().entrySet()){
+			System.out.println(tupleType.getKey() + " ---> "+tupleType.getValue().getSummary());
+		}
+		System.out.println("=========================================");
+		if(TimeKeeper.getInstance().getEvictedTupleTimeCount() > 0)
+			System.out.println("Tuple times evicted after Config.TUPLE_TIME_TO_LIVE : "+TimeKeeper.getInstance().getEvictedTupleTimeCount());
 	}
 
 	protected void manageResources(){
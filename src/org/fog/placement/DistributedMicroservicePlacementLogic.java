@@ -19,6 +19,8 @@ import java.util.*;
  * Per Placement Request Placement
  */
 public class DistributedMicroservicePlacementLogic implements MicroservicePlacementLogic {
+    private static final long serialVersionUID = 1L;
+
     /**
      * Fog network related details
      */
@@ -17,6 +17,8 @@ import java.util.*;
  */
 public class MicroservicesController extends SimEntity {
 
+    private static final long serialVersionUID = 1L;
+
     protected List<FogDevice> fogDevices;
     protected List<Sensor> sensors;
     protected Map<String, Application> applications = new HashMap<>();
@@ -261,6 +263,8 @@ public class MicroservicesController extends SimEntity {
 
     protected void printNetworkUsageDetails() {
         System.out.println("Total network usage = " + NetworkUsageMonitor.getNetworkUsage() / Config.MAX_SIMULATION_TIME);
+        NetworkUsageMonitor.printLinkUtilizations(fogDevices);
+        MetricsSampler.getInstance().writeSamples(fogDevices);
     }
 
     protected FogDevice getCloud() {
@@ -298,7 +302,7 @@ public class MicroservicesController extends SimEntity {
         System.out.println("=========================================");
         System.out.println("APPLICATION LOOP DELAYS");
         System.out.println("=========================================");
-        for (Integer loopId : TimeKeeper.getInstance().getLoopIdToTupleIds().keySet()) {
+        for (Integer loopId : TimeKeeper.getInstance().getLoopIdToEmittedTupleCount().keySet()) {
 			/*double average = 0, count = 0;
 			for(int tupleId : TimeKeeper.getInstance().getLoopIdToTupleIds().get(loopId)){
 				Double startTime = 	TimeKeeper.getInstance().getEmitTimes().get(tupleId);
@@ -320,6 +324,20 @@ public class MicroservicesController extends SimEntity {
         }
 
         System.out.println("=========================================");
+        System.out.println("APPLICATION LOOP DELAY PERCENTILES");
+        System.out.println("=========================================");
+        for (Map.Entry<Integer, LatencyHistogram> loop : TimeKeeper.getInstance().getLoopIdToDelayHistogram().entrySet()) {
+            System.out.println(getStringForLoopId(loop.getKey()) + " ---> " + loop.getValue().getSummary());
+        }
+        System.out.println("=========================================");
+        System.out.println("TUPLE CPU EXECUTION DELAY PERCENTILES");
+        System.out.println("=========================================");
+        for (Map.Entry<String, LatencyHistogram> tupleType : TimeKeeper.getInstance().getTupleTypeToCpuTimeHistogram().entrySet()) {
+            System.out.println(tupleType.getKey() + " ---> " + tupleType.getValue().getSummary());
+        }
+        System.out.println("=========================================");
+        if (TimeKeeper.getInstance().getEvictedTupleTimeCount() > 0)
+            System.out.println("Tuple times evicted after Config.TUPLE_TIME_TO_LIVE : " + TimeKeeper.getInstance().getEvictedTupleTimeCount());
     }
 
     protected Map<Integer, Map<String, Double>> getResourceInfo(List<FogDevice> fogDevices) {
@@ -349,7 +367,7 @@ public class MicroservicesController extends SimEntity {
                     continue;
                 double latency = fogDevice.getUplinkLatency();
                 parent.getChildToLatencyMap().put(fogDevice.getId(), latency);
-                parent.getChildrenIds().add(fogDevice.getId());
+                parent.addChild(fogDevice.getId());
             }
         }
     }
@@ -28,6 +28,8 @@ import java.util.stream.Collectors;
  */
 public class MicroservicesMobilityClusteringController extends MicroservicesController {
 
+    private static final long serialVersionUID = 1L;
+
     private LocationHandler locator;
     private Map<Integer, Integer> parentReference;
 
@@ -157,7 +159,7 @@ public class MicroservicesMobilityClusteringController extends MicroservicesCont
                 continue;
             double latency = fogDevice.getUplinkLatency();
             parent.getChildToLatencyMap().put(fogDevice.getId(), latency);
-            parent.getChildrenIds().add(fogDevice.getId());
+            parent.addChild(fogDevice.getId());
             System.out.println("Child " + fogDevice.getName() + "\t----->\tParent " + parent.getName());
         }
     }
@@ -20,6 +20,7 @@ import org.fog.mobilitydata.References;
 import org.fog.utils.Config;
 import org.fog.utils.FogEvents;
 import org.fog.utils.FogUtils;
+import org.fog.utils.MetricsSampler;
 import org.fog.utils.MigrationDelayMonitor;
 import org.fog.utils.NetworkUsageMonitor;
 import org.fog.utils.TimeKeeper;
@@ -27,6 +28,9 @@ import org.json.simple.JSONObject;
 
 
 public class MobilityController extends SimEntity{
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	
 	public static boolean ONLY_CLOUD = false;
 		
@@ -102,7 +106,7 @@ public class MobilityController extends SimEntity{
 				continue;
 			double latency = fogDevice.getUplinkLatency();
 			parent.getChildToLatencyMap().put(fogDevice.getId(), latency);
-			parent.getChildrenIds().add(fogDevice.getId());
+			parent.addChild(fogDevice.getId());
 			System.out.println("Child "+fogDevice.getName()+"\t----->\tParent "+parent.getName());
 		}
 	}
@@ -277,6 +281,8 @@ public class MobilityController extends SimEntity{
 
 	private void printNetworkUsageDetails() {
 		System.out.println("Total network usage = "+NetworkUsageMonitor.getNetworkUsage()/Config.MAX_SIMULATION_TIME);		
+		NetworkUsageMonitor.printLinkUtilizations(getFogDevices());
+		MetricsSampler.getInstance().writeSamples(getFogDevices());
 	}
 
 	private FogDevice getCloud(){
@@ -338,6 +344,8 @@ public class MobilityController extends SimEntity{
 		}
 		
 		System.out.println("=========================================");
+		if(TimeKeeper.getInstance().getEvictedTupleTimeCount() > 0)
+			System.out.println("Tuple times evicted after Config.TUPLE_TIME_TO_LIVE : "+TimeKeeper.getInstance().getEvictedTupleTimeCount());
 	}
 
 	protected void manageResources(){
@@ -1,11 +1,15 @@
 package org.fog.placement;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class ModuleMapping {
+public class ModuleMapping implements Serializable {
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * Mapping from node name to list of <moduleName, numInstances> of instances to be launched on node
 	 */
@@ -1,5 +1,6 @@
 package org.fog.placement;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -9,7 +10,10 @@ import org.fog.application.AppModule;
 import org.fog.application.Application;
 import org.fog.entities.FogDevice;
 
-public abstract class ModulePlacement {
+public abstract class ModulePlacement implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
 
 
 	public static int ONLY_CLOUD = 1;
@@ -18,6 +18,9 @@ import org.fog.entities.Tuple;
 import org.fog.utils.Logger;
 
 public class ModulePlacementEdgewards extends ModulePlacement{
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	
 	protected ModuleMapping moduleMapping;
 	protected List<Sensor> sensors;
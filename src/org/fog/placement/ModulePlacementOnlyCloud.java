@@ -14,6 +14,9 @@ import org.fog.entities.Sensor;
 import org.fog.entities.Tuple;
 
 public class ModulePlacementOnlyCloud extends ModulePlacement{
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	
 	private List<Sensor> sensors;
 	private List<Actuator> actuators;
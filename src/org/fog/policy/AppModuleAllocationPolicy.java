@@ -11,6 +11,9 @@ import org.fog.application.AppModule;
 
 public class AppModuleAllocationPolicy extends VmAllocationPolicy{
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	private Host fogHost;
 	
 	private List<Integer> appModuleIds;
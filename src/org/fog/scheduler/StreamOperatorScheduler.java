@@ -10,6 +10,9 @@ import org.cloudbus.cloudsim.sdn.overbooking.VmSchedulerTimeSharedOverbookingEne
 
 public class StreamOperatorScheduler extends VmSchedulerTimeSharedOverbookingEnergy{
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	public StreamOperatorScheduler(List<? extends Pe> pelist) {
 		super(pelist);
 	}
@@ -0,0 +1,68 @@
+package org.fog.scheduler;
+
+import java.io.Serializable;
+import java.util.Set;
+
+import org.cloudbus.cloudsim.Vm;
+import org.cloudbus.cloudsim.core.SimulationContext;
+
+/**
+ * Tells the fog devices which of their VMs have finished tuples. A device collects the VMs whose
+ * {@link TupleScheduler} finishes tuples while the device updates the processing of its host; the
+ * VM objects alone cannot tell the device, since the same module may be placed on several devices.
+ * Tuples finishing outside of such an update are counted, so that the devices check all their VMs
+ * when the count changes.
+ */
+public class TupleCompletions implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The VMs of the device being updated, or null outside of an update. */
+	private Set<Vm> collectedVms;
+
+	/** The number of times tuples finished outside of the update of a device. */
+	private int unattributedCount = 0;
+
+	public static TupleCompletions getInstance(){
+		SimulationContext context = SimulationContext.current();
+		TupleCompletions instance = context.getComponent(TupleCompletions.class);
+		if(instance == null){
+			instance = new TupleCompletions();
+			context.setComponent(TupleCompletions.class, instance);
+		}
+		return instance;
+	}
+
+	private TupleCompletions(){
+	}
+
+	/**
+	 * Starts collecting the VMs with finished tuples, for the update of a device.
+	 *
+	 * @param vms the set the VMs are added to
+	 */
+	public void startCollecting(Set<Vm> vms){
+		collectedVms = vms;
+	}
+
+	public void stopCollecting(){
+		collectedVms = null;
+	}
+
+	/**
+	 * Called by a scheduler when some of its tuples finish.
+	 *
+	 * @param vm the VM of the scheduler, or null if unknown
+	 */
+	public void tuplesFinished(Vm vm){
+		if(collectedVms != null && vm != null)
+			collectedVms.add(vm);
+		else
+			unattributedCount++;
+	}
+
+	public int getUnattributedCount() {
+		return unattributedCount;
+	}
+}
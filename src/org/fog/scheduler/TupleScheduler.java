@@ -1,15 +1,133 @@
 package org.fog.scheduler;
 
+import java.util.List;
+
+import org.cloudbus.cloudsim.Cloudlet;
 import org.cloudbus.cloudsim.CloudletSchedulerTimeShared;
+import org.cloudbus.cloudsim.Consts;
 import org.cloudbus.cloudsim.ResCloudlet;
+import org.cloudbus.cloudsim.Vm;
+import org.cloudbus.cloudsim.core.CloudSim;
 
 public class TupleScheduler extends CloudletSchedulerTimeShared{
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The VM executing the tuples, told to {@link TupleCompletions} when tuples finish. */
+	private Vm vm;
+
 	public TupleScheduler(double mips, int numberOfPes) {
 		//super(mips, numberOfPes);
 		super();
 	}
 
+	/**
+	 * Updates the processing of the tuples in execution in linear time. The capacity given to each
+	 * tuple is computed once for the update, and once more for the estimation of the next completion
+	 * after the finished tuples have left, whereas the superclass computes it, with a pass over the
+	 * tuples, for every tuple. Finished tuples are removed by compacting the list in place. The
+	 * results, including the order in which tuples finish, are those of the superclass.
+	 */
+	@Override
+	public double updateVmProcessing(double currentTime, List<Double> mipsShare) {
+		setCurrentMipsShare(mipsShare);
+		double timeSpam = currentTime - getPreviousTime();
+		List<ResCloudlet> execList = getCloudletExecList();
+
+		double totalMips = 0.0;
+		int cpus = 0;
+		for (Double mips : mipsShare) {
+			totalMips += mips;
+			if (mips > 0.0) {
+				cpus++;
+			}
+		}
+		currentCPUs = cpus;
+
+		int pesInUse = 0;
+		for (ResCloudlet rcl : execList) {
+			pesInUse += rcl.getNumberOfPes();
+		}
+		double capacity = totalMips / Math.max(pesInUse, cpus);
+
+		int remainingPesInUse = 0;
+		for (ResCloudlet rcl : execList) {
+			rcl.updateCloudletFinishedSoFar((long) (capacity * timeSpam * rcl.getNumberOfPes() * Consts.MILLION));
+			if (rcl.getRemainingCloudletLength() != 0) {
+				remainingPesInUse += rcl.getNumberOfPes();
+			}
+		}
+
+		if (execList.size() == 0) {
+			setPreviousTime(currentTime);
+			return 0.0;
+		}
+
+		// the capacity once the finished tuples are removed
+		capacity = totalMips / Math.max(remainingPesInUse, cpus);
+
+		double nextEvent = Double.MAX_VALUE;
+		int kept = 0;
+		for (int i = 0; i < execList.size(); i++) {
+			ResCloudlet rcl = execList.get(i);
+			long remainingLength = rcl.getRemainingCloudletLength();
+			if (remainingLength == 0) {
+				cloudletFinish(rcl);
+				continue;
+			}
+			execList.set(kept++, rcl);
+
+			double estimatedFinishTime = currentTime + (remainingLength / (capacity * rcl.getNumberOfPes()));
+			if (estimatedFinishTime - currentTime < CloudSim.getMinTimeBetweenEvents()) {
+				estimatedFinishTime = currentTime + CloudSim.getMinTimeBetweenEvents();
+			}
+			if (estimatedFinishTime < nextEvent) {
+				nextEvent = estimatedFinishTime;
+			}
+		}
+		execList.subList(kept, execList.size()).clear();
+
+		setPreviousTime(currentTime);
+		return nextEvent;
+	}
+
+	/**
+	 * Finishes a tuple and tells {@link TupleCompletions}, so that the fog device only collects the
+	 * finished tuples of the VMs that have some.
+	 */
+	@Override
+	public void cloudletFinish(ResCloudlet rcl) {
+		super.cloudletFinish(rcl);
+		TupleCompletions.getInstance().tuplesFinished(vm);
+	}
+
+	public Vm getVm() {
+		return vm;
+	}
+
+	public void setVm(Vm vm) {
+		this.vm = vm;
+	}
+
+	@Override
+	public double cloudletSubmit(Cloudlet cloudlet, double fileTransferTime) {
+		ResCloudlet rcl = new ResCloudlet(cloudlet);
+		rcl.setCloudletStatus(Cloudlet.INEXEC);
+		for (int i = 0; i < cloudlet.getNumberOfPes(); i++) {
+			rcl.setMachineAndPeId(0, i);
+		}
+
+		getCloudletExecList().add(rcl);
+
+		// the capacity is the same for the extra length and for the estimation
+		double capacity = getCapacity(getCurrentMipsShare());
+		double extraSize = capacity * fileTransferTime;
+		long length = (long) (cloudlet.getCloudletLength() + extraSize);
+		cloudlet.setCloudletLength(length);
+		return cloudlet.getCloudletLength() / capacity;
+	}
+
 	/**
 	 * Get estimated cloudlet completion time.
 	 * 
@@ -67,6 +67,7 @@ public class CardiovascularHealthMonitoringApplication {
 
     //cluster link latency 2ms
     static Double clusterLatency = 2.0;
+    static int placementAlgo = PlacementLogicFactory.CLUSTERED_MICROSERVICES_PLACEMENT;
 
     // TODO: 8/8/2021  not required for this scenario
     // if random mobility generator for users is True, new random dataset will be created for each user
@@ -118,7 +119,6 @@ public class CardiovascularHealthMonitoringApplication {
             appList.add(application);
 
 
-            int placementAlgo = PlacementLogicFactory.CLUSTERED_MICROSERVICES_PLACEMENT;
             MicroservicesMobilityClusteringController microservicesController = new MicroservicesMobilityClusteringController("controller", fogDevices, sensors, appList, clusterLevelIdentifier, clusterLatency, placementAlgo,locator);
 
             // generate placement requests
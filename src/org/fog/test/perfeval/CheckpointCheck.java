@@ -0,0 +1,128 @@
+package org.fog.test.perfeval;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.FutureQueueCalendar;
+import org.cloudbus.cloudsim.core.FutureQueueTreeSet;
+
+/**
+ * Checks that a simulation restored from a checkpoint runs on exactly as the uninterrupted simulation,
+ * and exits with status 1 at the first difference. The surveillance scenario of
+ * {@link FutureQueueDeterminismCheck}, whose selectivities are deterministic, is run in its own JVM,
+ * since the controller ends the JVM:
+ * <ul>
+ * <li>once without a checkpoint, which gives the reference output;</li>
+ * <li>once writing a checkpoint in the middle of the run with {@link CloudSim#checkpointAt}, whose
+ * output must be the reference output, since writing a checkpoint must not change the run;</li>
+ * <li>once restoring that checkpoint with {@link CloudSim#restore} and running it to the end, whose
+ * output must be the part of the reference output printed after the checkpoint.</li>
+ * </ul>
+ * The last two runs are made with {@link FutureQueueTreeSet} and with {@link FutureQueueCalendar},
+ * which write their events differently. The outputs are compared line by line, except for the
+ * execution time.
+ * <p>
+ * Usage: <tt>CheckpointCheck [time]</tt>, the simulation time of the checkpoint.
+ */
+public class CheckpointCheck {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 4 && args[0].equals("save")) {
+			FutureQueueDeterminismCheck.createScenario(Boolean.parseBoolean(args[2]));
+			CloudSim.checkpointAt(Double.parseDouble(args[3]), new File(args[1]));
+			CloudSim.startSimulation();
+			return;
+		}
+		if (args.length == 2 && args[0].equals("restore")) {
+			Log.disable();
+			CloudSim.restore(new File(args[1]));
+			CloudSim.startSimulation();
+			return;
+		}
+		if (args.length == 1 && args[0].equals("reference")) {
+			FutureQueueDeterminismCheck.createScenario(false);
+			CloudSim.startSimulation();
+			return;
+		}
+		double time = args.length > 0 ? Double.parseDouble(args[0]) : 1000;
+
+		List<String> reference = runJvm("reference");
+		System.out.println("Reference: " + reference.size() + " output lines");
+		File checkpoint = File.createTempFile("checkpoint", ".bin");
+		try {
+			for (boolean calendar : new boolean[] {false, true}) {
+				String queue = calendar ? "FutureQueueCalendar" : "FutureQueueTreeSet";
+				checkpoint.delete();
+				List<String> saved = runJvm("save", checkpoint.getPath(), String.valueOf(calendar), String.valueOf(time));
+				compare(queue + " with a checkpoint at " + time, reference, 0, saved);
+				if (!checkpoint.exists()) {
+					fail(queue + ": no checkpoint was written");
+				}
+
+				List<String> restored = runJvm("restore", checkpoint.getPath());
+				if (restored.isEmpty() || restored.size() >= reference.size()) {
+					fail(queue + ": the restored run printed " + restored.size() + " lines");
+				}
+				compare(queue + " restored at " + time, reference, reference.size() - restored.size(), restored);
+				System.out.println(queue + ": identical output with a checkpoint of " + checkpoint.length()
+						+ " bytes, restored run identical to the last " + restored.size() + " lines");
+			}
+		} finally {
+			checkpoint.delete();
+		}
+	}
+
+	/**
+	 * Compares an output with the reference output from a given line on.
+	 */
+	private static void compare(String name, List<String> reference, int from, List<String> output) {
+		for (int i = 0; i < Math.max(reference.size() - from, output.size()); i++) {
+			String expected = from + i < reference.size() ? reference.get(from + i) : "<end of output>";
+			String actual = i < output.size() ? output.get(i) : "<end of output>";
+			if (!expected.equals(actual)) {
+				fail(name + ", output line " + (i + 1) + ": expected \"" + expected + "\" but was \"" + actual + "\"");
+			}
+		}
+	}
+
+	private static void fail(String message) {
+		System.out.println("MISMATCH: " + message);
+		System.exit(1);
+	}
+
+	private static List<String> runJvm(String... args) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<String>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(CheckpointCheck.class.getName());
+		command.addAll(Arrays.asList(args));
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		List<String> lines = new ArrayList<String>();
+		BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = output.readLine()) != null) {
+				// the wall-clock time of the run
+				if (!line.startsWith("EXECUTION TIME")) {
+					lines.add(line);
+				}
+			}
+		} finally {
+			output.close();
+		}
+		int exitValue = process.waitFor();
+		if (exitValue != 0) {
+			fail(Arrays.toString(args) + " exited with status " + exitValue + ": " + lines);
+		}
+		return lines;
+	}
+}
@@ -67,6 +67,7 @@ public class CrowdSensing_Microservices_RandomMobility_Clustering {
 
     //application
     static List<Application> applications = new ArrayList<>();
+    static int placementAlgo = PlacementLogicFactory.CLUSTERED_MICROSERVICES_PLACEMENT;
     static List<Pair<Double, Double>> qosValues = new ArrayList<>();
 
     public static void main(String[] args) {
@@ -116,7 +117,6 @@ public class CrowdSensing_Microservices_RandomMobility_Clustering {
             List<Integer> clusterLevelIdentifier = new ArrayList<>();
             clusterLevelIdentifier.add(2);
 
-            int placementAlgo = PlacementLogicFactory.CLUSTERED_MICROSERVICES_PLACEMENT;
             MicroservicesMobilityClusteringController microservicesController = new MicroservicesMobilityClusteringController("controller", fogDevices, sensors, appList, clusterLevelIdentifier, 2.0, placementAlgo, locator);
 
 
@@ -0,0 +1,100 @@
+package org.fog.test.perfeval;
+
+import java.util.Calendar;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.FutureQueue;
+import org.cloudbus.cloudsim.core.FutureQueueCalendar;
+import org.cloudbus.cloudsim.core.FutureQueueTreeSet;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.cloudbus.cloudsim.core.SimEvent;
+
+/**
+ * Measures how many events per second the simulation kernel processes when many events share a
+ * timestamp, which is the case {@link FutureQueue#pollAllAt(double)} drains in one pass. Every entity
+ * sends itself an event each unit of time, so each clock tick processes a batch of one event per
+ * entity. The measure is taken with {@link FutureQueueTreeSet} and with {@link FutureQueueCalendar},
+ * keeping the fastest of {@link #RUNS} runs.
+ * <p>
+ * Usage: <tt>EventBatchBenchmark [entities] [ticks]</tt>
+ */
+public class EventBatchBenchmark {
+
+	private static final int TICK = 1;
+
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) {
+		int entities = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		Log.disable();
+		// warm up before measuring
+		run(false, entities, ticks / 10);
+		run(true, entities, ticks / 10);
+
+		report(false, entities, ticks);
+		report(true, entities, ticks);
+	}
+
+	private static void report(boolean calendar, int entities, int ticks) {
+		long events = 0;
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < RUNS; i++) {
+			long start = System.nanoTime();
+			events = run(calendar, entities, ticks);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		double seconds = best / 1e9;
+		System.out.println((calendar ? "FutureQueueCalendar" : "FutureQueueTreeSet") + ": " + entities + " events per tick, " + events + " events in "
+				+ String.format("%.3f", seconds) + " s, " + String.format("%.0f", events / seconds) + " events/s");
+	}
+
+	private static long run(boolean calendar, int entities, int ticks) {
+		FutureQueue queue = calendar ? new FutureQueueCalendar() : new FutureQueueTreeSet();
+		CloudSim.init(0, Calendar.getInstance(), false, queue);
+		Ticker[] tickers = new Ticker[entities];
+		for (int i = 0; i < entities; i++) {
+			tickers[i] = new Ticker("ticker-" + i, ticks);
+		}
+		CloudSim.startSimulation();
+		long events = 0;
+		for (Ticker ticker : tickers) {
+			events += ticker.events;
+		}
+		return events;
+	}
+
+	private static class Ticker extends SimEntity {
+
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		private final int ticks;
+
+		long events = 0;
+
+		Ticker(String name, int ticks) {
+			super(name);
+			this.ticks = ticks;
+		}
+
+		@Override
+		public void startEntity() {
+			schedule(getId(), 1, TICK);
+		}
+
+		@Override
+		public void processEvent(SimEvent ev) {
+			events++;
+			if (CloudSim.clock() < ticks) {
+				schedule(getId(), 1, TICK);
+			}
+		}
+
+		@Override
+		public void shutdownEntity() {
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package org.fog.test.perfeval;
+
+import java.util.Calendar;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.DeferredQueue;
+import org.cloudbus.cloudsim.core.FutureQueue;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.cloudbus.cloudsim.core.SimEvent;
+import org.cloudbus.cloudsim.core.predicates.PredicateType;
+
+/**
+ * Measures how the event lookups of the simulation kernel depend on the events of other entities,
+ * which the queues avoid by indexing their events:
+ * <ul>
+ * <li>the delivery of events through the {@link DeferredQueue}, indexed by destination and tag,
+ * while one entity waiting for an event that never comes holds a backlog of deferred events;</li>
+ * <li>the cancellation of timeouts through {@link FutureQueue#cancelAll}, indexed by source and tag,
+ * while one entity has many events pending far in the future.</li>
+ * </ul>
+ * Each measure is taken without a backlog and with one, keeping the fastest of {@link #RUNS} runs.
+ * <p>
+ * Usage: <tt>EventIndexBenchmark [backlog] [entities] [ticks]</tt>
+ */
+public class EventIndexBenchmark {
+
+	private static final int TICK = 1;
+	private static final int TIMEOUT = 2;
+	private static final int NEVER = 3;
+
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) {
+		int backlog = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int entities = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+		Log.disable();
+		// warm up before measuring
+		run(false, backlog, entities, ticks / 10);
+		run(true, backlog, entities, ticks / 10);
+
+		for (boolean cancel : new boolean[] {false, true}) {
+			for (int events : new int[] {0, backlog}) {
+				long best = Long.MAX_VALUE;
+				long operations = 0;
+				for (int i = 0; i < RUNS; i++) {
+					long start = System.nanoTime();
+					operations = run(cancel, events, entities, ticks);
+					best = Math.min(best, System.nanoTime() - start);
+				}
+				double seconds = best / 1e9;
+				System.out.println((cancel ? "Timeout cancellation, " + events + " pending events: "
+						: "Event delivery, " + events + " deferred events: ") + operations
+						+ (cancel ? " cancellations in " : " events in ") + String.format("%.3f", seconds) + " s, "
+						+ String.format("%.0f", operations / seconds) + (cancel ? " cancellations/s" : " events/s"));
+			}
+		}
+	}
+
+	/**
+	 * Runs the tickers next to an entity holding a backlog of events.
+	 *
+	 * @param cancel whether the tickers cancel and reschedule a timeout on every tick, and the backlog
+	 *            is of pending rather than deferred events
+	 * @return the number of events processed, or of cancellations made, by the tickers
+	 */
+	private static long run(boolean cancel, int backlog, int entities, int ticks) {
+		CloudSim.init(0, Calendar.getInstance(), false);
+		new Backlog("backlog", cancel, backlog, ticks);
+		Ticker[] tickers = new Ticker[entities];
+		for (int i = 0; i < entities; i++) {
+			tickers[i] = new Ticker("ticker-" + i, cancel, ticks);
+		}
+		CloudSim.startSimulation();
+		long operations = 0;
+		for (Ticker ticker : tickers) {
+			operations += cancel ? ticker.cancellations : ticker.events;
+		}
+		return operations;
+	}
+
+	/**
+	 * An entity sending itself events it does not wait for, which stay in the deferred queue, or
+	 * events due after the end of the run, which stay in the future queue. It ends the run once the
+	 * tickers are done.
+	 */
+	private static class Backlog extends SimEntity {
+
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		private final boolean pending;
+
+		private final int events;
+
+		private final int ticks;
+
+		Backlog(String name, boolean pending, int events, int ticks) {
+			super(name);
+			this.pending = pending;
+			this.events = events;
+			this.ticks = ticks;
+		}
+
+		@Override
+		public void startEntity() {
+			for (int i = 0; i < events; i++) {
+				schedule(getId(), pending ? ticks + 1 : 0, TICK);
+			}
+			if (!pending) {
+				waitForEvent(new PredicateType(NEVER));
+			}
+			schedule(getId(), ticks + 0.5, NEVER);
+		}
+
+		@Override
+		public void processEvent(SimEvent ev) {
+			// ends the run, leaving the backlog where it is
+			CloudSim.abruptallyTerminate();
+			if (!pending) {
+				waitForEvent(new PredicateType(NEVER));
+			}
+		}
+
+		@Override
+		public void shutdownEntity() {
+		}
+	}
+
+	private static class Ticker extends SimEntity {
+
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		private final boolean cancel;
+
+		private final int ticks;
+
+		long events = 0;
+
+		long cancellations = 0;
+
+		Ticker(String name, boolean cancel, int ticks) {
+			super(name);
+			this.cancel = cancel;
+			this.ticks = ticks;
+		}
+
+		@Override
+		public void startEntity() {
+			schedule(getId(), 1, TICK);
+		}
+
+		@Override
+		public void processEvent(SimEvent ev) {
+			events++;
+			if (CloudSim.clock() >= ticks) {
+				return;
+			}
+			if (cancel) {
+				CloudSim.cancelAll(getId(), new PredicateType(TIMEOUT));
+				cancellations++;
+				schedule(getId(), 10, TIMEOUT);
+			}
+			schedule(getId(), 1, TICK);
+		}
+
+		@Override
+		public void shutdownEntity() {
+		}
+	}
+}
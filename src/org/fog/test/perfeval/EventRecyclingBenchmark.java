@@ -0,0 +1,124 @@
+package org.fog.test.perfeval;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Calendar;
+import java.util.List;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.FutureQueueCalendar;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.cloudbus.cloudsim.core.SimEvent;
+
+/**
+ * Measures what {@link CloudSim#setEventRecycling(boolean)} saves: every entity sends itself an event
+ * each unit of time, with event recycling off and then on, and the benchmark reports the events per
+ * second, the bytes allocated per event by the simulation thread and the collections of each garbage
+ * collector. The {@link FutureQueueCalendar} is used, since it does not allocate on its own, so that
+ * the allocations left are those of the events and of the entities.
+ * <p>
+ * Usage: <tt>EventRecyclingBenchmark [entities] [ticks]</tt>. The heap should be small enough for the
+ * young collections to show, e.g. <tt>-Xmx256m</tt>.
+ */
+public class EventRecyclingBenchmark {
+
+	private static final int TICK = 1;
+
+	public static void main(String[] args) {
+		int entities = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		Log.disable();
+		// warm up before measuring
+		run(false, entities, ticks / 10);
+		run(true, entities, ticks / 10);
+
+		report(false, entities, ticks);
+		report(true, entities, ticks);
+	}
+
+	private static void report(boolean recycling, int entities, int ticks) {
+		List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+		long[] collections = new long[collectors.size()];
+		for (int i = 0; i < collections.length; i++) {
+			collections[i] = collectors.get(i).getCollectionCount();
+		}
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+
+		long events = run(recycling, entities, ticks);
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		allocated = allocatedBytes() - allocated;
+		StringBuilder line = new StringBuilder("Event recycling " + (recycling ? "on" : "off") + ": ");
+		line.append(events).append(" events in ").append(String.format("%.3f", seconds)).append(" s, ")
+				.append(String.format("%.0f", events / seconds)).append(" events/s, ");
+		line.append(allocated < 0 ? "allocations not measured" : String.format("%.1f bytes/event", (double) allocated / events));
+		for (int i = 0; i < collections.length; i++) {
+			line.append(", ").append(collectors.get(i).getName()).append(": ")
+					.append(collectors.get(i).getCollectionCount() - collections[i]);
+		}
+		System.out.println(line);
+	}
+
+	/**
+	 * Gets the bytes allocated so far by the current thread.
+	 *
+	 * @return the bytes, or -1 if the JVM does not measure them
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static long run(boolean recycling, int entities, int ticks) {
+		CloudSim.init(0, Calendar.getInstance(), false, new FutureQueueCalendar());
+		CloudSim.setEventRecycling(recycling);
+		Ticker[] tickers = new Ticker[entities];
+		for (int i = 0; i < entities; i++) {
+			tickers[i] = new Ticker("ticker-" + i, ticks);
+		}
+		CloudSim.startSimulation();
+		long events = 0;
+		for (Ticker ticker : tickers) {
+			events += ticker.events;
+		}
+		return events;
+	}
+
+	private static class Ticker extends SimEntity {
+
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		private final int ticks;
+
+		long events = 0;
+
+		Ticker(String name, int ticks) {
+			super(name);
+			this.ticks = ticks;
+		}
+
+		@Override
+		public void startEntity() {
+			schedule(getId(), 1, TICK);
+		}
+
+		@Override
+		public void processEvent(SimEvent ev) {
+			events++;
+			if (CloudSim.clock() < ticks) {
+				schedule(getId(), 1, TICK);
+			}
+		}
+
+		@Override
+		public void shutdownEntity() {
+		}
+	}
+}
@@ -0,0 +1,481 @@
+package org.fog.test.perfeval;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import org.cloudbus.cloudsim.Host;
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.Pe;
+import org.cloudbus.cloudsim.Storage;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.FutureQueue;
+import org.cloudbus.cloudsim.core.FutureQueueCalendar;
+import org.cloudbus.cloudsim.core.FutureQueueTreeSet;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.cloudbus.cloudsim.core.SimEvent;
+import org.cloudbus.cloudsim.core.SimulationContext;
+import org.cloudbus.cloudsim.core.predicates.PredicateType;
+import org.cloudbus.cloudsim.power.PowerHost;
+import org.cloudbus.cloudsim.provisioners.RamProvisionerSimple;
+import org.cloudbus.cloudsim.sdn.overbooking.BwProvisionerOverbooking;
+import org.cloudbus.cloudsim.sdn.overbooking.PeProvisionerOverbooking;
+import org.fog.application.AppEdge;
+import org.fog.application.AppLoop;
+import org.fog.application.Application;
+import org.fog.application.selectivity.BurstySelectivity;
+import org.fog.application.selectivity.FractionalSelectivity;
+import org.fog.entities.Actuator;
+import org.fog.entities.FogBroker;
+import org.fog.entities.FogDevice;
+import org.fog.entities.FogDeviceCharacteristics;
+import org.fog.entities.Sensor;
+import org.fog.entities.Tuple;
+import org.fog.placement.Controller;
+import org.fog.placement.ModuleMapping;
+import org.fog.placement.ModulePlacementEdgewards;
+import org.fog.policy.AppModuleAllocationPolicy;
+import org.fog.scheduler.StreamOperatorScheduler;
+import org.fog.utils.FogLinearPowerModel;
+import org.fog.utils.FogUtils;
+import org.fog.utils.TimeKeeper;
+import org.fog.utils.distribution.DeterministicDistribution;
+
+/**
+ * Checks that {@link FutureQueueCalendar} delivers the events in exactly the same order as
+ * {@link FutureQueueTreeSet}, the reference queue, and exits with status 1 at the first difference.
+ * Two workloads are run with each queue:
+ * <ul>
+ * <li>entities sending events to each other at random with {@link CloudSim#send} and
+ * {@link CloudSim#sendFirst}, and cancelling their own events with {@link CloudSim#cancel} and
+ * {@link CloudSim#cancelAll}. The delays go through phases of many equal times, of sparse times and
+ * of far future times, and bursts of events make the queue grow and shrink, so that the calendar is
+ * resized and its bucket width estimated again many times. The calendar is also started with bucket
+ * widths far too small and far too large. The delivered and cancelled events are compared by time,
+ * serial, tag, source and destination, the serial being the sequence number every event carries as
+ * its data;</li>
+ * <li>a surveillance scenario like {@link DCNSFog} with deterministic selectivities, run in its own
+ * JVM with each queue since the controller ends the JVM. The outputs are compared line by line,
+ * except for the execution time.</li>
+ * </ul>
+ * Usage: <tt>FutureQueueDeterminismCheck [events] [seed]</tt>
+ */
+public class FutureQueueDeterminismCheck {
+
+	/** The number of entities of the random workload. */
+	private static final int ENTITIES = 16;
+
+	/** The number of events each entity sends when it starts. */
+	private static final int INITIAL_EVENTS = 64;
+
+	/** The tags used by the entities, from 1 to this number. */
+	private static final int TAGS = 6;
+
+	/** The number of events sent between two phases of delays. */
+	private static final int PHASE_LENGTH = 20000;
+
+	/** The number of events sent in a burst, and the mean number of events processed between bursts. */
+	private static final int BURST_SIZE = 3000;
+	private static final int BURST_PERIOD = 10000;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 2 && args[0].equals("scenario")) {
+			runScenario(Boolean.parseBoolean(args[1]));
+			return;
+		}
+		int events = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+
+		Log.disable();
+		Trace reference = runWorkload(new FutureQueueTreeSet(), events, seed);
+		System.out.println("FutureQueueTreeSet: " + reference.count + " events, " + reference.cancelled
+				+ " cancelled, " + reference.sameTime + " at the time of the previous event");
+		compare("FutureQueueCalendar", reference, runWorkload(new FutureQueueCalendar(), events, seed));
+		compare("FutureQueueCalendar(1e-6)", reference, runWorkload(new FutureQueueCalendar(1e-6), events, seed));
+		compare("FutureQueueCalendar(1e6)", reference, runWorkload(new FutureQueueCalendar(1e6), events, seed));
+
+		List<String> treeSetOutput = runScenarioJvm(false);
+		List<String> calendarOutput = runScenarioJvm(true);
+		for (int i = 0; i < Math.max(treeSetOutput.size(), calendarOutput.size()); i++) {
+			String expected = i < treeSetOutput.size() ? treeSetOutput.get(i) : "<end of output>";
+			String actual = i < calendarOutput.size() ? calendarOutput.get(i) : "<end of output>";
+			if (!expected.equals(actual)) {
+				fail("scenario output line " + (i + 1) + ": expected \"" + expected + "\" but was \"" + actual + "\"");
+			}
+		}
+		System.out.println("Scenario: " + treeSetOutput.size() + " identical output lines");
+	}
+
+	private static void compare(String name, Trace expected, Trace actual) {
+		for (int i = 0; i < Math.min(expected.count, actual.count); i++) {
+			if (expected.times[i] != actual.times[i] || expected.serials[i] != actual.serials[i]
+					|| expected.tags[i] != actual.tags[i] || expected.sources[i] != actual.sources[i]
+					|| expected.destinations[i] != actual.destinations[i]) {
+				fail(name + ": event " + i + " is " + actual.describe(i) + " instead of " + expected.describe(i));
+			}
+		}
+		if (expected.count != actual.count) {
+			fail(name + ": " + actual.count + " events instead of " + expected.count);
+		}
+		System.out.println(name + ": identical");
+	}
+
+	private static void fail(String message) {
+		System.out.println("MISMATCH " + message);
+		System.exit(1);
+	}
+
+	private static Trace runWorkload(FutureQueue queue, int events, long seed) {
+		CloudSim.init(0, Calendar.getInstance(), false, queue);
+		Workload workload = new Workload(events, seed);
+		for (int i = 0; i < ENTITIES; i++) {
+			workload.add(new WorkloadEntity("entity-" + i, workload));
+		}
+		CloudSim.startSimulation();
+		return workload.trace;
+	}
+
+	/**
+	 * The events delivered or cancelled during a run, in order. Cancelled events are recorded with
+	 * their serial as <tt>-1 - serial</tt>.
+	 */
+	private static class Trace {
+
+		double[] times = new double[1024];
+		long[] serials = new long[1024];
+		int[] tags = new int[1024];
+		int[] sources = new int[1024];
+		int[] destinations = new int[1024];
+		int count = 0;
+
+		int cancelled = 0;
+		int sameTime = 0;
+
+		void add(SimEvent event, boolean cancel) {
+			if (count == times.length) {
+				times = Arrays.copyOf(times, 2 * count);
+				serials = Arrays.copyOf(serials, 2 * count);
+				tags = Arrays.copyOf(tags, 2 * count);
+				sources = Arrays.copyOf(sources, 2 * count);
+				destinations = Arrays.copyOf(destinations, 2 * count);
+			}
+			long serial = (Long) event.getData();
+			if (count > 0 && times[count - 1] == event.eventTime()) {
+				sameTime++;
+			}
+			times[count] = event.eventTime();
+			serials[count] = cancel ? -1 - serial : serial;
+			tags[count] = event.getTag();
+			sources[count] = event.getSource();
+			destinations[count] = event.getDestination();
+			count++;
+			if (cancel) {
+				cancelled++;
+			}
+		}
+
+		String describe(int i) {
+			return "(time " + times[i] + ", serial " + serials[i] + ", tag " + tags[i] + ", source "
+					+ sources[i] + ", destination " + destinations[i] + ")";
+		}
+	}
+
+	/**
+	 * The random decisions of the entities, drawn in the order the events are processed so that any
+	 * difference in the order of the events changes the rest of the run.
+	 */
+	private static class Workload {
+
+		final Random random;
+		final int maxEvents;
+		final Trace trace = new Trace();
+		final List<Integer> entityIds = new ArrayList<Integer>();
+		long sent = 0;
+
+		Workload(int maxEvents, long seed) {
+			this.maxEvents = maxEvents;
+			random = new Random(seed);
+		}
+
+		void add(SimEntity entity) {
+			entityIds.add(entity.getId());
+		}
+
+		void start(SimEntity entity) {
+			for (int i = 0; i < INITIAL_EVENTS; i++) {
+				send(entity.getId(), false);
+			}
+		}
+
+		void process(SimEntity entity, SimEvent event) {
+			trace.add(event, false);
+			if (sent >= maxEvents) {
+				return;
+			}
+			int source = entity.getId();
+			send(source, false);
+			int actions = random.nextInt(3);
+			for (int i = 0; i < actions; i++) {
+				int action = random.nextInt(10);
+				if (action < 4) {
+					send(source, false);
+				} else if (action < 6) {
+					send(source, true);
+				} else if (action < 8) {
+					SimEvent cancelled = CloudSim.cancel(source, new PredicateType(1 + random.nextInt(TAGS)));
+					if (cancelled != null) {
+						trace.add(cancelled, true);
+					}
+				} else if (action < 9) {
+					CloudSim.cancelAll(source, new PredicateType(1 + random.nextInt(TAGS)));
+				} else {
+					SimEvent cancelled = CloudSim.cancel(source, CloudSim.SIM_ANY);
+					if (cancelled != null) {
+						trace.add(cancelled, true);
+					}
+				}
+			}
+			if (random.nextInt(BURST_PERIOD) == 0) {
+				for (int i = 0; i < BURST_SIZE; i++) {
+					send(source, false);
+				}
+			}
+		}
+
+		private void send(int source, boolean first) {
+			int destination = entityIds.get(random.nextInt(entityIds.size()));
+			int tag = 1 + random.nextInt(TAGS);
+			double delay = delay();
+			if (first) {
+				CloudSim.sendFirst(source, destination, delay, tag, Long.valueOf(sent++));
+			} else {
+				CloudSim.send(source, destination, delay, tag, Long.valueOf(sent++));
+			}
+		}
+
+		private double delay() {
+			switch ((int) (sent / PHASE_LENGTH % 4)) {
+			case 0:
+				// few distinct times, many events at each
+				return random.nextInt(8);
+			case 1:
+				// sparse times
+				return 100 * random.nextDouble();
+			case 2:
+				// very close times
+				return random.nextInt(4) * 1e-3;
+			default:
+				// mostly far in the future, which stretches the separation between events
+				return random.nextInt(4) == 0 ? 0 : 1000 + 5000 * random.nextDouble();
+			}
+		}
+	}
+
+	private static class WorkloadEntity extends SimEntity {
+
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		private final Workload workload;
+
+		WorkloadEntity(String name, Workload workload) {
+			super(name);
+			this.workload = workload;
+		}
+
+		@Override
+		public void startEntity() {
+			workload.start(this);
+		}
+
+		@Override
+		public void processEvent(SimEvent ev) {
+			workload.process(this, ev);
+		}
+
+		@Override
+		public void shutdownEntity() {
+		}
+	}
+
+	private static List<String> runScenarioJvm(boolean calendar) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<String>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(FutureQueueDeterminismCheck.class.getName());
+		command.add("scenario");
+		command.add(String.valueOf(calendar));
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		List<String> lines = new ArrayList<String>();
+		BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = output.readLine()) != null) {
+				// the wall-clock time of the run
+				if (!line.startsWith("EXECUTION TIME")) {
+					lines.add(line);
+				}
+			}
+		} finally {
+			output.close();
+		}
+		int exitValue = process.waitFor();
+		if (exitValue != 0) {
+			fail("the scenario with " + (calendar ? "FutureQueueCalendar" : "FutureQueueTreeSet")
+					+ " exited with status " + exitValue + ": " + lines);
+		}
+		return lines;
+	}
+
+	static List<FogDevice> fogDevices = new ArrayList<FogDevice>();
+	static List<Sensor> sensors = new ArrayList<Sensor>();
+	static List<Actuator> actuators = new ArrayList<Actuator>();
+	static int numOfAreas = 2;
+	static int numOfCamerasPerArea = 4;
+
+	/**
+	 * Runs the surveillance scenario, which ends the JVM when the simulation stops.
+	 */
+	private static void runScenario(boolean calendar) throws Exception {
+		createScenario(calendar);
+		CloudSim.startSimulation();
+	}
+
+	/**
+	 * Creates the entities of the surveillance scenario, ready to be started.
+	 */
+	static void createScenario(boolean calendar) throws Exception {
+		Log.disable();
+		SimulationContext.current().setCalendarQueue(calendar);
+		CloudSim.init(1, Calendar.getInstance(), false);
+
+		String appId = "dcns";
+		FogBroker broker = new FogBroker("broker");
+		Application application = createApplication(appId, broker.getId());
+		application.setUserId(broker.getId());
+		createFogDevices(broker.getId(), appId);
+
+		ModuleMapping moduleMapping = ModuleMapping.createModuleMapping();
+		for (FogDevice device : fogDevices) {
+			if (device.getName().startsWith("m")) {
+				moduleMapping.addModuleToDevice("motion_detector", device.getName());
+			}
+		}
+		moduleMapping.addModuleToDevice("user_interface", "cloud");
+
+		Controller controller = new Controller("master-controller", fogDevices, sensors, actuators);
+		controller.submitApplication(application,
+				new ModulePlacementEdgewards(fogDevices, sensors, actuators, application, moduleMapping));
+
+		TimeKeeper.getInstance().setSimulationStartTime(Calendar.getInstance().getTimeInMillis());
+	}
+
+	private static void createFogDevices(int userId, String appId) {
+		FogDevice cloud = createFogDevice("cloud", 44800, 40000, 100, 10000, 0, 0.01, 16*103, 16*83.25);
+		cloud.setParentId(-1);
+		fogDevices.add(cloud);
+		FogDevice proxy = createFogDevice("proxy-server", 2800, 4000, 10000, 10000, 1, 0.0, 107.339, 83.4333);
+		proxy.setParentId(cloud.getId());
+		proxy.setUplinkLatency(100);
+		fogDevices.add(proxy);
+		for (int i = 0; i < numOfAreas; i++) {
+			addArea(i+"", userId, appId, proxy.getId());
+		}
+	}
+
+	private static FogDevice addArea(String id, int userId, String appId, int parentId) {
+		FogDevice router = createFogDevice("d-"+id, 2800, 4000, 10000, 10000, 1, 0.0, 107.339, 83.4333);
+		fogDevices.add(router);
+		router.setUplinkLatency(2);
+		for (int i = 0; i < numOfCamerasPerArea; i++) {
+			FogDevice camera = addCamera(id+"-"+i, userId, appId, router.getId());
+			camera.setUplinkLatency(2);
+			fogDevices.add(camera);
+		}
+		router.setParentId(parentId);
+		return router;
+	}
+
+	private static FogDevice addCamera(String id, int userId, String appId, int parentId) {
+		FogDevice camera = createFogDevice("m-"+id, 500, 1000, 10000, 10000, 3, 0, 87.53, 82.44);
+		camera.setParentId(parentId);
+		Sensor sensor = new Sensor("s-"+id, "CAMERA", userId, appId, new DeterministicDistribution(5));
+		sensors.add(sensor);
+		Actuator ptz = new Actuator("ptz-"+id, userId, appId, "PTZ_CONTROL");
+		actuators.add(ptz);
+		sensor.setGatewayDeviceId(camera.getId());
+		sensor.setLatency(1.0);
+		ptz.setGatewayDeviceId(camera.getId());
+		ptz.setLatency(1.0);
+		return camera;
+	}
+
+	private static FogDevice createFogDevice(String nodeName, long mips,
+			int ram, long upBw, long downBw, int level, double ratePerMips, double busyPower, double idlePower) {
+		List<Pe> peList = new ArrayList<Pe>();
+		peList.add(new Pe(0, new PeProvisionerOverbooking(mips)));
+
+		int hostId = FogUtils.generateEntityId();
+		PowerHost host = new PowerHost(
+				hostId,
+				new RamProvisionerSimple(ram),
+				new BwProvisionerOverbooking(10000),
+				1000000,
+				peList,
+				new StreamOperatorScheduler(peList),
+				new FogLinearPowerModel(busyPower, idlePower)
+			);
+		List<Host> hostList = new ArrayList<Host>();
+		hostList.add(host);
+
+		FogDeviceCharacteristics characteristics = new FogDeviceCharacteristics(
+				"x86", "Linux", "Xen", host, 10.0, 3.0, 0.05, 0.001, 0.0);
+
+		FogDevice fogdevice = null;
+		try {
+			fogdevice = new FogDevice(nodeName, characteristics,
+					new AppModuleAllocationPolicy(hostList), new LinkedList<Storage>(), 10, upBw, downBw, 0, ratePerMips);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		fogdevice.setLevel(level);
+		return fogdevice;
+	}
+
+	/**
+	 * Creates the application of {@link DCNSFog}, with a bursty selectivity in place of the random one
+	 * so that the runs can be compared.
+	 */
+	private static Application createApplication(String appId, int userId) {
+		Application application = Application.createApplication(appId, userId);
+		application.addAppModule("object_detector", 10);
+		application.addAppModule("motion_detector", 10);
+		application.addAppModule("object_tracker", 10);
+		application.addAppModule("user_interface", 10);
+
+		application.addAppEdge("CAMERA", "motion_detector", 1000, 20000, "CAMERA", Tuple.UP, AppEdge.SENSOR);
+		application.addAppEdge("motion_detector", "object_detector", 2000, 2000, "MOTION_VIDEO_STREAM", Tuple.UP, AppEdge.MODULE);
+		application.addAppEdge("object_detector", "user_interface", 500, 2000, "DETECTED_OBJECT", Tuple.UP, AppEdge.MODULE);
+		application.addAppEdge("object_detector", "object_tracker", 1000, 100, "OBJECT_LOCATION", Tuple.UP, AppEdge.MODULE);
+		application.addAppEdge("object_tracker", "PTZ_CONTROL", 100, 28, 100, "PTZ_PARAMS", Tuple.DOWN, AppEdge.ACTUATOR);
+
+		application.addTupleMapping("motion_detector", "CAMERA", "MOTION_VIDEO_STREAM", new FractionalSelectivity(1.0));
+		application.addTupleMapping("object_detector", "MOTION_VIDEO_STREAM", "OBJECT_LOCATION", new FractionalSelectivity(1.0));
+		application.addTupleMapping("object_detector", "MOTION_VIDEO_STREAM", "DETECTED_OBJECT", new BurstySelectivity(95, 5, 0));
+
+		List<AppLoop> loops = new ArrayList<AppLoop>();
+		loops.add(new AppLoop(Arrays.asList("motion_detector", "object_detector", "object_tracker")));
+		loops.add(new AppLoop(Arrays.asList("object_tracker", "PTZ_CONTROL")));
+		application.setLoops(loops);
+		return application;
+	}
+}
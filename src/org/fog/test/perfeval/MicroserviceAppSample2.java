@@ -75,6 +75,7 @@ public class MicroserviceAppSample2 {
 
     //cluster link latency 2ms
     static Double clusterLatency = 2.0;
+    static int placementAlgo = PlacementLogicFactory.CLUSTERED_MICROSERVICES_PLACEMENT;
 
     //application
     static List<Application> applications = new ArrayList<>();
@@ -121,7 +122,6 @@ public class MicroserviceAppSample2 {
             for (Application application : applications)
                 appList.add(application);
 
-            int placementAlgo = PlacementLogicFactory.CLUSTERED_MICROSERVICES_PLACEMENT;
             MicroservicesController microservicesController = new MicroservicesController("controller", fogDevices, sensors, appList, clusterLevelIdentifier, clusterLatency, placementAlgo);
 
 
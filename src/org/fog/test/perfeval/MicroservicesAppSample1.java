@@ -54,6 +54,7 @@ public class MicroservicesAppSample1 {
 
     //cluster link latency 2ms
     static Double clusterLatency = 2.0;
+    static int placementAlgo = PlacementLogicFactory.DISTRIBUTED_MICROSERVICES_PLACEMENT;
 
     //application
     static List<Application> applications = new ArrayList<>();
@@ -117,7 +118,6 @@ public class MicroservicesAppSample1 {
             /**
              * Central controller for performing preprocessing functions
              */
-            int placementAlgo = PlacementLogicFactory.DISTRIBUTED_MICROSERVICES_PLACEMENT;
             MicroservicesController microservicesController = new MicroservicesController("controller", fogDevices, sensors, applications, clusterLevelIdentifier, clusterLatency, placementAlgo, monitored);
 
 
@@ -327,7 +327,7 @@ public class MicroservicesAppSample1 {
                     continue;
                 double latency = fogDevice.getUplinkLatency();
                 parent.getChildToLatencyMap().put(fogDevice.getId(), latency);
-                parent.getChildrenIds().add(fogDevice.getId());
+                parent.addChild(fogDevice.getId());
             }
         }
     }
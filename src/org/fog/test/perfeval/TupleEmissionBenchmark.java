@@ -0,0 +1,69 @@
+package org.fog.test.perfeval;
+
+import java.util.List;
+
+import org.cloudbus.cloudsim.UtilizationModelFull;
+import org.fog.application.AppEdge;
+import org.fog.application.Application;
+import org.fog.application.selectivity.FractionalSelectivity;
+import org.fog.entities.Tuple;
+import org.fog.utils.FogUtils;
+
+/**
+ * Measures how fast an application emits the resultant tuples of executed tuples, for a module
+ * fanning out to many others. The application has a hub module with one outgoing edge to each of
+ * <tt>fanOut</tt> worker modules, and each worker has an edge to a sink, so that the edges of the
+ * hub are a fraction of the edges of the application.
+ * <p>
+ * Usage: <tt>TupleEmissionBenchmark [fanOut] [iterations]</tt>
+ */
+public class TupleEmissionBenchmark {
+
+	public static void main(String[] args) {
+		int fanOut = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+		Application application = createApplication("fanout", 1, fanOut);
+		Tuple inputTuple = new Tuple("fanout", FogUtils.generateTupleId(), Tuple.UP, 1000, 1, 100, 100,
+				new UtilizationModelFull(), new UtilizationModelFull(), new UtilizationModelFull());
+		inputTuple.setUserId(1);
+		inputTuple.setAppId("fanout");
+		inputTuple.setTupleType("REQUEST");
+
+		// warm up before measuring
+		emit(application, inputTuple, iterations / 10);
+
+		long start = System.nanoTime();
+		long tuples = emit(application, inputTuple, iterations);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("Fan-out " + fanOut + ", " + application.getEdges().size() + " edges: "
+				+ tuples + " tuples in " + String.format("%.3f", seconds) + " s, "
+				+ String.format("%.0f", tuples / seconds) + " tuples/s");
+	}
+
+	private static long emit(Application application, Tuple inputTuple, int iterations) {
+		long tuples = 0;
+		for (int i = 0; i < iterations; i++) {
+			List<Tuple> resultantTuples = application.getResultantTuples("hub", inputTuple, 0, 0);
+			tuples += resultantTuples.size();
+		}
+		return tuples;
+	}
+
+	private static Application createApplication(String appId, int userId, int fanOut) {
+		Application application = Application.createApplication(appId, userId);
+		application.addAppModule("hub", 10);
+		application.addAppModule("sink", 10);
+		for (int i = 0; i < fanOut; i++) {
+			application.addAppModule("worker" + i, 10);
+		}
+		application.addAppEdge("SOURCE", "hub", 1000, 100, "REQUEST", Tuple.UP, AppEdge.SENSOR);
+		for (int i = 0; i < fanOut; i++) {
+			application.addAppEdge("hub", "worker" + i, 1000, 100, "TASK" + i, Tuple.UP, AppEdge.MODULE);
+			application.addAppEdge("worker" + i, "sink", 1000, 100, "RESULT" + i, Tuple.UP, AppEdge.MODULE);
+			application.addTupleMapping("hub", "REQUEST", "TASK" + i, new FractionalSelectivity(1.0));
+			application.addTupleMapping("worker" + i, "TASK" + i, "RESULT" + i, new FractionalSelectivity(1.0));
+		}
+		return application;
+	}
+}
@@ -0,0 +1,74 @@
+package org.fog.test.perfeval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudbus.cloudsim.UtilizationModelFull;
+import org.fog.application.AppEdge;
+import org.fog.application.Application;
+import org.fog.application.selectivity.FractionalSelectivity;
+import org.fog.entities.Tuple;
+import org.fog.utils.FogUtils;
+
+/**
+ * Measures the heap taken by tuples in flight. Sensor tuples are sent through a pipeline of
+ * modules, the tuples emitted at each stage being created as the fog devices create them, and all
+ * the tuples are kept alive until the heap is measured.
+ * <p>
+ * Usage: <tt>TupleFootprintBenchmark [sensorTuples] [stages]</tt>
+ */
+public class TupleFootprintBenchmark {
+
+	public static void main(String[] args) {
+		int sensorTuples = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int stages = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		Application application = createApplication("pipeline", 1, stages);
+		long before = usedHeap();
+		List<Tuple> tuples = new ArrayList<Tuple>(sensorTuples * (stages + 1));
+		for (int i = 0; i < sensorTuples; i++) {
+			Tuple tuple = new Tuple("pipeline", FogUtils.generateTupleId(), Tuple.UP, 1000, 1, 100, 100,
+					new UtilizationModelFull(), new UtilizationModelFull(), new UtilizationModelFull());
+			tuple.setUserId(1);
+			tuple.setAppId("pipeline");
+			tuple.setTupleType("S");
+			tuple.setDestModuleName("stage0");
+			tuples.add(tuple);
+			for (int stage = 0; stage < stages; stage++) {
+				// as done by FogDevice.checkCloudletCompletion
+				int vmId = stage + 1;
+				Tuple resultantTuple = application.getResultantTuples("stage" + stage, tuple, 0, vmId).get(0);
+				resultantTuple.setModuleCopies(tuple, "stage" + stage, vmId);
+				tuples.add(resultantTuple);
+				tuple = resultantTuple;
+			}
+		}
+		long after = usedHeap();
+		// the list itself holds one reference per tuple
+		System.out.println(tuples.size() + " tuples: " + (after - before) / tuples.size() + " bytes per tuple");
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static Application createApplication(String appId, int userId, int stages) {
+		Application application = Application.createApplication(appId, userId);
+		for (int stage = 0; stage <= stages; stage++) {
+			application.addAppModule("stage" + stage, 10);
+		}
+		application.addAppEdge("SENSOR", "stage0", 1000, 100, "S", Tuple.UP, AppEdge.SENSOR);
+		String inputType = "S";
+		for (int stage = 0; stage < stages; stage++) {
+			String outputType = "T" + stage;
+			application.addAppEdge("stage" + stage, "stage" + (stage + 1), 1000, 100, outputType, Tuple.UP, AppEdge.MODULE);
+			application.addTupleMapping("stage" + stage, inputType, outputType, new FractionalSelectivity(1.0));
+			inputType = outputType;
+		}
+		return application;
+	}
+}
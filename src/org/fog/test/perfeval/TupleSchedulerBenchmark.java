@@ -0,0 +1,62 @@
+package org.fog.test.perfeval;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.cloudbus.cloudsim.CloudletScheduler;
+import org.cloudbus.cloudsim.CloudletSchedulerTimeShared;
+import org.cloudbus.cloudsim.UtilizationModelFull;
+import org.fog.entities.Tuple;
+import org.fog.scheduler.TupleScheduler;
+import org.fog.utils.FogUtils;
+
+/**
+ * Measures the time taken by the updates of a time-shared scheduler executing many tuples at once,
+ * for {@link TupleScheduler} and for the {@link CloudletSchedulerTimeShared} it extends. The tuples
+ * have different lengths, so that some of them finish at every update.
+ * <p>
+ * Usage: <tt>TupleSchedulerBenchmark [tuples] [updates]</tt>
+ */
+public class TupleSchedulerBenchmark {
+
+	public static void main(String[] args) {
+		int tuples = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int updates = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		// warm up before measuring
+		run(new CloudletSchedulerTimeShared(), tuples / 10, updates / 10);
+		run(new TupleScheduler(1000, 1), tuples / 10, updates / 10);
+
+		System.out.println("CloudletSchedulerTimeShared: " + run(new CloudletSchedulerTimeShared(), tuples, updates) + " ms");
+		System.out.println("TupleScheduler: " + run(new TupleScheduler(1000, 1), tuples, updates) + " ms");
+	}
+
+	private static long run(CloudletScheduler scheduler, int tuples, int updates) {
+		List<Double> mipsShare = Collections.singletonList(1000.0);
+		scheduler.updateVmProcessing(0, mipsShare);
+		for (int i = 0; i < tuples; i++) {
+			scheduler.cloudletSubmit(newTuple(100 + i * updates / (2 * tuples)));
+		}
+
+		long start = System.nanoTime();
+		double time = 0;
+		for (int i = 0; i < updates; i++) {
+			// a new tuple arrives as others finish, as on a loaded fog device
+			time += 1;
+			scheduler.updateVmProcessing(time, mipsShare);
+			while (scheduler.isFinishedCloudlets()) {
+				scheduler.getNextFinishedCloudlet();
+				scheduler.cloudletSubmit(newTuple(100 + updates / 2));
+			}
+		}
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	private static Tuple newTuple(long length) {
+		Tuple tuple = new Tuple("benchmark", FogUtils.generateTupleId(), Tuple.UP, length, 1, 100, 100,
+				new UtilizationModelFull(), new UtilizationModelFull(), new UtilizationModelFull());
+		// as done by the datacenter on submission, without which the tuple counts as finished
+		tuple.setResourceParameter(0, 0);
+		return tuple;
+	}
+}
@@ -0,0 +1,125 @@
+package org.fog.utils;
+
+import java.io.PrintStream;
+
+/**
+ * Writes the lines of {@link Logger} from a background thread. The simulation only copies the
+ * clock, the name and the message of a line into a ring buffer of fixed size; formatting the clock,
+ * building the line and writing it are left to the writer thread. When the buffer is full, the
+ * simulation waits for the writer, so that no line is lost.
+ * <p>
+ * The lines keep their order, but are written some time after they are logged, so they may be
+ * interleaved differently with what the simulation prints directly. The buffer is flushed when the
+ * JVM exits, as controllers end the simulation with {@link System#exit(int)}.
+ */
+public class AsyncLogSink {
+
+	private static final int BATCH_SIZE = 256;
+
+	private final PrintStream out;
+
+	private final double[] clocks;
+	private final String[] names;
+	private final String[] messages;
+
+	/** The index of the oldest line in the buffer and the number of lines in it. */
+	private int head, count;
+
+	/** Held while lines are taken from the buffer and written, so that they are written in order. */
+	private final Object writeLock = new Object();
+
+	/**
+	 * Creates a sink and starts its writer thread.
+	 *
+	 * @param out the stream the lines are written to
+	 * @param capacity the number of lines the buffer holds
+	 */
+	public AsyncLogSink(PrintStream out, int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("The capacity of the log buffer should be positive, but is:" + capacity);
+		this.out = out;
+		clocks = new double[capacity];
+		names = new String[capacity];
+		messages = new String[capacity];
+
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (true) {
+					synchronized (AsyncLogSink.this) {
+						while (count == 0) {
+							try {
+								AsyncLogSink.this.wait();
+							} catch (InterruptedException e) {
+								return;
+							}
+						}
+					}
+					writeBatch(BATCH_SIZE);
+				}
+			}
+		}, "fog-log-writer");
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, "fog-log-flush"));
+	}
+
+	/**
+	 * Adds a line to the buffer, waiting for the writer if the buffer is full.
+	 */
+	public synchronized void append(double clock, String name, String message) {
+		while (count == clocks.length) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		int tail = (head + count) % clocks.length;
+		clocks[tail] = clock;
+		names[tail] = name;
+		messages[tail] = message;
+		if (count++ == 0)
+			notifyAll();
+	}
+
+	/**
+	 * Writes all the lines of the buffer.
+	 */
+	public void flush() {
+		writeBatch(clocks.length);
+	}
+
+	private void writeBatch(int maxLines) {
+		synchronized (writeLock) {
+			int n;
+			double[] batchClocks;
+			String[] batchNames, batchMessages;
+			synchronized (this) {
+				n = Math.min(count, maxLines);
+				batchClocks = new double[n];
+				batchNames = new String[n];
+				batchMessages = new String[n];
+				for (int i = 0; i < n; i++) {
+					batchClocks[i] = clocks[head];
+					batchNames[i] = names[head];
+					batchMessages[i] = messages[head];
+					names[head] = null;
+					messages[head] = null;
+					head = (head + 1) % clocks.length;
+				}
+				count -= n;
+				notifyAll();
+			}
+			for (int i = 0; i < n; i++)
+				out.println(Logger.formatLine(batchClocks[i], batchNames[i], batchMessages[i]));
+			out.flush();
+		}
+	}
+}
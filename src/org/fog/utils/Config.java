@@ -1,5 +1,7 @@
 package org.fog.utils;
 
+import org.fog.entities.SharedLink;
+
 public class Config {
 
 	public static final double RESOURCE_MGMT_INTERVAL = 100;
@@ -23,4 +25,25 @@ public class Config {
 	public static double clusteringLatency = 2.0; //milisecond
 
 	public static final int TRANSMISSION_START_DELAY = 50;
+
+	// How received tuples are acknowledged to their senders, one of the TupleAcks modes; COALESCED and REGISTERED save events
+	public static int TUPLE_ACK_MODE = TupleAcks.PER_TUPLE;
+
+	// How tuples are sent over the links between fog devices, SharedLink.FIFO or SharedLink.SHARED
+	public static int LINK_MODEL = SharedLink.FIFO;
+
+	// The simulation time after which the emit or CPU start time of a tuple that has not come back may be dropped,
+	// raised to TUPLE_TIME_TO_LIVE_FACTOR times the longest loop delay or tuple CPU time seen so far
+	public static double TUPLE_TIME_TO_LIVE = 10000;
+	public static double TUPLE_TIME_TO_LIVE_FACTOR = 10;
+
+	// The file the tuple flow is traced to by TraceRecorder, or null not to trace it
+	public static String TRACE_FILE = null;
+
+	// The simulation time between the samples of MetricsSampler, which is off when 0
+	public static double SAMPLING_INTERVAL = 0;
+	// The number of samples kept by MetricsSampler, the oldest ones being dropped
+	public static int SAMPLE_CAPACITY = 10000;
+	// The CSV file MetricsSampler writes the samples to at the end of the simulation
+	public static String SAMPLES_FILE = "samples.csv";
 }
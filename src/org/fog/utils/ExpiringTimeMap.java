@@ -0,0 +1,284 @@
+package org.fog.utils;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map from tuple ids to simulation times, such as the times the tuples were emitted, stored in
+ * primitive arrays with open addressing and linear probing, so that no object is created per entry.
+ * <p>
+ * An entry whose time is older than the time-to-live when the map is put an entry is an orphan, e.g.
+ * of a tuple dropped before the end of its loop, and may be evicted. The orphans are evicted when the
+ * table is full, before growing it, so that the memory used stays bounded by the number of entries put
+ * during a time-to-live. The time-to-live may be raised as longer-lived entries are seen, and the
+ * evictions are counted so that entries evicted while still expected can be noticed.
+ */
+public class ExpiringTimeMap implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The key marking a free slot; the entry of that key, if any, is stored apart. */
+	private static final int FREE = Integer.MIN_VALUE;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private double timeToLive;
+
+	private int[] keys;
+
+	private double[] times;
+
+	/** The number of entries in the table, without the entry of the free key. */
+	private int size;
+
+	private boolean hasFreeKey;
+
+	private double freeKeyTime;
+
+	private long evictedCount;
+
+	/**
+	 * Creates a map.
+	 *
+	 * @param timeToLive the age after which an entry may be evicted
+	 */
+	public ExpiringTimeMap(double timeToLive) {
+		if (!(timeToLive > 0))
+			throw new IllegalArgumentException("The time-to-live should be positive, but is:" + timeToLive);
+		this.timeToLive = timeToLive;
+		allocate(INITIAL_CAPACITY);
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		Arrays.fill(keys, FREE);
+		times = new double[capacity];
+	}
+
+	private int slotOf(int key) {
+		return (key * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(keys.length)) & (keys.length - 1);
+	}
+
+	/**
+	 * Associates a time with a key.
+	 *
+	 * @param key the key
+	 * @param time the simulation time, which is also the current time
+	 */
+	public void put(int key, double time) {
+		if (key == FREE) {
+			hasFreeKey = true;
+			freeKeyTime = time;
+			return;
+		}
+		int slot = slotOf(key);
+		while (keys[slot] != FREE) {
+			if (keys[slot] == key) {
+				times[slot] = time;
+				return;
+			}
+			slot = (slot + 1) & (keys.length - 1);
+		}
+		keys[slot] = key;
+		times[slot] = time;
+		if (++size > keys.length / 4 * 3)
+			rehash(time - timeToLive);
+	}
+
+	/**
+	 * Evicts the entries older than a time, and grows the table if it is still half full.
+	 */
+	private void rehash(double oldestTime) {
+		int live = 0;
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (keys[slot] != FREE && times[slot] >= oldestTime)
+				live++;
+		}
+		int[] oldKeys = keys;
+		double[] oldTimes = times;
+		allocate(live >= keys.length / 2 ? keys.length * 2 : keys.length);
+		evictedCount += size - live;
+		size = live;
+		for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+			if (oldKeys[oldSlot] == FREE || oldTimes[oldSlot] < oldestTime)
+				continue;
+			int slot = slotOf(oldKeys[oldSlot]);
+			while (keys[slot] != FREE)
+				slot = (slot + 1) & (keys.length - 1);
+			keys[slot] = oldKeys[oldSlot];
+			times[slot] = oldTimes[oldSlot];
+		}
+	}
+
+	private int find(int key) {
+		int slot = slotOf(key);
+		while (keys[slot] != FREE) {
+			if (keys[slot] == key)
+				return slot;
+			slot = (slot + 1) & (keys.length - 1);
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the time associated with a key.
+	 *
+	 * @return the time, or NaN if the key has no entry
+	 */
+	public double get(int key) {
+		if (key == FREE)
+			return hasFreeKey ? freeKeyTime : Double.NaN;
+		int slot = find(key);
+		return slot >= 0 ? times[slot] : Double.NaN;
+	}
+
+	public boolean containsKey(int key) {
+		return key == FREE ? hasFreeKey : find(key) >= 0;
+	}
+
+	/**
+	 * Removes the entry of a key.
+	 *
+	 * @return the time of the entry, or NaN if the key has no entry
+	 */
+	public double remove(int key) {
+		if (key == FREE) {
+			double time = hasFreeKey ? freeKeyTime : Double.NaN;
+			hasFreeKey = false;
+			return time;
+		}
+		int slot = find(key);
+		if (slot < 0)
+			return Double.NaN;
+		double time = times[slot];
+		size--;
+		// shifts back the following entries of the probe sequence, instead of leaving a tombstone
+		int mask = keys.length - 1;
+		int free = slot;
+		for (int next = (slot + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+			int home = slotOf(keys[next]);
+			if (((next - home) & mask) >= ((next - free) & mask)) {
+				keys[free] = keys[next];
+				times[free] = times[next];
+				free = next;
+			}
+		}
+		keys[free] = FREE;
+		return time;
+	}
+
+	public int size() {
+		return size + (hasFreeKey ? 1 : 0);
+	}
+
+	/**
+	 * Gets a view of the map as a {@link Map}, in which a key with no entry maps to null. Each lookup
+	 * boxes its key and time, and the entries cannot be removed while they are iterated.
+	 */
+	public Map<Integer, Double> asMap() {
+		return new AbstractMap<Integer, Double>() {
+
+			@Override
+			public Double get(Object key) {
+				if (!(key instanceof Integer))
+					return null;
+				double time = ExpiringTimeMap.this.get((Integer) key);
+				return Double.isNaN(time) ? null : time;
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return key instanceof Integer && ExpiringTimeMap.this.containsKey((Integer) key);
+			}
+
+			@Override
+			public Double put(Integer key, Double time) {
+				Double previous = get(key);
+				ExpiringTimeMap.this.put(key, time);
+				return previous;
+			}
+
+			@Override
+			public Double remove(Object key) {
+				if (!(key instanceof Integer))
+					return null;
+				double time = ExpiringTimeMap.this.remove((Integer) key);
+				return Double.isNaN(time) ? null : time;
+			}
+
+			@Override
+			public int size() {
+				return ExpiringTimeMap.this.size();
+			}
+
+			@Override
+			public Set<Map.Entry<Integer, Double>> entrySet() {
+				return new AbstractSet<Map.Entry<Integer, Double>>() {
+
+					@Override
+					public Iterator<Map.Entry<Integer, Double>> iterator() {
+						return new Iterator<Map.Entry<Integer, Double>>() {
+
+							/** The next slot to look at; the entry of the free key comes after the table. */
+							private int slot = 0;
+
+							private boolean freeKeyDone = !hasFreeKey;
+
+							@Override
+							public boolean hasNext() {
+								while (slot < keys.length && keys[slot] == FREE)
+									slot++;
+								return slot < keys.length || !freeKeyDone;
+							}
+
+							@Override
+							public Map.Entry<Integer, Double> next() {
+								if (!hasNext())
+									throw new NoSuchElementException();
+								if (slot < keys.length) {
+									Map.Entry<Integer, Double> entry = new SimpleImmutableEntry<Integer, Double>(keys[slot], times[slot]);
+									slot++;
+									return entry;
+								}
+								freeKeyDone = true;
+								return new SimpleImmutableEntry<Integer, Double>(FREE, freeKeyTime);
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return ExpiringTimeMap.this.size();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Gets the number of orphaned entries evicted so far.
+	 */
+	public long getEvictedCount() {
+		return evictedCount;
+	}
+
+	public double getTimeToLive() {
+		return timeToLive;
+	}
+
+	/**
+	 * Sets the age after which an entry may be evicted, applied from the next eviction.
+	 */
+	public void setTimeToLive(double timeToLive) {
+		if (!(timeToLive > 0))
+			throw new IllegalArgumentException("The time-to-live should be positive, but is:" + timeToLive);
+		this.timeToLive = timeToLive;
+	}
+}
@@ -0,0 +1,248 @@
+package org.fog.utils;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.cloudbus.cloudsim.core.SimulationContext;
+import org.fog.entities.FogDevice;
+
+/**
+ * Answers in constant time which child of a fog device leads to another device below it. Each device
+ * is labelled with the ids of its ancestors by depth, from the root of its tree down to itself; a
+ * device X is below a device P if the ancestor of X at the depth of P is P, and the child of P leading
+ * to X is then the ancestor of X one level deeper.
+ * <p>
+ * The index is built from the children of the fog devices when it is first queried, and then kept
+ * up to date by {@link FogDevice#addChild(int)} and {@link FogDevice#removeChild(int)}: moving a
+ * device relabels its subtree only, i.e. the device itself when a mobile device changes gateway.
+ * Changes made through {@link FogDevice#getChildrenIds()} discard the index, and changes made to the
+ * children lists of subclasses directly have to be followed by {@link #invalidate()}.
+ * <p>
+ * The index also knows the devices actuators have joined, so that a tuple sent to actuators of a
+ * type only goes down to the children leading to such actuators.
+ */
+public class FogHierarchyIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static class Node implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final int id;
+        Node parent;
+        final List<Node> children = new ArrayList<Node>();
+        /** The ids of the ancestors by depth, ending with the id of the node. */
+        int[] ancestors;
+
+        Node(int id) {
+            this.id = id;
+        }
+
+        int depth() {
+            return ancestors.length - 1;
+        }
+    }
+
+    /** The nodes of the fog devices by id, or null until the index is built. */
+    private Map<Integer, Node> nodes;
+
+    /** The ids of the devices actuators have joined, by type of actuator. */
+    private final Map<String, Set<Integer>> actuatorDeviceIds = new HashMap<String, Set<Integer>>();
+
+    /** The children leading to actuators of a type, by device and type, until the next change. */
+    private final Map<Integer, Map<String, Set<Integer>>> actuatorRoutes = new HashMap<Integer, Map<String, Set<Integer>>>();
+
+    public static FogHierarchyIndex getInstance() {
+        SimulationContext context = SimulationContext.current();
+        FogHierarchyIndex instance = context.getComponent(FogHierarchyIndex.class);
+        if (instance == null) {
+            instance = new FogHierarchyIndex();
+            context.setComponent(FogHierarchyIndex.class, instance);
+        }
+        return instance;
+    }
+
+    private FogHierarchyIndex() {
+    }
+
+    /**
+     * Gets the child of a device through which another device is reached.
+     *
+     * @param deviceId the id of the device
+     * @param targetId the id of the device to reach
+     * @return the id of the child that is the target or one of its ancestors, or -1 if the target is
+     * not below the device
+     */
+    public int getChildIdWithRouteTo(int deviceId, int targetId) {
+        Map<Integer, Node> nodes = getNodes();
+        Node device = nodes.get(deviceId);
+        Node target = nodes.get(targetId);
+        if (device == null || target == null)
+            return -1;
+        int depth = device.depth();
+        if (target.depth() <= depth || target.ancestors[depth] != deviceId)
+            return -1;
+        return target.ancestors[depth + 1];
+    }
+
+    /**
+     * Gets the children of a device below which an actuator of a type has joined a device.
+     *
+     * @param deviceId the id of the device
+     * @param actuatorType the type of actuator
+     * @return the ids of the children
+     */
+    public Set<Integer> getChildIdsWithActuator(int deviceId, String actuatorType) {
+        Map<String, Set<Integer>> routes = actuatorRoutes.get(deviceId);
+        if (routes == null) {
+            routes = new HashMap<String, Set<Integer>>();
+            actuatorRoutes.put(deviceId, routes);
+        }
+        Set<Integer> childIds = routes.get(actuatorType);
+        if (childIds == null) {
+            childIds = new HashSet<Integer>();
+            Set<Integer> targetIds = actuatorDeviceIds.get(actuatorType);
+            if (targetIds != null) {
+                for (int targetId : targetIds) {
+                    int childId = getChildIdWithRouteTo(deviceId, targetId);
+                    if (childId != -1)
+                        childIds.add(childId);
+                }
+            }
+            routes.put(actuatorType, childIds);
+        }
+        return childIds;
+    }
+
+    /**
+     * Records that an actuator joined a device.
+     */
+    public void actuatorJoined(int deviceId, String actuatorType) {
+        Set<Integer> deviceIds = actuatorDeviceIds.get(actuatorType);
+        if (deviceIds == null) {
+            deviceIds = new HashSet<Integer>();
+            actuatorDeviceIds.put(actuatorType, deviceIds);
+        }
+        if (deviceIds.add(deviceId))
+            actuatorRoutes.clear();
+    }
+
+    /**
+     * Records that a device became the child of another one, leaving its previous parent if any.
+     */
+    public void childAdded(int parentId, int childId) {
+        if (nodes == null)
+            return;
+        Node parent = nodes.get(parentId);
+        Node child = nodes.get(childId);
+        if (parent == null || child == null) {
+            // a device created after the index was built
+            invalidate();
+            return;
+        }
+        if (child.parent == parent || isBelow(parent, child))
+            return;
+        if (child.parent != null)
+            child.parent.children.remove(child);
+        child.parent = parent;
+        parent.children.add(child);
+        label(child);
+        actuatorRoutes.clear();
+    }
+
+    /**
+     * Records that a device is no longer the child of another one. Nothing changes if the device has
+     * already moved to another parent.
+     */
+    public void childRemoved(int parentId, int childId) {
+        if (nodes == null)
+            return;
+        Node child = nodes.get(childId);
+        if (child == null || child.parent == null || child.parent.id != parentId)
+            return;
+        child.parent.children.remove(child);
+        child.parent = null;
+        label(child);
+        actuatorRoutes.clear();
+    }
+
+    /**
+     * Discards the index, which is built again from the children of the fog devices on the next query.
+     */
+    public void invalidate() {
+        nodes = null;
+        actuatorRoutes.clear();
+    }
+
+    private Map<Integer, Node> getNodes() {
+        if (nodes == null) {
+            Map<Integer, Node> built = new HashMap<Integer, Node>();
+            List<FogDevice> fogDevices = new ArrayList<FogDevice>();
+            for (SimEntity entity : CloudSim.getEntityList()) {
+                if (entity instanceof FogDevice) {
+                    fogDevices.add((FogDevice) entity);
+                    built.put(entity.getId(), new Node(entity.getId()));
+                }
+            }
+            for (FogDevice fogDevice : fogDevices) {
+                Node parent = built.get(fogDevice.getId());
+                for (int childId : fogDevice.getChildrenIds()) {
+                    Node child = built.get(childId);
+                    // a device listed by two parents is reached through the first one
+                    if (child != null && child.parent == null && child != parent) {
+                        child.parent = parent;
+                        parent.children.add(child);
+                    }
+                }
+            }
+            nodes = built;
+            for (Node node : built.values()) {
+                if (node.parent == null)
+                    label(node);
+            }
+            // the devices of a cycle have no root, and are left out
+            for (Node node : built.values()) {
+                if (node.ancestors == null) {
+                    node.parent = null;
+                    node.children.clear();
+                    node.ancestors = new int[]{node.id};
+                }
+            }
+        }
+        return nodes;
+    }
+
+    private static boolean isBelow(Node node, Node ancestor) {
+        for (Node current = node; current != null; current = current.parent) {
+            if (current == ancestor)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Labels a node and its subtree from the label of its parent.
+     */
+    private static void label(Node root) {
+        Deque<Node> pending = new ArrayDeque<Node>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int[] parentAncestors = node.parent != null ? node.parent.ancestors : new int[0];
+            node.ancestors = Arrays.copyOf(parentAncestors, parentAncestors.length + 1);
+            node.ancestors[parentAncestors.length] = node.id;
+            for (Node child : node.children)
+                pending.push(child);
+        }
+    }
+}
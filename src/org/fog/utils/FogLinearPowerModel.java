@@ -20,6 +20,9 @@ import org.cloudbus.cloudsim.power.models.PowerModel;
  */
 public class FogLinearPowerModel implements PowerModel {
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	/** The max power. */
 	private double maxPower;
 
@@ -1,15 +1,37 @@
 package org.fog.utils;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.cloudbus.cloudsim.core.SimulationContext;
+
 public class FogUtils {
-	private static int TUPLE_ID = 1;
-	private static int ENTITY_ID = 1;
-	private static int ACTUAL_TUPLE_ID = 1;
+	
+	/**
+	 * The id counters, kept per simulation context.
+	 */
+	private static class IdCounters implements Serializable {
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		private int tupleId = 1;
+		private int entityId = 1;
+		private int actualTupleId = 1;
+	}
+	
+	private static IdCounters getIdCounters(){
+		SimulationContext context = SimulationContext.current();
+		IdCounters counters = context.getComponent(IdCounters.class);
+		if(counters == null){
+			counters = new IdCounters();
+			context.setComponent(IdCounters.class, counters);
+		}
+		return counters;
+	}
 	
 	public static int generateTupleId(){
-		return TUPLE_ID++;
+		return getIdCounters().tupleId++;
 	}
 	
 	public static String getSensorTypeFromSensorName(String sensorName){
@@ -17,11 +39,11 @@ public class FogUtils {
 	}
 	
 	public static int generateEntityId(){
-		return ENTITY_ID++;
+		return getIdCounters().entityId++;
 	}
 	
 	public static int generateActualTupleId(){
-		return ACTUAL_TUPLE_ID++;
+		return getIdCounters().actualTupleId++;
 	}
 	
 	public static int USER_ID = 1;
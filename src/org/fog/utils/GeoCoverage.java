@@ -1,6 +1,11 @@
 package org.fog.utils;
 
-public class GeoCoverage {
+import java.io.Serializable;
+
+public class GeoCoverage implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
 
 	private double lat_l;
 	private double lat_u;
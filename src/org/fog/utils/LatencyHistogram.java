@@ -0,0 +1,130 @@
+package org.fog.utils;
+
+import java.io.Serializable;
+
+/**
+ * A histogram of delays with logarithmic buckets, as in HdrHistogram: every power of two is split
+ * into a fixed number of linear sub-buckets, so that the percentiles are known with the same relative
+ * precision whatever their magnitude, in a fixed amount of memory. The bucket of a delay is read from
+ * the exponent and the high bits of the mantissa of the double, and recording a delay allocates
+ * nothing.
+ * <p>
+ * Delays from {@link #LOWEST_DELAY} to {@link #HIGHEST_DELAY} are recorded with a relative error of
+ * at most 1/2^{@link #SUB_BUCKET_BITS}; smaller delays fall in the first bucket, and larger ones in
+ * the last. The exact minimum, maximum and mean are kept besides the buckets.
+ */
+public class LatencyHistogram implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The number of bits of the mantissa giving the sub-bucket, i.e. 64 sub-buckets per power of two. */
+	public static final int SUB_BUCKET_BITS = 6;
+
+	/** The smallest delay told apart from zero, 2^-10. */
+	public static final double LOWEST_DELAY = 1.0 / 1024;
+
+	/** The largest delay told apart from larger ones, 2^40. */
+	public static final double HIGHEST_DELAY = 1L << 40;
+
+	private static final int SHIFT = 52 - SUB_BUCKET_BITS;
+
+	private static final long LOWEST_KEY = Double.doubleToRawLongBits(LOWEST_DELAY) >>> SHIFT;
+
+	private static final long HIGHEST_KEY = Double.doubleToRawLongBits(HIGHEST_DELAY) >>> SHIFT;
+
+	/** The counts of the buckets: delays below the lowest one, then one bucket per key. */
+	private final long[] counts = new long[(int) (HIGHEST_KEY - LOWEST_KEY) + 2];
+
+	private long totalCount;
+
+	private double min = Double.POSITIVE_INFINITY;
+
+	private double max = Double.NEGATIVE_INFINITY;
+
+	private double sum;
+
+	/**
+	 * Records a delay.
+	 */
+	public void record(double delay) {
+		counts[bucketOf(delay)]++;
+		totalCount++;
+		sum += delay;
+		if (delay < min)
+			min = delay;
+		if (delay > max)
+			max = delay;
+	}
+
+	private static int bucketOf(double delay) {
+		if (!(delay >= LOWEST_DELAY))
+			return 0;
+		long key = Double.doubleToRawLongBits(Math.min(delay, HIGHEST_DELAY)) >>> SHIFT;
+		return (int) (key - LOWEST_KEY) + 1;
+	}
+
+	private static double lowerBound(int bucket) {
+		if (bucket == 0)
+			return 0;
+		return Double.longBitsToDouble((LOWEST_KEY + bucket - 1) << SHIFT);
+	}
+
+	private static double upperBound(int bucket) {
+		return Double.longBitsToDouble((LOWEST_KEY + bucket) << SHIFT);
+	}
+
+	/**
+	 * Gets a percentile of the delays, as the middle of the bucket it falls in, within the minimum
+	 * and maximum delays.
+	 *
+	 * @param percentile the percentile, from 0 to 100
+	 * @return the delay, or NaN if no delay was recorded
+	 */
+	public double getPercentile(double percentile) {
+		if (totalCount == 0)
+			return Double.NaN;
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+		long seen = 0;
+		for (int bucket = 0; bucket < counts.length; bucket++) {
+			seen += counts[bucket];
+			if (seen >= rank) {
+				double delay = (lowerBound(bucket) + upperBound(bucket)) / 2;
+				return Math.max(min, Math.min(max, delay));
+			}
+		}
+		return max;
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Gets the minimum delay, or NaN if no delay was recorded.
+	 */
+	public double getMin() {
+		return totalCount > 0 ? min : Double.NaN;
+	}
+
+	/**
+	 * Gets the maximum delay, or NaN if no delay was recorded.
+	 */
+	public double getMax() {
+		return totalCount > 0 ? max : Double.NaN;
+	}
+
+	/**
+	 * Gets the mean delay, or NaN if no delay was recorded.
+	 */
+	public double getMean() {
+		return totalCount > 0 ? sum / totalCount : Double.NaN;
+	}
+
+	/**
+	 * Gets the percentiles reported by the controllers, e.g. <tt>p50=1.5 p95=2.0 p99=3.0 max=3.2</tt>.
+	 */
+	public String getSummary() {
+		return "p50=" + getPercentile(50) + " p95=" + getPercentile(95) + " p99=" + getPercentile(99) + " max=" + getMax();
+	}
+}
@@ -1,34 +1,114 @@
 package org.fog.utils;
 
 import java.text.DecimalFormat;
+import java.util.function.Supplier;
 
 import org.cloudbus.cloudsim.core.CloudSim;
 
+/**
+ * Logs the events of the fog entities, prefixed by the simulation clock and the name of the entity.
+ * <p>
+ * Messages that are costly to build should be passed as a {@link Supplier} or as a format and its
+ * arguments, so that they are only built when the level is enabled; on hot paths, checking
+ * {@link #isDebugEnabled()} first also avoids creating the supplier or the arguments. The lines are
+ * printed as they are logged, or handed to an {@link AsyncLogSink} when {@link #setAsync(boolean)}
+ * is on.
+ */
 public class Logger {
-	
+
 	public static final int ERROR = 1;
 	public static final int DEBUG = 0;
-	
+
 	public static int LOG_LEVEL = Logger.DEBUG;
-	private static DecimalFormat df = new DecimalFormat("#.00"); 
+	// DecimalFormat is not thread safe and simulations may run in parallel
+	private static final ThreadLocal<DecimalFormat> df = new ThreadLocal<DecimalFormat>(){
+		@Override
+		protected DecimalFormat initialValue(){
+			return new DecimalFormat("#.00");
+		}
+	};
 
 	public static boolean ENABLED = true;;
-	
+
+	/** The number of lines buffered by the asynchronous sink. */
+	private static final int ASYNC_BUFFER_SIZE = 8192;
+
+	/** The sink the lines are handed to, or null when they are printed as they are logged. */
+	private static volatile AsyncLogSink asyncSink;
+
+	/** The sink created the first time the asynchronous mode is turned on, kept for the next times. */
+	private static AsyncLogSink createdSink;
+
 	public static void setLogLevel(int level){
 		Logger.LOG_LEVEL = level;
 	}
-	
+
+	public static boolean isDebugEnabled(){
+		return ENABLED && LOG_LEVEL <= DEBUG;
+	}
+
+	public static boolean isErrorEnabled(){
+		return ENABLED && LOG_LEVEL <= ERROR;
+	}
+
+	/**
+	 * Writes the lines from a background thread, or again from the logging thread. Turning it off
+	 * flushes the lines buffered so far. A single sink, with its writer thread and shutdown hook, is
+	 * created the first time it is turned on and reused afterwards.
+	 */
+	public static synchronized void setAsync(boolean async){
+		if(async && asyncSink == null){
+			if(createdSink == null)
+				createdSink = new AsyncLogSink(System.out, ASYNC_BUFFER_SIZE);
+			asyncSink = createdSink;
+		} else if(!async && asyncSink != null){
+			AsyncLogSink sink = asyncSink;
+			asyncSink = null;
+			sink.flush();
+		}
+	}
+
 	public static void debug(String name, String message){
-		if(!ENABLED)
-			return;
-		if(Logger.LOG_LEVEL <= Logger.DEBUG)
-			System.out.println(df.format(CloudSim.clock())+" : "+name+" : "+message);
+		if(isDebugEnabled())
+			write(name, message);
 	}
+
+	public static void debug(String name, Supplier<String> message){
+		if(isDebugEnabled())
+			write(name, message.get());
+	}
+
+	public static void debug(String name, String format, Object... args){
+		if(isDebugEnabled())
+			write(name, String.format(format, args));
+	}
+
 	public static void error(String name, String message){
-		if(!ENABLED)
-			return;
-		if(Logger.LOG_LEVEL <= Logger.ERROR)
-			System.out.println(df.format(CloudSim.clock())+" : "+name+" : "+message);
+		if(isErrorEnabled())
+			write(name, message);
 	}
-	
+
+	public static void error(String name, Supplier<String> message){
+		if(isErrorEnabled())
+			write(name, message.get());
+	}
+
+	public static void error(String name, String format, Object... args){
+		if(isErrorEnabled())
+			write(name, String.format(format, args));
+	}
+
+	private static void write(String name, String message){
+		double clock = CloudSim.clock();
+		AsyncLogSink sink = asyncSink;
+		if(sink != null)
+			sink.append(clock, name, message);
+		else
+			System.out.println(formatLine(clock, name, message));
+	}
+
+	static String formatLine(double clock, String name, String message){
+		return df.get().format(clock)+" : "+name+" : "+message;
+	}
+
 }
@@ -0,0 +1,223 @@
+package org.fog.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudbus.cloudsim.Vm;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimulationContext;
+import org.fog.application.AppModule;
+import org.fog.entities.FogDevice;
+
+/**
+ * Samples the state of the fog devices every {@link Config#SAMPLING_INTERVAL} of simulation time,
+ * and writes the samples to {@link Config#SAMPLES_FILE} as CSV at the end of the simulation, with one
+ * row per sampling time and one column per metric of a device:
+ * <ul>
+ * <li>the bytes sent on the uplink, the downlinks and the cluster links, and the tuples received,
+ * since the previous sample;</li>
+ * <li>the number of tuples waiting in the north, south and cluster tuple queues;</li>
+ * <li>the CPU utilization and the power of the device;</li>
+ * <li>the number of tuples in each module of the device.</li>
+ * </ul>
+ * No event is added to the simulation: a device takes its samples when it processes an event, for
+ * the sampling times elapsed since its previous event, during which its state did not change. The
+ * devices with no more events are brought up to date when the samples are written.
+ * <p>
+ * The samples are kept in a ring buffer of {@link Config#SAMPLE_CAPACITY} rows, one array of doubles
+ * per metric, so that the oldest rows are overwritten on long runs.
+ */
+public class MetricsSampler implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] DEVICE_METRICS = {"uplinkBytes", "downlinkBytes", "clusterLinkBytes",
+            "tupleArrivals", "northQueue", "southQueue", "clusterQueue", "cpuUtilization", "power"};
+
+    private final double interval;
+
+    private final int capacity;
+
+    private final List<String> columnNames = new ArrayList<String>();
+
+    private final List<double[]> columns = new ArrayList<double[]>();
+
+    /** The index of the first sample of each column, as columns are added as modules appear. */
+    private long[] columnFirstSamples = new long[16];
+
+    /** The index of the last sample taken, -1 before the first one. */
+    private long lastSample = -1;
+
+    private final Map<Integer, DeviceSamples> devices = new HashMap<Integer, DeviceSamples>();
+
+    /**
+     * The sampling state of a device.
+     */
+    private static class DeviceSamples implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /** The index of the next sample of the device. */
+        long nextSample;
+        /** The first of the columns of the device metrics. */
+        int firstColumn;
+        /** The counters of the device at its previous sample. */
+        double uplinkBytes, downlinkBytes, clusterLinkBytes, tupleArrivals;
+        final Map<String, Integer> moduleColumns = new HashMap<String, Integer>();
+    }
+
+    public static MetricsSampler getInstance() {
+        SimulationContext context = SimulationContext.current();
+        MetricsSampler instance = context.getComponent(MetricsSampler.class);
+        if (instance == null) {
+            instance = new MetricsSampler(Config.SAMPLING_INTERVAL, Config.SAMPLE_CAPACITY);
+            context.setComponent(MetricsSampler.class, instance);
+        }
+        return instance;
+    }
+
+    private MetricsSampler(double interval, int capacity) {
+        if (interval > 0 && capacity < 1)
+            throw new IllegalArgumentException("The sample capacity should be positive, but is:" + capacity);
+        this.interval = interval;
+        this.capacity = capacity;
+    }
+
+    public boolean isEnabled() {
+        return interval > 0;
+    }
+
+    /**
+     * Takes the samples of a device due by the current time. Called by a device before it processes
+     * an event, so that the samples show the state the device has had since its previous event.
+     */
+    public void sample(FogDevice device) {
+        if (interval <= 0)
+            return;
+        long dueSample = (long) Math.floor(CloudSim.clock() / interval);
+        DeviceSamples samples = devices.get(device.getId());
+        if (samples == null) {
+            samples = new DeviceSamples();
+            samples.nextSample = dueSample;
+            samples.firstColumn = columns.size();
+            for (String metric : DEVICE_METRICS)
+                addColumn(device.getName() + "." + metric, dueSample);
+            devices.put(device.getId(), samples);
+        }
+        if (samples.nextSample > dueSample)
+            return;
+
+        // the counters only changed before the first of the samples due
+        int column = samples.firstColumn;
+        double uplinkBytes = device.getUplinkSentBytes();
+        double downlinkBytes = device.getDownlinkSentBytes();
+        double clusterLinkBytes = device.getClusterLinkSentBytes();
+        double tupleArrivals = device.getTupleArrivalCount();
+        put(column++, samples.nextSample, dueSample, uplinkBytes - samples.uplinkBytes, 0);
+        put(column++, samples.nextSample, dueSample, downlinkBytes - samples.downlinkBytes, 0);
+        put(column++, samples.nextSample, dueSample, clusterLinkBytes - samples.clusterLinkBytes, 0);
+        put(column++, samples.nextSample, dueSample, tupleArrivals - samples.tupleArrivals, 0);
+        samples.uplinkBytes = uplinkBytes;
+        samples.downlinkBytes = downlinkBytes;
+        samples.clusterLinkBytes = clusterLinkBytes;
+        samples.tupleArrivals = tupleArrivals;
+
+        double northQueue = device.getNorthTupleQueue().size();
+        double southQueue = device.getSouthTupleQueue().size();
+        double clusterQueue = device.getClusterTupleQueue().size();
+        double utilization = device.getLastUtilization();
+        put(column++, samples.nextSample, dueSample, northQueue, northQueue);
+        put(column++, samples.nextSample, dueSample, southQueue, southQueue);
+        put(column++, samples.nextSample, dueSample, clusterQueue, clusterQueue);
+        put(column++, samples.nextSample, dueSample, utilization, utilization);
+        double power = device.getHost().getPowerModel().getPower(utilization);
+        put(column, samples.nextSample, dueSample, power, power);
+
+        for (Vm vm : device.getHost().getVmList()) {
+            if (!(vm instanceof AppModule))
+                continue;
+            String moduleName = ((AppModule) vm).getName();
+            Integer moduleColumn = samples.moduleColumns.get(moduleName);
+            if (moduleColumn == null) {
+                moduleColumn = columns.size();
+                addColumn(device.getName() + ".module." + moduleName + ".tuples", samples.nextSample);
+                samples.moduleColumns.put(moduleName, moduleColumn);
+            }
+            double tuples = vm.getCloudletScheduler().runningCloudlets();
+            put(moduleColumn, samples.nextSample, dueSample, tuples, tuples);
+        }
+
+        samples.nextSample = dueSample + 1;
+        lastSample = Math.max(lastSample, dueSample);
+    }
+
+    /**
+     * Sets the samples of a column from one index to another.
+     *
+     * @param first the value of the first sample
+     * @param others the value of the following samples
+     */
+    private void put(int column, long from, long to, double first, double others) {
+        double[] values = columns.get(column);
+        // only the last rows of the range remain in the ring
+        for (long sample = Math.max(from, to - capacity + 1); sample <= to; sample++)
+            values[(int) (sample % capacity)] = sample == from ? first : others;
+    }
+
+    private void addColumn(String name, long firstSample) {
+        if (columns.size() == columnFirstSamples.length)
+            columnFirstSamples = Arrays.copyOf(columnFirstSamples, columnFirstSamples.length * 2);
+        columnFirstSamples[columns.size()] = firstSample;
+        columnNames.add(name);
+        columns.add(new double[capacity]);
+    }
+
+    /**
+     * Takes the samples due by the current time of the given devices, and writes all the samples to
+     * {@link Config#SAMPLES_FILE}. Nothing is done if sampling is off.
+     */
+    public void writeSamples(List<FogDevice> fogDevices) {
+        if (interval <= 0)
+            return;
+        for (FogDevice fogDevice : fogDevices)
+            sample(fogDevice);
+        try {
+            PrintWriter out = new PrintWriter(new File(Config.SAMPLES_FILE), "UTF-8");
+            try {
+                writeCsv(out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the samples in the ring buffer, with an empty value for the samples taken before a
+     * column was added.
+     */
+    public void writeCsv(PrintWriter out) {
+        StringBuilder line = new StringBuilder("time");
+        for (String columnName : columnNames)
+            line.append(',').append(columnName);
+        out.println(line);
+        for (long sample = Math.max(0, lastSample - capacity + 1); sample <= lastSample; sample++) {
+            line.setLength(0);
+            line.append(sample * interval);
+            int row = (int) (sample % capacity);
+            for (int column = 0; column < columns.size(); column++) {
+                line.append(',');
+                if (sample >= columnFirstSamples[column])
+                    line.append(columns.get(column)[row]);
+            }
+            out.println(line);
+        }
+    }
+}
@@ -1,14 +1,29 @@
 package org.fog.utils;
 
+import org.cloudbus.cloudsim.core.SimulationContext;
+
 public class MigrationDelayMonitor {
 	
-	private static double migrationDelay = 0.0;
+	private double migrationDelay = 0.0;
+	
+	/**
+	 * Gets the monitor of the current simulation context.
+	 */
+	private static MigrationDelayMonitor getInstance(){
+		SimulationContext context = SimulationContext.current();
+		MigrationDelayMonitor instance = context.getComponent(MigrationDelayMonitor.class);
+		if(instance == null){
+			instance = new MigrationDelayMonitor();
+			context.setComponent(MigrationDelayMonitor.class, instance);
+		}
+		return instance;
+	}
 	
 	public static double getMigrationDelay() {
-		return migrationDelay;
+		return getInstance().migrationDelay;
 	}
 
 	public static void setMigrationDelay(double migrationDelayReceived) {
-		migrationDelay += migrationDelayReceived;
+		getInstance().migrationDelay += migrationDelayReceived;
 	}
 }
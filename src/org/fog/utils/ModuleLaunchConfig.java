@@ -1,8 +1,13 @@
 package org.fog.utils;
 
+import java.io.Serializable;
+
 import org.fog.application.AppModule;
 
-public class ModuleLaunchConfig {
+public class ModuleLaunchConfig implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
 
 	private AppModule module;
 	private int instanceCount;
@@ -1,18 +1,54 @@
 package org.fog.utils;
 
-public class NetworkUsageMonitor {
+import java.io.Serializable;
+import java.util.List;
 
-	private static double networkUsage = 0.0;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimulationContext;
+import org.fog.entities.FogDevice;
+import org.fog.entities.SharedLink;
+
+public class NetworkUsageMonitor implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	private double networkUsage = 0.0;
+	
+	/**
+	 * Gets the monitor of the current simulation context.
+	 */
+	private static NetworkUsageMonitor getInstance(){
+		SimulationContext context = SimulationContext.current();
+		NetworkUsageMonitor instance = context.getComponent(NetworkUsageMonitor.class);
+		if(instance == null){
+			instance = new NetworkUsageMonitor();
+			context.setComponent(NetworkUsageMonitor.class, instance);
+		}
+		return instance;
+	}
 	
 	public static void sendingTuple(double latency, double tupleNwSize){
-		networkUsage += latency*tupleNwSize;
+		if(TimeKeeper.getInstance().isMeasuring())
+			getInstance().networkUsage += latency*tupleNwSize;
 	}
 	
 	public static void sendingModule(double latency, long moduleSize){
-		networkUsage += latency*moduleSize;
+		if(TimeKeeper.getInstance().isMeasuring())
+			getInstance().networkUsage += latency*moduleSize;
 	}
 	
 	public static double getNetworkUsage(){
-		return networkUsage;
+		return getInstance().networkUsage;
+	}
+	
+	/**
+	 * Prints the fraction of time each shared link of the given devices was transmitting. Nothing is
+	 * printed with the FIFO link model.
+	 */
+	public static void printLinkUtilizations(List<FogDevice> fogDevices){
+		for(FogDevice fogDevice : fogDevices)
+			for(SharedLink link : fogDevice.getSharedLinks())
+				System.out.println("Utilization of link "+link.getName()+" = "+link.getUtilization(CloudSim.clock()));
 	}
 }
@@ -1,6 +1,11 @@
 package org.fog.utils;
 
-public class OperatorEdge {
+import java.io.Serializable;
+
+public class OperatorEdge implements Serializable {
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	
 	private String src;
 	private String dst;
@@ -1,6 +1,11 @@
 package org.fog.utils;
 
-public class ResourceUsageDetails {
+import java.io.Serializable;
+
+public class ResourceUsageDetails implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
 
 	private double mips;
 	private double uplinkBandwidth;
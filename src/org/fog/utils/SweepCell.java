@@ -0,0 +1,207 @@
+package org.fog.utils;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.cloudbus.cloudsim.core.SimulationContext;
+import org.fog.entities.FogDevice;
+import org.fog.entities.SharedLink;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Runs one cell of a parameter sweep: sets static fields of a scenario, runs its main method and
+ * writes the metrics of the simulation to a properties file. It is started in its own JVM by
+ * {@link SweepRunner}, since the scenarios keep their settings in static fields and the controllers
+ * end the JVM when the simulation stops; the metrics are therefore written from a shutdown hook. They
+ * are read when the simulation finishes or, if a controller ends the JVM first, from the hook. A
+ * scenario whose simulation does not finish, e.g. because its main method caught an exception, is
+ * recorded as failed.
+ * <p>
+ * Usage: <tt>SweepCell resultFile mainClass [field=value ...]</tt>. A field is either a static field
+ * of the main class, given by its simple name, or a static field of another class, given by its fully
+ * qualified name, such as <tt>org.fog.utils.Config.MAX_SIMULATION_TIME</tt>. A value may also be a
+ * constant of another class, such as <tt>org.fog.placement.PlacementLogicFactory.EDGEWARDS</tt>.
+ */
+public class SweepCell {
+
+    /** The key under which the wall-clock run time of the cell, in milliseconds, is written. */
+    public static final String WALL_TIME = "wallTimeMs";
+
+    private static volatile boolean failed = false;
+
+    /** The metrics of the simulation, once it has finished. */
+    private static volatile Properties metrics = null;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: SweepCell resultFile mainClass [field=value ...]");
+            System.exit(2);
+        }
+        final File resultFile = new File(args[0]);
+        Class<?> mainClass = Class.forName(args[1]);
+        for (int i = 2; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            if (separator <= 0)
+                throw new IllegalArgumentException("Parameter should be field=value, but is:" + args[i]);
+            setField(mainClass, args[i].substring(0, separator).trim(), args[i].substring(separator + 1).trim());
+        }
+
+        final long start = System.currentTimeMillis();
+        // the metrics are read before the entities of a finished simulation are discarded
+        SimulationContext.current().addFinishListener(new Runnable() {
+            @Override
+            public void run() {
+                metrics = collectMetrics(System.currentTimeMillis() - start);
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                if (failed)
+                    return;
+                Properties finished = metrics;
+                // a controller stopping the simulation ends the JVM while the simulation still runs
+                if (finished == null && CloudSim.running())
+                    finished = collectMetrics(System.currentTimeMillis() - start);
+                if (finished != null)
+                    writeMetrics(resultFile, finished);
+            }
+        });
+
+        Method main = mainClass.getMethod("main", String[].class);
+        try {
+            main.invoke(null, (Object) new String[0]);
+        } catch (InvocationTargetException e) {
+            failed = true;
+            e.getCause().printStackTrace();
+            System.exit(1);
+        }
+        if (metrics == null) {
+            // the scenarios catch their own exceptions, in which case the simulation does not finish
+            failed = true;
+            System.err.println("The simulation of " + mainClass.getName() + " did not finish");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Sets a static field from its string value.
+     *
+     * @param mainClass the class of simple field names
+     * @param name      the simple or fully qualified field name
+     * @param value     the value
+     */
+    static void setField(Class<?> mainClass, String name, String value) throws ReflectiveOperationException {
+        Field field = findField(mainClass, name);
+        if (!Modifier.isStatic(field.getModifiers()))
+            throw new IllegalArgumentException("Field should be static:" + name);
+        field.setAccessible(true);
+        if (Modifier.isFinal(field.getModifiers())) {
+            // constants are inlined by the compiler, so setting them would be silently ignored
+            throw new IllegalArgumentException("Field should not be final:" + name);
+        }
+        field.set(null, parseValue(mainClass, field.getType(), value));
+    }
+
+    private static Field findField(Class<?> mainClass, String name) throws ReflectiveOperationException {
+        int dot = name.lastIndexOf('.');
+        if (dot < 0)
+            return mainClass.getDeclaredField(name);
+        return Class.forName(name.substring(0, dot)).getDeclaredField(name.substring(dot + 1));
+    }
+
+    private static Object parseValue(Class<?> mainClass, Class<?> type, String value) throws ReflectiveOperationException {
+        if (!value.isEmpty() && Character.isJavaIdentifierStart(value.charAt(0))
+                && value.indexOf('.') > 0 && type != String.class) {
+            // a constant of another class
+            Field constant = findField(mainClass, value);
+            constant.setAccessible(true);
+            return constant.get(null);
+        }
+        if (type == int.class || type == Integer.class)
+            return Integer.valueOf(value);
+        if (type == long.class || type == Long.class)
+            return Long.valueOf(value);
+        if (type == double.class || type == Double.class)
+            return Double.valueOf(value);
+        if (type == boolean.class || type == Boolean.class)
+            return Boolean.valueOf(value);
+        if (type == String.class)
+            return value;
+        throw new IllegalArgumentException("Unsupported field type:" + type.getName());
+    }
+
+    /**
+     * Collects the metrics reported by the controllers: the average delay of each application loop,
+     * the average CPU time of each tuple type and their percentiles, the number of tuple times evicted
+     * after their time-to-live, the network usage, the energy consumed by the fog devices, the cost
+     * of execution in the cloud and the utilization of the shared links. The entities of the
+     * simulation must not have been discarded yet.
+     */
+    private static Properties collectMetrics(long wallTime) {
+        Properties metrics = new Properties();
+        metrics.setProperty(WALL_TIME, String.valueOf(wallTime));
+
+        TimeKeeper timeKeeper = TimeKeeper.getInstance();
+        for (Map.Entry<Integer, Double> loop : timeKeeper.getLoopIdToCurrentAverage().entrySet())
+            metrics.setProperty("loopDelay." + loop.getKey(), String.valueOf(loop.getValue()));
+        for (Map.Entry<String, Double> tupleType : timeKeeper.getTupleTypeToAverageCpuTime().entrySet())
+            metrics.setProperty("tupleCpuTime." + tupleType.getKey(), String.valueOf(tupleType.getValue()));
+        for (Map.Entry<Integer, LatencyHistogram> loop : timeKeeper.getLoopIdToDelayHistogram().entrySet())
+            putPercentiles(metrics, "loopDelay." + loop.getKey(), loop.getValue());
+        for (Map.Entry<String, LatencyHistogram> tupleType : timeKeeper.getTupleTypeToCpuTimeHistogram().entrySet())
+            putPercentiles(metrics, "tupleCpuTime." + tupleType.getKey(), tupleType.getValue());
+        metrics.setProperty("evictedTupleTimes", String.valueOf(timeKeeper.getEvictedTupleTimeCount()));
+        metrics.setProperty("networkUsage", String.valueOf(NetworkUsageMonitor.getNetworkUsage() / Config.MAX_SIMULATION_TIME));
+
+        double energy = 0;
+        for (SimEntity entity : CloudSim.getEntityList()) {
+            if (!(entity instanceof FogDevice))
+                continue;
+            FogDevice fogDevice = (FogDevice) entity;
+            energy += fogDevice.getEnergyConsumption();
+            for (SharedLink link : fogDevice.getSharedLinks())
+                metrics.setProperty("linkUtilization." + link.getName(), String.valueOf(link.getUtilization(CloudSim.clock())));
+            if (fogDevice.getName().equals("cloud"))
+                metrics.setProperty("cloudCost", String.valueOf(fogDevice.getTotalCost()));
+        }
+        metrics.setProperty("energy", String.valueOf(energy));
+        return metrics;
+    }
+
+    /**
+     * Writes the metrics of the simulation to the result file.
+     */
+    private static void writeMetrics(File resultFile, Properties metrics) {
+        // written next to the result file and renamed, so that a partial file is never read
+        File partial = new File(resultFile.getPath() + ".partial");
+        try {
+            OutputStream out = new FileOutputStream(partial);
+            try {
+                metrics.store(out, null);
+            } finally {
+                out.close();
+            }
+            if (!partial.renameTo(resultFile))
+                throw new IOException("Cannot rename " + partial + " to " + resultFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void putPercentiles(Properties metrics, String name, LatencyHistogram histogram) {
+        metrics.setProperty(name + ".p50", String.valueOf(histogram.getPercentile(50)));
+        metrics.setProperty(name + ".p95", String.valueOf(histogram.getPercentile(95)));
+        metrics.setProperty(name + ".p99", String.valueOf(histogram.getPercentile(99)));
+        metrics.setProperty(name + ".max", String.valueOf(histogram.getMax()));
+    }
+}
@@ -0,0 +1,351 @@
+package org.fog.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a scenario over a grid of parameters, each cell of the grid in its own JVM, several cells at
+ * a time. The grid file has one line per parameter, giving the values to sweep:
+ *
+ * <pre>
+ * # comment
+ * numOfDepts = 1, 2, 4
+ * org.fog.utils.Config.MAX_SIMULATION_TIME = 1000, 2000
+ * </pre>
+ *
+ * Parameters are static fields, as described in {@link SweepCell}. One row is appended to the CSV
+ * results file when a cell completes, with the parameters, the wall-clock run time and the metrics
+ * of the cell. The columns are those of the first completed cell, and the file is rewritten at the
+ * end of the sweep if later cells reported more metrics. The results file is also the
+ * checkpoint of the sweep: running the sweep again skips the cells it already holds, so an
+ * interrupted sweep resumes where it stopped and failed cells are retried. The output of each cell
+ * is kept in a directory next to the results file.
+ * <p>
+ * Usage: <tt>SweepRunner mainClass gridFile resultsFile [workers]</tt>. The workers default to the
+ * number of processors.
+ */
+public class SweepRunner {
+
+    private final String mainClass;
+
+    private final Map<String, List<String>> grid;
+
+    private final File resultsFile;
+
+    private final File cellDir;
+
+    private final int workers;
+
+    /** The columns of the results file, or null until the first row is written. */
+    private List<String> columns;
+
+    /** The metrics of the cells completed by this run. */
+    private final Map<List<String>, Properties> completedMetrics = new HashMap<List<String>, Properties>();
+
+    /** Whether some cells of this run reported metrics that have no column. */
+    private boolean metricsMissing = false;
+
+    public SweepRunner(String mainClass, Map<String, List<String>> grid, File resultsFile, int workers) {
+        if (workers < 1)
+            throw new IllegalArgumentException("The number of workers should be positive, but is:" + workers);
+        this.mainClass = mainClass;
+        this.grid = grid;
+        this.resultsFile = resultsFile;
+        this.cellDir = new File(resultsFile.getPath() + ".cells");
+        this.workers = workers;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: SweepRunner mainClass gridFile resultsFile [workers]");
+            System.exit(2);
+        }
+        int workers = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        new SweepRunner(args[0], readGrid(new File(args[1])), new File(args[2]), workers).run();
+    }
+
+    /**
+     * Reads a grid file.
+     *
+     * @param gridFile the grid file
+     * @return the values of each parameter, in file order
+     */
+    public static Map<String, List<String>> readGrid(File gridFile) throws IOException {
+        Map<String, List<String>> grid = new LinkedHashMap<String, List<String>>();
+        BufferedReader reader = new BufferedReader(new FileReader(gridFile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                int separator = line.indexOf('=');
+                if (separator <= 0)
+                    throw new IllegalArgumentException("Grid line should be name = value, ..., but is:" + line);
+                List<String> values = new ArrayList<String>();
+                for (String value : line.substring(separator + 1).split(","))
+                    values.add(value.trim());
+                grid.put(line.substring(0, separator).trim(), values);
+            }
+        } finally {
+            reader.close();
+        }
+        return grid;
+    }
+
+    /**
+     * Gets the cells of a grid, the last parameter varying fastest.
+     *
+     * @param grid the values of each parameter
+     * @return the values of the parameters in each cell
+     */
+    public static List<List<String>> cells(Map<String, List<String>> grid) {
+        List<List<String>> cells = new ArrayList<List<String>>();
+        cells.add(new ArrayList<String>());
+        for (List<String> values : grid.values()) {
+            List<List<String>> expanded = new ArrayList<List<String>>();
+            for (List<String> cell : cells) {
+                for (String value : values) {
+                    List<String> next = new ArrayList<String>(cell);
+                    next.add(value);
+                    expanded.add(next);
+                }
+            }
+            cells = expanded;
+        }
+        return cells;
+    }
+
+    /**
+     * Runs the cells that are not in the results file yet and waits for them to complete.
+     */
+    public void run() throws IOException, InterruptedException {
+        Set<List<String>> done = readCompletedCells();
+        if (!cellDir.isDirectory() && !cellDir.mkdirs())
+            throw new IOException("Cannot create " + cellDir);
+
+        final List<List<String>> cells = cells(grid);
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        int submitted = 0;
+        for (int i = 0; i < cells.size(); i++) {
+            if (done.contains(cells.get(i)))
+                continue;
+            final int index = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runCell(index, cells.get(index));
+                    } catch (Exception e) {
+                        System.err.println("Cell " + index + " " + cells.get(index) + " failed: " + e);
+                    }
+                }
+            });
+            submitted++;
+        }
+        System.out.println("Running " + submitted + " of " + cells.size() + " cells on " + workers + " workers");
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        System.out.println(completedMetrics.size() + " of " + submitted + " cells completed");
+        if (metricsMissing)
+            addMissingColumns();
+    }
+
+    private void runCell(int index, List<String> values) throws IOException, InterruptedException {
+        File metricsFile = new File(cellDir, "cell-" + index + ".properties");
+        File logFile = new File(cellDir, "cell-" + index + ".log");
+        metricsFile.delete();
+
+        List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SweepCell.class.getName());
+        command.add(metricsFile.getPath());
+        command.add(mainClass);
+        int i = 0;
+        for (String name : grid.keySet())
+            command.add(name + "=" + values.get(i++));
+
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(logFile)
+                .start();
+        int exitValue = process.waitFor();
+        if (!metricsFile.exists()) {
+            System.err.println("Cell " + index + " " + values + " failed with exit value " + exitValue + ", see " + logFile);
+            return;
+        }
+
+        Properties metrics = new Properties();
+        InputStream in = new FileInputStream(metricsFile);
+        try {
+            metrics.load(in);
+        } finally {
+            in.close();
+        }
+        writeRow(values, metrics);
+        System.out.println("Cell " + index + " " + values + " completed in " + metrics.getProperty(SweepCell.WALL_TIME) + " ms");
+    }
+
+    /**
+     * Appends the row of a completed cell to the results file, writing the header first if the file
+     * is new.
+     */
+    private synchronized void writeRow(List<String> values, Properties metrics) throws IOException {
+        boolean header = columns == null;
+        if (header) {
+            columns = new ArrayList<String>(grid.keySet());
+            columns.add(SweepCell.WALL_TIME);
+            Set<String> names = new TreeSet<String>(metrics.stringPropertyNames());
+            names.remove(SweepCell.WALL_TIME);
+            columns.addAll(names);
+        }
+
+        if (!columns.containsAll(metrics.stringPropertyNames()))
+            metricsMissing = true;
+        completedMetrics.put(values, metrics);
+
+        List<String> row = new ArrayList<String>(values);
+        for (int i = values.size(); i < columns.size(); i++) {
+            String value = metrics.getProperty(columns.get(i));
+            row.add(value != null ? value : "");
+        }
+
+        Writer writer = new FileWriter(resultsFile, true);
+        try {
+            if (header)
+                writer.write(toCsvLine(columns));
+            writer.write(toCsvLine(row));
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Rewrites the results file with a column for every metric reported by the cells of this run.
+     * The rows of earlier runs get empty values in the new columns.
+     */
+    private void addMissingColumns() throws IOException {
+        Set<String> missing = new TreeSet<String>();
+        for (Properties metrics : completedMetrics.values())
+            missing.addAll(metrics.stringPropertyNames());
+        missing.removeAll(columns);
+        List<String> allColumns = new ArrayList<String>(columns);
+        allColumns.addAll(missing);
+
+        File rewritten = new File(resultsFile.getPath() + ".tmp");
+        BufferedReader reader = new BufferedReader(new FileReader(resultsFile));
+        Writer writer = new FileWriter(rewritten);
+        try {
+            reader.readLine();
+            writer.write(toCsvLine(allColumns));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty())
+                    continue;
+                List<String> row = parseCsvLine(line);
+                Properties metrics = completedMetrics.get(row.subList(0, grid.size()));
+                for (String name : missing) {
+                    String value = metrics != null ? metrics.getProperty(name) : null;
+                    row.add(value != null ? value : "");
+                }
+                writer.write(toCsvLine(row));
+            }
+        } finally {
+            reader.close();
+            writer.close();
+        }
+        Files.move(rewritten.toPath(), resultsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        columns = allColumns;
+    }
+
+    /**
+     * Reads the header of the results file, if any, and the parameters of the cells it holds.
+     */
+    private Set<List<String>> readCompletedCells() throws IOException {
+        Set<List<String>> done = new HashSet<List<String>>();
+        if (!resultsFile.exists() || resultsFile.length() == 0)
+            return done;
+
+        BufferedReader reader = new BufferedReader(new FileReader(resultsFile));
+        try {
+            columns = parseCsvLine(reader.readLine());
+            List<String> names = new ArrayList<String>(grid.keySet());
+            if (columns.size() < names.size() || !columns.subList(0, names.size()).equals(names))
+                throw new IllegalStateException("The parameters of " + resultsFile + " are " + columns
+                        + ", which do not match the grid " + names);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty())
+                    continue;
+                List<String> row = parseCsvLine(line);
+                if (row.size() >= names.size())
+                    done.add(new ArrayList<String>(row.subList(0, names.size())));
+            }
+        } finally {
+            reader.close();
+        }
+        return done;
+    }
+
+    static String toCsvLine(List<String> fields) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0)
+                line.append(',');
+            String field = fields.get(i);
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0)
+                line.append('"').append(field.replace("\"", "\"\"")).append('"');
+            else
+                line.append(field);
+        }
+        return line.append('\n').toString();
+    }
+
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"')
+                    field.append(c);
+                else if (i + 1 < line.length() && line.charAt(i + 1) == '"')
+                    field.append(line.charAt(++i));
+                else
+                    quoted = false;
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -1,23 +1,29 @@
 package org.fog.utils;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.util.Pair;
 import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.cloudbus.cloudsim.core.SimulationContext;
+import org.cloudbus.cloudsim.core.predicates.PredicateType;
 import org.fog.entities.Tuple;
 
-public class TimeKeeper {
+public class TimeKeeper implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
 
-	private static TimeKeeper instance;
-	
 	private long simulationStartTime;
 	private int count; 
-	private Map<Integer, Double> emitTimes;
+	private ExpiringTimeMap emitTimes;
 	private Map<Integer, Double> endTimes;
-	private Map<Integer, List<Integer>> loopIdToTupleIds;
-	private Map<Integer, Double> tupleIdToCpuStartTime;
+	private Map<Integer, Integer> loopIdToEmittedTupleCount;
+	private ExpiringTimeMap tupleIdToCpuStartTime;
 	private Map<String, Double> tupleTypeToAverageCpuTime;
 	private Map<String, Integer> tupleTypeToExecutedTupleCount;
 	
@@ -26,14 +32,41 @@ public class TimeKeeper {
 
 	private Map<Integer, Integer> loopIdToLatencyQoSSuccessCount = new HashMap<>();
 
+	// the longest loop delay and tuple CPU time seen, warmup included, from which the time-to-live of the tuple times is derived
+	private double longestLoopDelay = 0;
+	private double longestCpuTime = 0;
+
+	// distributions of the loop delays and tuple CPU times, for their percentiles
+	private Map<Integer, LatencyHistogram> loopIdToDelayHistogram = new HashMap<>();
+	private Map<String, LatencyHistogram> tupleTypeToCpuTimeHistogram = new HashMap<>();
+
 	// loopID -> < Microservice -> < deviceID, <requestCount,totalExecutionTime > >
 	private Map<Integer, Map<String, Map<Integer, Pair<Integer, Double>>>> costCalcData = new HashMap<>();
 	// last execution time
 	private Map<Integer, Double> tupleIdToExecutionTime = new HashMap<>();
+
+	// measurement window: metrics only accumulate from the warmup time until the end time
+	private double warmupTime = 0;
+	private double measurementEndTime = Double.POSITIVE_INFINITY;
+
+	// stopping rule on the confidence intervals of the loop delays, disabled when relativePrecision is 0
+	private double relativePrecision = 0;
+	private double quantile;
+	private int batchSize;
+	private int minBatches;
+	private Map<Integer, BatchMeans> loopIdToDelayBatchMeans = new HashMap<>();
+	private double convergenceTime = -1;
 	
+	/**
+	 * Gets the time keeper of the current simulation context.
+	 */
 	public static TimeKeeper getInstance(){
-		if(instance == null)
+		SimulationContext context = SimulationContext.current();
+		TimeKeeper instance = context.getComponent(TimeKeeper.class);
+		if(instance == null){
 			instance = new TimeKeeper();
+			context.setComponent(TimeKeeper.class, instance);
+		}
 		return instance;
 	}
 	
@@ -41,14 +74,34 @@ public class TimeKeeper {
 		return count++;
 	}
 	
+	/**
+	 * Records that a tuple starting an application loop is emitted.
+	 * 
+	 * @return the id of the tuple in the loop, carried as its actual tuple id
+	 */
+	public int tupleEmitted(int loopId){
+		int tupleId = getUniqueId();
+		Integer emittedCount = loopIdToEmittedTupleCount.get(loopId);
+		loopIdToEmittedTupleCount.put(loopId, emittedCount == null ? 1 : emittedCount+1);
+		emitTimes.put(tupleId, CloudSim.clock());
+		return tupleId;
+	}
+	
 	public void tupleStartedExecution(Tuple tuple){
 		tupleIdToCpuStartTime.put(tuple.getCloudletId(), CloudSim.clock());
 	}
 	
 	public void tupleEndedExecution(Tuple tuple){
-		if(!tupleIdToCpuStartTime.containsKey(tuple.getCloudletId()))
+		double startTime = tupleIdToCpuStartTime.remove(tuple.getCloudletId());
+		if(Double.isNaN(startTime))
+			return;
+		double executionTime = CloudSim.clock() - startTime;
+		if(executionTime > longestCpuTime){
+			longestCpuTime = executionTime;
+			tupleIdToCpuStartTime.setTimeToLive(getTimeToLive(executionTime));
+		}
+		if(!isMeasuring())
 			return;
-		double executionTime = CloudSim.clock() - tupleIdToCpuStartTime.get(tuple.getCloudletId());
 		if(!tupleTypeToAverageCpuTime.containsKey(tuple.getTupleType())){
 			tupleTypeToAverageCpuTime.put(tuple.getTupleType(), executionTime);
 			tupleTypeToExecutedTupleCount.put(tuple.getTupleType(), 1);
@@ -57,24 +110,224 @@ public class TimeKeeper {
 			int currentCount = tupleTypeToExecutedTupleCount.get(tuple.getTupleType());
 			tupleTypeToAverageCpuTime.put(tuple.getTupleType(), (currentAverage*currentCount+executionTime)/(currentCount+1));
 		}
+		LatencyHistogram histogram = tupleTypeToCpuTimeHistogram.get(tuple.getTupleType());
+		if(histogram == null){
+			histogram = new LatencyHistogram();
+			tupleTypeToCpuTimeHistogram.put(tuple.getTupleType(), histogram);
+		}
+		histogram.record(executionTime);
 	}
 	
-	public Map<Integer, List<Integer>> loopIdToTupleIds(){
-		return getInstance().getLoopIdToTupleIds();
+	/**
+	 * Records the delay of one run of an application loop, if the simulation is in the measurement
+	 * window, and stops the simulation once the confidence intervals of the loop delays are narrow
+	 * enough.
+	 */
+	public void loopDelayMeasured(int loopId, double delay){
+		if(delay > longestLoopDelay){
+			longestLoopDelay = delay;
+			emitTimes.setTimeToLive(getTimeToLive(delay));
+		}
+		if(!isMeasuring())
+			return;
+		if(!loopIdToCurrentAverage.containsKey(loopId)){
+			loopIdToCurrentAverage.put(loopId, 0.0);
+			loopIdToCurrentNum.put(loopId, 0);
+		}
+		double currentAverage = loopIdToCurrentAverage.get(loopId);
+		int currentCount = loopIdToCurrentNum.get(loopId);
+		double newAverage = (currentAverage*currentCount + delay)/(currentCount+1);
+		loopIdToCurrentAverage.put(loopId, newAverage);
+		loopIdToCurrentNum.put(loopId, currentCount+1);
+		LatencyHistogram histogram = loopIdToDelayHistogram.get(loopId);
+		if(histogram == null){
+			histogram = new LatencyHistogram();
+			loopIdToDelayHistogram.put(loopId, histogram);
+		}
+		histogram.record(delay);
+
+		if(relativePrecision > 0 && convergenceTime < 0){
+			BatchMeans batchMeans = loopIdToDelayBatchMeans.get(loopId);
+			if(batchMeans == null){
+				batchMeans = new BatchMeans();
+				loopIdToDelayBatchMeans.put(loopId, batchMeans);
+			}
+			if(batchMeans.add(delay, batchSize) && loopDelaysConverged()){
+				convergenceTime = CloudSim.clock();
+				stopSimulation();
+			}
+		}
 	}
-	
+
+	/**
+	 * Sets the measurement window. Loop delays, tuple CPU times, network usage and the energy and
+	 * cost of the fog devices only accumulate from the warmup time until the end time, so that the
+	 * cold start of the simulation does not bias them.
+	 * 
+	 * @param warmupTime the simulation time at which the measurements start
+	 * @param endTime the simulation time at which the measurements end
+	 */
+	public void setMeasurementWindow(double warmupTime, double endTime){
+		if(warmupTime < 0 || endTime <= warmupTime)
+			throw new IllegalArgumentException("The measurement window should be a non-empty interval of non-negative times, but is:" + warmupTime + "-" + endTime);
+		this.warmupTime = warmupTime;
+		this.measurementEndTime = endTime;
+	}
+
+	public double getWarmupTime() {
+		return warmupTime;
+	}
+
+	public double getMeasurementEndTime() {
+		return measurementEndTime;
+	}
+
+	/**
+	 * Checks if the current simulation time is in the measurement window.
+	 */
+	public boolean isMeasuring(){
+		double clock = CloudSim.clock();
+		return clock >= warmupTime && clock < measurementEndTime;
+	}
+
+	/**
+	 * Gets the part of a time interval that is in the measurement window.
+	 * 
+	 * @return the length of the intersection of the interval with the window
+	 */
+	public double getMeasuredTime(double from, double to){
+		return Math.max(0, Math.min(to, measurementEndTime) - Math.max(from, warmupTime));
+	}
+
+	/**
+	 * Stops the simulation once the delay of every loop measured so far is known with the given
+	 * relative precision. The confidence intervals are computed with the method of batch means, as
+	 * the delays of successive runs of a loop are correlated: the delays are averaged in batches,
+	 * and the batch averages are taken as independent samples. The simulation is stopped the way
+	 * controllers stop it at the end of the simulation time, so that the results are reported.
+	 * 
+	 * @param relativePrecision the maximum half-width of the confidence intervals, relative to the average delays
+	 * @param confidenceLevel the confidence level of the intervals, e.g. 0.95
+	 * @param batchSize the number of delays averaged in a batch
+	 * @param minBatches the minimum number of batches of every loop before the intervals are trusted
+	 */
+	public void setLoopDelayPrecision(double relativePrecision, double confidenceLevel, int batchSize, int minBatches){
+		if(relativePrecision <= 0 || confidenceLevel <= 0 || confidenceLevel >= 1 || batchSize < 1 || minBatches < 2)
+			throw new IllegalArgumentException("Invalid stopping rule: precision " + relativePrecision + ", confidence level " + confidenceLevel + ", batch size " + batchSize + ", minimum batches " + minBatches);
+		this.relativePrecision = relativePrecision;
+		this.quantile = new NormalDistribution().inverseCumulativeProbability(1 - (1 - confidenceLevel) / 2);
+		this.batchSize = batchSize;
+		this.minBatches = minBatches;
+	}
+
+	/**
+	 * Gets the half-width of the confidence interval of the delay of a loop.
+	 * 
+	 * @return the half-width, or NaN if no stopping rule is set or there are not enough batches yet
+	 */
+	public double getLoopDelayHalfWidth(int loopId){
+		BatchMeans batchMeans = loopIdToDelayBatchMeans.get(loopId);
+		if(batchMeans == null || batchMeans.count < minBatches)
+			return Double.NaN;
+		return batchMeans.halfWidth(quantile);
+	}
+
+	/**
+	 * Gets the simulation time at which the loop delays converged.
+	 * 
+	 * @return the time, or -1 if they have not converged
+	 */
+	public double getConvergenceTime() {
+		return convergenceTime;
+	}
+
+	private boolean loopDelaysConverged(){
+		for(BatchMeans batchMeans : loopIdToDelayBatchMeans.values()){
+			if(batchMeans.count < minBatches || batchMeans.halfWidth(quantile) > relativePrecision * Math.abs(batchMeans.mean))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Brings forward the end of the simulation scheduled by the controllers, or terminates the
+	 * simulation if none is scheduled.
+	 */
+	private void stopSimulation(){
+		boolean stopped = false;
+		PredicateType stop = new PredicateType(FogEvents.STOP_SIMULATION);
+		for(SimEntity entity : CloudSim.getEntityList()){
+			if(CloudSim.cancelAll(entity.getId(), stop)){
+				CloudSim.send(entity.getId(), entity.getId(), 0, FogEvents.STOP_SIMULATION, null);
+				stopped = true;
+			}
+		}
+		if(!stopped)
+			CloudSim.terminateSimulation(CloudSim.clock() + CloudSim.getMinTimeBetweenEvents());
+	}
+
+	/**
+	 * The batch averages of the delays of a loop, with their running mean and sum of squared
+	 * deviations.
+	 */
+	private static class BatchMeans {
+		private double batchSum;
+		private int batchCount;
+		private int count;
+		private double mean;
+		private double m2;
+
+		/**
+		 * Adds a delay to the current batch.
+		 * 
+		 * @return true if the delay completed a batch
+		 */
+		boolean add(double delay, int batchSize){
+			batchSum += delay;
+			if(++batchCount < batchSize)
+				return false;
+			double batchMean = batchSum / batchCount;
+			batchSum = 0;
+			batchCount = 0;
+			count++;
+			double deviation = batchMean - mean;
+			mean += deviation / count;
+			m2 += deviation * (batchMean - mean);
+			return true;
+		}
+
+		double halfWidth(double quantile){
+			return quantile * Math.sqrt(m2 / (count - 1) / count);
+		}
+	}
+
 	private TimeKeeper(){
 		count = 1;
-		setEmitTimes(new HashMap<Integer, Double>());
+		setEmitTimeMap(new ExpiringTimeMap(Config.TUPLE_TIME_TO_LIVE));
 		setEndTimes(new HashMap<Integer, Double>());
-		setLoopIdToTupleIds(new HashMap<Integer, List<Integer>>());
+		setLoopIdToEmittedTupleCount(new HashMap<Integer, Integer>());
 		setTupleTypeToAverageCpuTime(new HashMap<String, Double>());
 		setTupleTypeToExecutedTupleCount(new HashMap<String, Integer>());
-		setTupleIdToCpuStartTime(new HashMap<Integer, Double>());
+		setTupleIdToCpuStartTimeMap(new ExpiringTimeMap(Config.TUPLE_TIME_TO_LIVE));
 		setLoopIdToCurrentAverage(new HashMap<Integer, Double>());
 		setLoopIdToCurrentNum(new HashMap<Integer, Integer>());
 	}
 	
+	/**
+	 * Gets the time-to-live of the tuple times, given the longest time a tuple has been seen to take.
+	 */
+	private static double getTimeToLive(double longestTime){
+		return Math.max(Config.TUPLE_TIME_TO_LIVE, Config.TUPLE_TIME_TO_LIVE_FACTOR * longestTime);
+	}
+
+	/**
+	 * Gets the number of emit and CPU start times of tuples evicted because they were older than the
+	 * time-to-live; those tuples are not counted in the loop delays or CPU times if they come back.
+	 */
+	public long getEvictedTupleTimeCount(){
+		return emitTimes.getEvictedCount() + tupleIdToCpuStartTime.getEvictedCount();
+	}
+
 	public int getCount() {
 		return count;
 	}
@@ -83,11 +336,27 @@ public class TimeKeeper {
 		this.count = count;
 	}
 
+	/**
+	 * Gets the times the tuples of the application loops were emitted, by actual tuple id, as a view
+	 * of {@link #getEmitTimeMap()}.
+	 */
 	public Map<Integer, Double> getEmitTimes() {
-		return emitTimes;
+		return emitTimes.asMap();
 	}
 
 	public void setEmitTimes(Map<Integer, Double> emitTimes) {
+		setEmitTimeMap(toExpiringTimeMap(emitTimes, this.emitTimes));
+	}
+
+	/**
+	 * Gets the times the tuples of the application loops were emitted, by actual tuple id; a tuple
+	 * with no emit time, e.g. because it was evicted, has a NaN time.
+	 */
+	public ExpiringTimeMap getEmitTimeMap() {
+		return emitTimes;
+	}
+
+	public void setEmitTimeMap(ExpiringTimeMap emitTimes) {
 		this.emitTimes = emitTimes;
 	}
 
@@ -99,12 +368,15 @@ public class TimeKeeper {
 		this.endTimes = endTimes;
 	}
 
-	public Map<Integer, List<Integer>> getLoopIdToTupleIds() {
-		return loopIdToTupleIds;
+	/**
+	 * Gets the number of tuples emitted by each application loop.
+	 */
+	public Map<Integer, Integer> getLoopIdToEmittedTupleCount() {
+		return loopIdToEmittedTupleCount;
 	}
 
-	public void setLoopIdToTupleIds(Map<Integer, List<Integer>> loopIdToTupleIds) {
-		this.loopIdToTupleIds = loopIdToTupleIds;
+	public void setLoopIdToEmittedTupleCount(Map<Integer, Integer> loopIdToEmittedTupleCount) {
+		this.loopIdToEmittedTupleCount = loopIdToEmittedTupleCount;
 	}
 
 	public Map<String, Double> getTupleTypeToAverageCpuTime() {
@@ -125,14 +397,36 @@ public class TimeKeeper {
 		this.tupleTypeToExecutedTupleCount = tupleTypeToExecutedTupleCount;
 	}
 
+	/**
+	 * Gets the times the tuples started executing, by tuple id, as a view of
+	 * {@link #getTupleIdToCpuStartTimeMap()}.
+	 */
 	public Map<Integer, Double> getTupleIdToCpuStartTime() {
-		return tupleIdToCpuStartTime;
+		return tupleIdToCpuStartTime.asMap();
 	}
 
 	public void setTupleIdToCpuStartTime(Map<Integer, Double> tupleIdToCpuStartTime) {
+		setTupleIdToCpuStartTimeMap(toExpiringTimeMap(tupleIdToCpuStartTime, this.tupleIdToCpuStartTime));
+	}
+
+	public ExpiringTimeMap getTupleIdToCpuStartTimeMap() {
+		return tupleIdToCpuStartTime;
+	}
+
+	public void setTupleIdToCpuStartTimeMap(ExpiringTimeMap tupleIdToCpuStartTime) {
 		this.tupleIdToCpuStartTime = tupleIdToCpuStartTime;
 	}
 
+	/**
+	 * Copies times into a map with the time-to-live of the map they replace.
+	 */
+	private static ExpiringTimeMap toExpiringTimeMap(Map<Integer, Double> times, ExpiringTimeMap replaced) {
+		ExpiringTimeMap map = new ExpiringTimeMap(replaced != null ? replaced.getTimeToLive() : Config.TUPLE_TIME_TO_LIVE);
+		for (Map.Entry<Integer, Double> entry : times.entrySet())
+			map.put(entry.getKey(), entry.getValue());
+		return map;
+	}
+
 	public long getSimulationStartTime() {
 		return simulationStartTime;
 	}
@@ -161,6 +455,20 @@ public class TimeKeeper {
 		return loopIdToLatencyQoSSuccessCount;
 	}
 
+	/**
+	 * Gets the distributions of the delays of the application loops, by loop id.
+	 */
+	public Map<Integer, LatencyHistogram> getLoopIdToDelayHistogram() {
+		return loopIdToDelayHistogram;
+	}
+
+	/**
+	 * Gets the distributions of the CPU times of the tuples, by tuple type.
+	 */
+	public Map<String, LatencyHistogram> getTupleTypeToCpuTimeHistogram() {
+		return tupleTypeToCpuTimeHistogram;
+	}
+
 	public void addCostCalcData(List<Integer> loopIds, String microserviceName, int deviceId, int tupleId) {
 //		for (Integer loopid : loopIds) {
 //			if (costCalcData.containsKey(loopid)) {
@@ -0,0 +1,166 @@
+package org.fog.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimulationContext;
+
+/**
+ * Decides which tuples and sensor joinings a fog device acknowledges with a
+ * {@link FogEvents#TUPLE_ACK}, according to {@link Config#TUPLE_ACK_MODE}:
+ * <ul>
+ * <li>{@link #PER_TUPLE}: every tuple is acknowledged with its own event.</li>
+ * <li>{@link #COALESCED}: one acknowledgement covers all the tuples received on a link at the same
+ * time.</li>
+ * <li>{@link #REGISTERED}: acknowledgements are coalesced, and only sent to the entities that
+ * registered their interest with {@link #registerInterest(int)}.</li>
+ * </ul>
+ * None of the entities of iFogSim use the acknowledgements, so dropping them does not change the
+ * simulation; it only saves one event per received tuple. {@link #PER_TUPLE} is the default, the other
+ * modes being opted into by setting {@link Config#TUPLE_ACK_MODE}.
+ */
+public class TupleAcks implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
+	public static final int PER_TUPLE = 0;
+	public static final int COALESCED = 1;
+	public static final int REGISTERED = 2;
+
+	private final int mode;
+
+	/** The ids of the entities that want to be acknowledged. */
+	private final BitSet interested = new BitSet();
+
+	/** The last time an acknowledgement was sent on each link, keyed by receiver and sender ids. */
+	private final LinkTimes lastAckTimes = new LinkTimes();
+
+	public static TupleAcks getInstance(){
+		SimulationContext context = SimulationContext.current();
+		TupleAcks instance = context.getComponent(TupleAcks.class);
+		if(instance == null){
+			instance = new TupleAcks(Config.TUPLE_ACK_MODE);
+			context.setComponent(TupleAcks.class, instance);
+		}
+		return instance;
+	}
+
+	private TupleAcks(int mode){
+		if(mode < PER_TUPLE || mode > REGISTERED)
+			throw new IllegalArgumentException("Unknown tuple acknowledgement mode:" + mode);
+		this.mode = mode;
+	}
+
+	public int getMode() {
+		return mode;
+	}
+
+	/**
+	 * Registers the interest of an entity in the acknowledgements of the tuples it sends.
+	 *
+	 * @param entityId the id of the entity
+	 */
+	public void registerInterest(int entityId){
+		interested.set(entityId);
+	}
+
+	public boolean isInterested(int entityId){
+		return mode != REGISTERED || interested.get(entityId);
+	}
+
+	/**
+	 * Checks whether a device has to acknowledge a tuple it receives now, and records the
+	 * acknowledgement if so.
+	 *
+	 * @param receiverId the id of the device receiving the tuple
+	 * @param senderId the id of the entity that sent it
+	 * @return true if the acknowledgement has to be sent
+	 */
+	public boolean shouldAck(int receiverId, int senderId){
+		if(mode == PER_TUPLE)
+			return true;
+		if(!isInterested(senderId))
+			return false;
+		double now = CloudSim.clock();
+		return lastAckTimes.put(((long) receiverId << 32) | (senderId & 0xFFFFFFFFL), now) != now;
+	}
+
+	/**
+	 * A map from links to times, stored in primitive arrays with open addressing and linear probing,
+	 * so that recording an acknowledgement creates no object. Links are never removed.
+	 */
+	private static class LinkTimes implements Serializable {
+
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		/** The key marking a free slot; the entry of that key, if any, is stored apart. */
+		private static final long FREE = -1L;
+
+		private long[] keys = new long[64];
+
+		private double[] times = new double[64];
+
+		private int size;
+
+		private double freeKeyTime = Double.NaN;
+
+		LinkTimes(){
+			Arrays.fill(keys, FREE);
+		}
+
+		private int slotOf(long key, int length){
+			long hash = key * 0x9E3779B97F4A7C15L;
+			return (int) (hash >>> (64 - Integer.numberOfTrailingZeros(length)));
+		}
+
+		/**
+		 * Associates a time with a link.
+		 *
+		 * @return the previous time of the link, or NaN if it had none
+		 */
+		double put(long key, double time){
+			if(key == FREE){
+				double previous = freeKeyTime;
+				freeKeyTime = time;
+				return previous;
+			}
+			int mask = keys.length - 1;
+			int slot = slotOf(key, keys.length);
+			while(keys[slot] != FREE){
+				if(keys[slot] == key){
+					double previous = times[slot];
+					times[slot] = time;
+					return previous;
+				}
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			times[slot] = time;
+			if(++size > keys.length / 4 * 3)
+				grow();
+			return Double.NaN;
+		}
+
+		private void grow(){
+			long[] oldKeys = keys;
+			double[] oldTimes = times;
+			keys = new long[oldKeys.length * 2];
+			Arrays.fill(keys, FREE);
+			times = new double[oldKeys.length * 2];
+			int mask = keys.length - 1;
+			for(int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++){
+				if(oldKeys[oldSlot] == FREE)
+					continue;
+				int slot = slotOf(oldKeys[oldSlot], keys.length);
+				while(keys[slot] != FREE)
+					slot = (slot + 1) & mask;
+				keys[slot] = oldKeys[oldSlot];
+				times[slot] = oldTimes[oldSlot];
+			}
+		}
+	}
+}
@@ -1,6 +1,11 @@
 package org.fog.utils;
 
-public class TupleFinishDetails {
+import java.io.Serializable;
+
+public class TupleFinishDetails implements Serializable {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
 
 	private String queryId;
 	private int actualTupleId;
@@ -2,6 +2,9 @@ package org.fog.utils.distribution;
 
 public class DeterministicDistribution extends Distribution{
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	private double value;
 
 	public DeterministicDistribution(double value) {
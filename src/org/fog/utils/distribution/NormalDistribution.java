@@ -4,6 +4,9 @@ import java.util.Random;
 
 public class NormalDistribution extends Distribution{
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	private double mean;
 	private double stdDev;
 	
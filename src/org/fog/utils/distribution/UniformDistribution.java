@@ -2,6 +2,9 @@ package org.fog.utils.distribution;
 
 public class UniformDistribution extends Distribution{
 
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 1L;
+
 	private double min;
 	private double max;
 	
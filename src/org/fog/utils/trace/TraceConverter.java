@@ -0,0 +1,120 @@
+package org.fog.utils.trace;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Converts a trace written by {@link TraceRecorder} to CSV, or to the JSON trace event format read by
+ * chrome://tracing and Perfetto. In the JSON trace, every entity is a process, tuple executions are
+ * asynchronous slices named after their module, and the other events are instants; the simulation
+ * time, in milliseconds, is written as microseconds so that one unit of simulation time reads as one
+ * millisecond.
+ * <p>
+ * Usage: <tt>TraceConverter traceFile outputFile</tt>. The output is JSON if its name ends with
+ * <tt>.json</tt>, and CSV otherwise.
+ */
+public class TraceConverter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: TraceConverter traceFile outputFile");
+            System.exit(2);
+        }
+        TraceReader reader = new TraceReader(new File(args[0]));
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[1]), StandardCharsets.UTF_8));
+        try {
+            if (args[1].endsWith(".json"))
+                writeJson(reader, out);
+            else
+                writeCsv(reader, out);
+        } finally {
+            out.close();
+        }
+        System.out.println("Converted " + reader.getRecordCount() + " records");
+    }
+
+    public static void writeCsv(TraceReader reader, Writer out) throws IOException {
+        out.write("time,type,entity,tupleId,otherId,tupleType,module,value\n");
+        reader.rewind();
+        while (reader.next()) {
+            out.write(reader.getTime() + "," + TraceRecorder.getTypeName(reader.getType()) + ","
+                    + csv(reader.getEntityName(reader.getEntityId())) + "," + reader.getTupleId() + ","
+                    + reader.getOtherId() + "," + csv(reader.getString(reader.getTupleTypeId())) + ","
+                    + csv(reader.getString(reader.getModuleId())) + "," + reader.getValue() + "\n");
+        }
+    }
+
+    public static void writeJson(TraceReader reader, Writer out) throws IOException {
+        out.write("{\"traceEvents\":[\n");
+        boolean first = true;
+        reader.rewind();
+        while (reader.next()) {
+            int type = reader.getType();
+            String module = reader.getString(reader.getModuleId());
+            String tupleType = reader.getString(reader.getTupleTypeId());
+            StringBuilder event = new StringBuilder();
+            event.append(first ? "" : ",\n");
+            if (type == TraceRecorder.EXECUTION_START || type == TraceRecorder.EXECUTION_END) {
+                event.append("{\"name\":").append(json(module))
+                        .append(",\"cat\":\"execution\",\"ph\":\"").append(type == TraceRecorder.EXECUTION_START ? 'b' : 'e')
+                        .append("\",\"id\":").append(reader.getTupleId());
+            } else {
+                event.append("{\"name\":").append(json(TraceRecorder.getTypeName(type)))
+                        .append(",\"cat\":\"event\",\"ph\":\"i\",\"s\":\"p\"");
+            }
+            event.append(",\"ts\":").append(reader.getTime() * 1000)
+                    .append(",\"pid\":").append(reader.getEntityId())
+                    .append(",\"tid\":0,\"args\":{\"tupleId\":").append(reader.getTupleId())
+                    .append(",\"otherId\":").append(reader.getOtherId())
+                    .append(",\"tupleType\":").append(json(tupleType))
+                    .append(",\"module\":").append(json(module))
+                    .append(",\"value\":").append(reader.getValue())
+                    .append("}}");
+            out.write(event.toString());
+            first = false;
+        }
+        // names the processes after the entities
+        reader.rewind();
+        Set<Integer> named = new HashSet<Integer>();
+        while (reader.next()) {
+            int entityId = reader.getEntityId();
+            if (named.add(entityId)) {
+                out.write((first ? "" : ",\n") + "{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":" + entityId
+                        + ",\"args\":{\"name\":" + json(reader.getEntityName(entityId)) + "}}");
+                first = false;
+            }
+        }
+        out.write("\n]}\n");
+    }
+
+    private static String csv(String value) {
+        if (value == null)
+            return "";
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0)
+            return value;
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String json(String value) {
+        if (value == null)
+            return "null";
+        StringBuilder result = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                result.append('\\').append(c);
+            else if (c < 0x20)
+                result.append(String.format("\\u%04x", (int) c));
+            else
+                result.append(c);
+        }
+        return result.append('"').toString();
+    }
+}
@@ -0,0 +1,192 @@
+package org.fog.utils.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads a trace written by {@link TraceRecorder}. The records are read in place from the mapped file
+ * through a cursor:
+ * <pre>
+ * TraceReader reader = new TraceReader(file);
+ * while (reader.next())
+ *     ... reader.getTime(), reader.getType(), ...
+ * </pre>
+ * A trace that was not closed has no string table; its records are read up to the first empty one,
+ * and its strings and entities are named after their ids.
+ */
+public class TraceReader {
+
+    private final long recordCount;
+
+    private final String[] strings;
+
+    private final Map<Integer, String> entityNames = new HashMap<Integer, String>();
+
+    /** The mapped chunks of the records, each holding a whole number of records. */
+    private final MappedByteBuffer[] chunks;
+
+    /** The index of the current record, -1 before the first one. */
+    private long index = -1;
+
+    private MappedByteBuffer chunk;
+
+    private int offset;
+
+    public TraceReader(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TraceRecorder.HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[TraceRecorder.MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, TraceRecorder.MAGIC))
+                throw new IOException(file + " is not a fog trace");
+            int version = header.getInt();
+            int recordSize = header.getInt();
+            if (version != TraceRecorder.VERSION || recordSize != TraceRecorder.RECORD_SIZE)
+                throw new IOException("Unsupported trace version " + version + " with records of " + recordSize + " bytes");
+            long count = header.getLong();
+            long stringsOffset = header.getLong();
+            long recordsEnd = stringsOffset > 0 ? stringsOffset : channel.size();
+
+            int recordsPerChunk = TraceRecorder.CHUNK_SIZE / TraceRecorder.RECORD_SIZE;
+            long available = (recordsEnd - TraceRecorder.HEADER_SIZE) / TraceRecorder.RECORD_SIZE;
+            chunks = new MappedByteBuffer[(int) ((available + recordsPerChunk - 1) / recordsPerChunk)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = TraceRecorder.HEADER_SIZE + (long) i * TraceRecorder.CHUNK_SIZE;
+                long size = Math.min(TraceRecorder.CHUNK_SIZE, (available - (long) i * recordsPerChunk) * TraceRecorder.RECORD_SIZE);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+                chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            if (stringsOffset > 0) {
+                recordCount = count;
+                MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, stringsOffset, channel.size() - stringsOffset);
+                table.order(ByteOrder.LITTLE_ENDIAN);
+                strings = new String[table.getInt()];
+                for (int i = 0; i < strings.length; i++) {
+                    byte[] bytes = new byte[table.getInt()];
+                    table.get(bytes);
+                    strings[i] = new String(bytes, StandardCharsets.UTF_8);
+                }
+                int entityCount = table.getInt();
+                for (int i = 0; i < entityCount; i++) {
+                    int entityId = table.getInt();
+                    entityNames.put(entityId, strings[table.getInt()]);
+                }
+            } else {
+                strings = null;
+                recordCount = countWrittenRecords(available);
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Counts the records of a trace that was not closed, which are followed by empty records.
+     */
+    private long countWrittenRecords(long available) {
+        long low = 0, high = available;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            seek(middle);
+            if (getType() != 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private void seek(long record) {
+        int recordsPerChunk = TraceRecorder.CHUNK_SIZE / TraceRecorder.RECORD_SIZE;
+        chunk = chunks[(int) (record / recordsPerChunk)];
+        offset = (int) (record % recordsPerChunk) * TraceRecorder.RECORD_SIZE;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Moves to the next record.
+     *
+     * @return false if there are no more records
+     */
+    public boolean next() {
+        if (index + 1 >= recordCount)
+            return false;
+        seek(++index);
+        return true;
+    }
+
+    /**
+     * Moves back before the first record.
+     */
+    public void rewind() {
+        index = -1;
+    }
+
+    public double getTime() {
+        return chunk.getDouble(offset);
+    }
+
+    public int getType() {
+        return chunk.getInt(offset + 8);
+    }
+
+    public int getEntityId() {
+        return chunk.getInt(offset + 12);
+    }
+
+    public int getTupleId() {
+        return chunk.getInt(offset + 16);
+    }
+
+    public int getOtherId() {
+        return chunk.getInt(offset + 20);
+    }
+
+    public int getTupleTypeId() {
+        return chunk.getInt(offset + 24);
+    }
+
+    public int getModuleId() {
+        return chunk.getInt(offset + 28);
+    }
+
+    public double getValue() {
+        return chunk.getDouble(offset + 32);
+    }
+
+    /**
+     * Gets a string of the string table.
+     *
+     * @return the string, null for the id -1, or the id itself if the trace has no string table
+     */
+    public String getString(int id) {
+        if (id < 0)
+            return null;
+        return strings != null && id < strings.length ? strings[id] : "#" + id;
+    }
+
+    /**
+     * Gets the name of an entity.
+     *
+     * @return the name, or the id itself if the entity has no name in the trace
+     */
+    public String getEntityName(int entityId) {
+        String name = entityNames.get(entityId);
+        return name != null ? name : String.valueOf(entityId);
+    }
+}
@@ -0,0 +1,282 @@
+package org.fog.utils.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimulationContext;
+import org.fog.application.AppModule;
+import org.fog.entities.Tuple;
+import org.fog.utils.Config;
+
+/**
+ * Records the tuple flow of a simulation to a binary trace file, for offline analysis with
+ * {@link TraceReader} and {@link TraceConverter}. Tracing is on when {@link Config#TRACE_FILE} is
+ * set before the simulation starts.
+ * <p>
+ * The events are written as records of {@link #RECORD_SIZE} bytes into a memory-mapped file, which
+ * is mapped {@link #CHUNK_SIZE} bytes at a time as it grows; strings such as tuple types and module
+ * names are replaced by the ids of a string table. Recording an event thus only writes a few numbers
+ * to memory, and allocates nothing once the strings and entities have been seen.
+ * <p>
+ * The file starts with a header of {@link #HEADER_SIZE} bytes, all numbers being little-endian:
+ * <pre>
+ * 0  "FOGTRACE"
+ * 8  int    version
+ * 12 int    record size
+ * 16 long   number of records, 0 until the trace is closed
+ * 24 long   offset of the string table, 0 until the trace is closed
+ * </pre>
+ * Each record is:
+ * <pre>
+ * 0  double time
+ * 8  int    type, one of the event types of this class
+ * 12 int    id of the entity the event happens on
+ * 16 int    id of the tuple, or -1
+ * 20 int    id of the other entity or of the VM, depending on the type, or -1
+ * 24 int    string id of the tuple type, or -1
+ * 28 int    string id of the module, or -1
+ * 32 double value, depending on the type
+ * </pre>
+ * The string table is written after the records when the trace is closed, which is done by a
+ * shutdown hook since controllers end the simulation with {@link System#exit(int)}: the number of
+ * strings followed by each string as its length and UTF-8 bytes, then the number of named entities
+ * followed by the id and string id of the name of each entity. A trace that was not closed still
+ * holds its records, followed by zeros.
+ */
+public class TraceRecorder implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final byte[] MAGIC = "FOGTRACE".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 40;
+    public static final int CHUNK_SIZE = RECORD_SIZE * (1 << 20);
+
+    /** A tuple is sent to another entity: the other entity, the network length of the tuple. */
+    public static final int TUPLE_SEND = 1;
+    /** A tuple arrives from another entity: the other entity, the network length of the tuple. */
+    public static final int TUPLE_ARRIVAL = 2;
+    /** A tuple starts executing on a module: the VM, the CPU length of the tuple. */
+    public static final int EXECUTION_START = 3;
+    /** A tuple ends executing on a module: the VM, the CPU length of the tuple. */
+    public static final int EXECUTION_END = 4;
+    /** A module is placed on a device: the VM, the MIPS of the module. */
+    public static final int MODULE_PLACED = 5;
+    /** A module migrates away from a device: the VM, the migration delay. */
+    public static final int MODULE_SENT = 6;
+    /** A module migrates to a device: the VM, the migration delay. */
+    public static final int MODULE_RECEIVED = 7;
+
+    private static final String[] TYPE_NAMES = {null, "TUPLE_SEND", "TUPLE_ARRIVAL", "EXECUTION_START",
+            "EXECUTION_END", "MODULE_PLACED", "MODULE_SENT", "MODULE_RECEIVED"};
+
+    private final File file;
+
+    private RandomAccessFile output;
+
+    private FileChannel channel;
+
+    /** The chunk of the file being written, and its offset in the file. */
+    private MappedByteBuffer chunk;
+    private long chunkOffset;
+
+    private long recordCount;
+
+    private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+    private final List<String> strings = new ArrayList<String>();
+
+    /** The entities whose name is in the string table, and the string id of their names. */
+    private final BitSet namedEntities = new BitSet();
+    private final Map<Integer, Integer> entityNameIds = new HashMap<Integer, Integer>();
+
+    public static TraceRecorder getInstance() {
+        SimulationContext context = SimulationContext.current();
+        TraceRecorder instance = context.getComponent(TraceRecorder.class);
+        if (instance == null) {
+            instance = new TraceRecorder(Config.TRACE_FILE != null ? new File(Config.TRACE_FILE) : null);
+            context.setComponent(TraceRecorder.class, instance);
+        }
+        return instance;
+    }
+
+    private TraceRecorder(File file) {
+        this.file = file;
+        if (file == null)
+            return;
+        try {
+            output = new RandomAccessFile(file, "rw");
+            output.setLength(0);
+            channel = output.getChannel();
+            mapChunk(0);
+            chunk.put(MAGIC);
+            chunk.putInt(VERSION);
+            chunk.putInt(RECORD_SIZE);
+            chunk.putLong(0);
+            chunk.putLong(0);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create the trace file " + file, e);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        }, "fog-trace-close"));
+    }
+
+    private void mapChunk(long offset) throws IOException {
+        chunk = channel.map(FileChannel.MapMode.READ_WRITE, offset, CHUNK_SIZE);
+        chunk.order(ByteOrder.LITTLE_ENDIAN);
+        chunkOffset = offset;
+    }
+
+    public boolean isEnabled() {
+        return chunk != null;
+    }
+
+    public void tupleSent(int entityId, Tuple tuple, int destinationId) {
+        if (chunk != null)
+            record(TUPLE_SEND, entityId, tuple.getCloudletId(), destinationId, tuple.getTupleType(),
+                    tuple.getDestModuleName(), tuple.getCloudletFileSize());
+    }
+
+    public void tupleArrived(int entityId, Tuple tuple, int sourceId) {
+        if (chunk != null)
+            record(TUPLE_ARRIVAL, entityId, tuple.getCloudletId(), sourceId, tuple.getTupleType(),
+                    tuple.getDestModuleName(), tuple.getCloudletFileSize());
+    }
+
+    public void executionStarted(int entityId, Tuple tuple, String moduleName, int vmId) {
+        if (chunk != null)
+            record(EXECUTION_START, entityId, tuple.getCloudletId(), vmId, tuple.getTupleType(), moduleName,
+                    tuple.getCloudletLength());
+    }
+
+    public void executionEnded(int entityId, Tuple tuple, String moduleName, int vmId) {
+        if (chunk != null)
+            record(EXECUTION_END, entityId, tuple.getCloudletId(), vmId, tuple.getTupleType(), moduleName,
+                    tuple.getCloudletLength());
+    }
+
+    public void modulePlaced(int entityId, AppModule module) {
+        if (chunk != null)
+            record(MODULE_PLACED, entityId, -1, module.getId(), null, module.getName(), module.getMips());
+    }
+
+    public void moduleSent(int entityId, AppModule module, double delay) {
+        if (chunk != null)
+            record(MODULE_SENT, entityId, -1, module.getId(), null, module.getName(), delay);
+    }
+
+    public void moduleReceived(int entityId, AppModule module, double delay) {
+        if (chunk != null)
+            record(MODULE_RECEIVED, entityId, -1, module.getId(), null, module.getName(), delay);
+    }
+
+    private synchronized void record(int type, int entityId, int tupleId, int otherId, String tupleType,
+                                     String moduleName, double value) {
+        if (chunk == null)
+            return;
+        if (entityId >= 0 && !namedEntities.get(entityId)) {
+            namedEntities.set(entityId);
+            String name = CloudSim.getEntityName(entityId);
+            if (name != null)
+                entityNameIds.put(entityId, stringId(name));
+        }
+        try {
+            if (chunk.remaining() < RECORD_SIZE)
+                mapChunk(chunkOffset + chunk.position());
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot extend the trace file " + file, e);
+        }
+        chunk.putDouble(CloudSim.clock());
+        chunk.putInt(type);
+        chunk.putInt(entityId);
+        chunk.putInt(tupleId);
+        chunk.putInt(otherId);
+        chunk.putInt(stringId(tupleType));
+        chunk.putInt(stringId(moduleName));
+        chunk.putDouble(value);
+        recordCount++;
+    }
+
+    private int stringId(String string) {
+        if (string == null)
+            return -1;
+        Integer id = stringIds.get(string);
+        if (id == null) {
+            id = strings.size();
+            strings.add(string);
+            stringIds.put(string, id);
+        }
+        return id;
+    }
+
+    /**
+     * Writes the string table and the header, and closes the file. Nothing is recorded afterwards.
+     */
+    public synchronized void close() {
+        if (chunk == null)
+            return;
+        try {
+            long stringsOffset = chunkOffset + chunk.position();
+            chunk = null;
+            channel.position(stringsOffset);
+            writeInt(strings.size());
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                writeInt(bytes.length);
+                channel.write(ByteBuffer.wrap(bytes));
+            }
+            writeInt(entityNameIds.size());
+            for (Map.Entry<Integer, Integer> entityName : entityNameIds.entrySet()) {
+                writeInt(entityName.getKey());
+                writeInt(entityName.getValue());
+            }
+            channel.truncate(channel.position());
+
+            ByteBuffer counts = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            counts.putLong(recordCount);
+            counts.putLong(stringsOffset);
+            counts.flip();
+            channel.write(counts, 16);
+            output.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void writeInt(int value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(value);
+        buffer.flip();
+        channel.write(buffer);
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Gets the name of an event type.
+     *
+     * @return the name, or the type as a number if it is unknown
+     */
+    public static String getTypeName(int type) {
+        return type > 0 && type < TYPE_NAMES.length ? TYPE_NAMES[type] : String.valueOf(type);
+    }
+}